@@ -1,9 +1,10 @@
-package eu.sqooss.service.cache;
+package eu.sqooss.impl.service.cache;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.cache.CacheService;
 
 public class Activator implements BundleActivator {
 
@@ -1,4 +1,4 @@
-package eu.sqooss.service.cache;
+package eu.sqooss.impl.service.cache;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -9,18 +9,23 @@ import java.util.List;
 
 import org.osgi.framework.BundleContext;
 
+import eu.sqooss.service.cache.CacheService;
 import eu.sqooss.service.logging.Logger;
 
 public class CacheServiceImpl implements CacheService {
 
     public static final String CACHE_IMPL = "eu.sqooss.service.cache.OnDiskCache";
     
+    private static final String OLD_IMPL_PACKAGE = "eu.sqooss.service.cache.";
+    
     private static List<Class<? extends CacheService>> impls;
     
     static {
         impls = new ArrayList<Class<? extends CacheService>>();
         impls.add(OnDiskCache.class);
         impls.add(InMemoryCache.class);
+        impls.add(TieredCache.class);
+        impls.add(SegmentLogCache.class);
     }
   
     private CacheService c;
@@ -36,7 +41,10 @@ public class CacheServiceImpl implements CacheService {
     
     @Override
     public InputStream getStream(String key) {
-        byte[] buff = c.get(key);
+        if (c != null)
+            return c.getStream(key);
+        
+        byte[] buff = get(key);
         
         if (buff == null)
             return null;
@@ -74,7 +82,12 @@ public class CacheServiceImpl implements CacheService {
         String impl = System.getProperty(CACHE_IMPL);
         
         if (impl == null)
-            impl = "eu.sqooss.service.cache.OnDiskCache";
+            impl = OnDiskCache.class.getName();
+        
+        /* Implementations used to live in the service package */
+        if (impl.startsWith(OLD_IMPL_PACKAGE))
+            impl = CacheServiceImpl.class.getPackage().getName() + 
+                impl.substring(OLD_IMPL_PACKAGE.length() - 1);
         
         try {
             Class clazz = Thread.currentThread().getContextClassLoader().loadClass(impl);
@@ -91,6 +104,8 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public void shutDown() {
+        if (c != null)
+            c.shutDown();
         c = null;
     }
 
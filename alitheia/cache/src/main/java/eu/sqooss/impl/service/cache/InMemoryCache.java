@@ -1,4 +1,4 @@
-package eu.sqooss.service.cache;
+package eu.sqooss.impl.service.cache;
 
 import java.util.concurrent.ConcurrentHashMap;
 
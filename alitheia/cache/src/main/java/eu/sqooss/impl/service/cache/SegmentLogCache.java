@@ -0,0 +1,469 @@
+package eu.sqooss.impl.service.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Log structured implementation of the cache service. Entries are appended
+ * to large, memory mapped segment files, and an in memory index maps each
+ * key to the segment and offset its latest value is stored at. Reads
+ * through {@link #getStream(String)} are served directly from the mapped
+ * segment, without copying.
+ *
+ * Overwritten entries leave garbage in older segments. A background thread
+ * periodically rewrites the live entries of segments that are mostly
+ * garbage to the current segment and deletes the old segment file.
+ *
+ * The index is rebuilt from the segment files when the cache is
+ * initialized, so cached entries survive restarts. {@link #shutDown()}
+ * stops the compaction thread and unmaps the segment files.
+ *
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>eu.sqooss.service.cache.dir</dt>
+ *      <dd>The directory under which the segment files are stored</dd>
+ *      <dt>eu.sqooss.service.cache.segment.size</dt>
+ *      <dd>Size of each segment file, in bytes (default: 64MB)</dd>
+ * </dl>
+ *
+ * Segment record format:
+ * <pre>
+ *  | key length + 1 (int) | data length (int) | key (UTF-8) | data |
+ * </pre>
+ * A zero key length marks the end of the segment's records.
+ */
+public class SegmentLogCache extends CacheServiceImpl {
+
+    public static final String SEGMENT_SIZE = "eu.sqooss.service.cache.segment.size";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+
+    /** Segments with less live data than this ratio are compacted */
+    private static final double COMPACTION_RATIO = 0.5;
+    private static final long COMPACTION_INTERVAL = 60 * 1000;
+
+    private File dir;
+    private int segmentSize;
+
+    private ConcurrentHashMap<String, Location> index =
+        new ConcurrentHashMap<String, Location>(1024);
+    private ConcurrentHashMap<Integer, Segment> segments =
+        new ConcurrentHashMap<Integer, Segment>();
+
+    /* Guards active and nextId */
+    private Object writeLock = new Object();
+    private Segment active;
+    private int nextId = 0;
+    private boolean closed = false;
+
+    private Thread compactor;
+    private Logger log;
+
+    public SegmentLogCache() throws Exception {
+        String dirpath = System.getProperty(OnDiskCache.CACHE_DIR);
+
+        if (dirpath == null) {
+            dirpath = System.getProperty("java.io.tmpdir");
+            if (dirpath == null)
+                dirpath = "tmp";
+        }
+
+        int size = DEFAULT_SEGMENT_SIZE;
+        String prop = System.getProperty(SEGMENT_SIZE);
+        if (prop != null) {
+            try {
+                size = Integer.parseInt(prop.trim());
+            } catch (NumberFormatException nfe) {
+                warn("Invalid segment size " + prop + ", using default");
+            }
+        }
+
+        init(dirpath, size);
+
+        compactor = new Thread("SegmentLogCache compactor") {
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(COMPACTION_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    compact();
+                }
+            }
+        };
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /**
+     * Create a cache without a background compaction thread;
+     * {@link #compact()} must be called explicitly.
+     */
+    public SegmentLogCache(String cachedir, int segmentSize) throws Exception {
+        init(cachedir, segmentSize);
+    }
+
+    private void init(String path, int segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        dir = new File(path, "segments");
+
+        if (!dir.exists())
+            dir.mkdirs();
+
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        Arrays.sort(files);
+        for (File f : files) {
+            if (!f.getName().startsWith("segment-"))
+                continue;
+            int id;
+            try {
+                id = Integer.parseInt(f.getName().substring(8));
+            } catch (NumberFormatException nfe) {
+                continue;
+            }
+            Segment s = new Segment(id, f, (int) f.length());
+            segments.put(id, s);
+            recover(s);
+            nextId = Math.max(nextId, id + 1);
+        }
+    }
+
+    /** Add the records of a segment to the index */
+    private void recover(Segment s) {
+        ByteBuffer b = s.buf.duplicate();
+        int pos = 0;
+
+        while (pos + HEADER_SIZE <= b.capacity()) {
+            int keyLen = b.getInt(pos) - 1;
+            int dataLen = b.getInt(pos + 4);
+            if (keyLen < 0 || dataLen < 0 ||
+                    pos + HEADER_SIZE + keyLen + dataLen > b.capacity())
+                break;
+
+            byte[] key = new byte[keyLen];
+            b.position(pos + HEADER_SIZE);
+            b.get(key);
+
+            int size = HEADER_SIZE + keyLen + dataLen;
+            Location loc = new Location(s, pos + HEADER_SIZE + keyLen,
+                    dataLen, size);
+            s.live.addAndGet(size);
+            Location old = index.put(decode(key), loc);
+            if (old != null)
+                old.seg.live.addAndGet(-old.size);
+            pos += size;
+        }
+        s.limit = pos;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        ByteBuffer b = read(key);
+        if (b == null)
+            return null;
+
+        byte[] result = new byte[b.remaining()];
+        b.get(result);
+        return result;
+    }
+
+    /**
+     * Returns a stream reading directly from the segment the key is
+     * stored in.
+     */
+    @Override
+    public InputStream getStream(String key) {
+        ByteBuffer b = read(key);
+        if (b == null)
+            return null;
+        return new ByteBufferInputStream(b);
+    }
+
+    /**
+     * Get a read only view of the contents of key.
+     */
+    public ByteBuffer read(String key) {
+        Location l = index.get(key);
+        if (l == null)
+            return null;
+        return l.buffer();
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        byte[] k = encode(key);
+        try {
+            synchronized (writeLock) {
+                Location l = append(k, data);
+                Location old = index.put(key, l);
+                if (old != null)
+                    old.seg.live.addAndGet(-old.size);
+            }
+        } catch (IOException e) {
+            warn("Cannot store key " + key + " An exception occured: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Append a record to the active segment. Must be called with the
+     * write lock held.
+     */
+    private Location append(byte[] key, byte[] data) throws IOException {
+        if (closed)
+            throw new IOException("Cache has been shut down");
+
+        int size = HEADER_SIZE + key.length + data.length;
+
+        if (active == null || active.buf.capacity() - active.limit < size) {
+            int id = nextId++;
+            File f = new File(dir, String.format("segment-%08d", id));
+            active = new Segment(id, f, Math.max(segmentSize, size));
+            segments.put(id, active);
+        }
+
+        int pos = active.limit;
+        ByteBuffer b = active.buf.duplicate();
+        b.position(pos + 4);
+        b.putInt(data.length);
+        b.put(key);
+        b.put(data);
+        /* Write the key length last, so that partially written records
+         * are not recovered */
+        b.putInt(pos, key.length + 1);
+        active.limit = pos + size;
+        active.live.addAndGet(size);
+
+        return new Location(active, pos + HEADER_SIZE + key.length,
+                data.length, size);
+    }
+
+    /**
+     * Copy the live records of mostly empty segments to the active segment
+     * and delete the old segment files.
+     */
+    public void compact() {
+        Segment current;
+        synchronized (writeLock) {
+            current = active;
+        }
+
+        List<Segment> victims = new ArrayList<Segment>();
+        for (Segment s : segments.values()) {
+            if (s == current)
+                continue;
+            if (s.live.get() <= s.limit * COMPACTION_RATIO)
+                victims.add(s);
+        }
+
+        if (victims.isEmpty())
+            return;
+
+        Map<String, Location> moved = new HashMap<String, Location>();
+        for (Map.Entry<String, Location> e : index.entrySet()) {
+            if (victims.contains(e.getValue().seg))
+                moved.put(e.getKey(), e.getValue());
+        }
+
+        for (Map.Entry<String, Location> e : moved.entrySet()) {
+            Location old = e.getValue();
+            ByteBuffer b = old.buffer();
+            byte[] data = new byte[b.remaining()];
+            b.get(data);
+
+            try {
+                synchronized (writeLock) {
+                    Location l = append(encode(e.getKey()), data);
+                    if (index.replace(e.getKey(), old, l)) {
+                        old.seg.live.addAndGet(-old.size);
+                    } else {
+                        /* Overwritten while being moved */
+                        l.seg.live.addAndGet(-l.size);
+                    }
+                }
+            } catch (IOException ioe) {
+                warn("Cannot compact key " + e.getKey() +
+                        " An exception occured: " + ioe.getMessage());
+                return;
+            }
+        }
+
+        /* Readers may still hold views of the deleted segments; the
+         * mapping remains valid until they are garbage collected. */
+        for (Segment s : victims) {
+            if (s.live.get() > 0)
+                continue;
+            segments.remove(s.id);
+            s.file.delete();
+        }
+    }
+
+    /**
+     * Stop the compaction thread and write the segments to disk. The
+     * segments are unmapped when they are garbage collected, so streams
+     * returned by {@link #getStream(String)} remain readable.
+     */
+    @Override
+    public void shutDown() {
+        if (compactor != null) {
+            compactor.interrupt();
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (writeLock) {
+            if (closed)
+                return;
+            closed = true;
+            index.clear();
+            for (Segment s : segments.values())
+                s.release();
+            segments.clear();
+            active = null;
+        }
+    }
+
+    /** Number of segment files currently in use */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private static byte[] encode(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String decode(byte[] b) {
+        try {
+            return new String(b, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void warn(String message) {
+        if (log != null)
+            log.warn(message);
+        else
+            System.err.println(message);
+    }
+
+    private static class Segment {
+        final int id;
+        final File file;
+        final MappedByteBuffer buf;
+        /* Bytes of live records in this segment */
+        final AtomicLong live = new AtomicLong();
+        /* End of the last record; written under the write lock */
+        volatile int limit = 0;
+
+        Segment(int id, File file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel ch = raf.getChannel();
+                buf = ch.map(MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * Write the segment to disk. The mapping is not released here, 
+         * as readers may still hold views of it; it goes away when the 
+         * buffer and all its views are garbage collected.
+         */
+        void release() {
+            buf.force();
+        }
+    }
+
+    private static class Location {
+        final Segment seg;
+        final int offset;
+        final int length;
+        /* Size of the whole record, including the header */
+        final int size;
+
+        Location(Segment seg, int offset, int length, int size) {
+            this.seg = seg;
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+        }
+
+        ByteBuffer buffer() {
+            ByteBuffer b = seg.buf.duplicate();
+            b.limit(offset + length);
+            b.position(offset);
+            return b.slice().asReadOnlyBuffer();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private ByteBuffer b;
+
+        ByteBufferInputStream(ByteBuffer b) {
+            this.b = b;
+        }
+
+        @Override
+        public int read() {
+            if (!b.hasRemaining())
+                return -1;
+            return b.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buff, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!b.hasRemaining())
+                return -1;
+            len = Math.min(len, b.remaining());
+            b.get(buff, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int s = (int) Math.min(Math.max(n, 0), b.remaining());
+            b.position(b.position() + s);
+            return s;
+        }
+
+        @Override
+        public int available() {
+            return b.remaining();
+        }
+    }
+}
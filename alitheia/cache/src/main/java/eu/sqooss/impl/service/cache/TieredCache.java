@@ -0,0 +1,303 @@
+package eu.sqooss.impl.service.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two level, size bounded cache. Entries are kept in a memory tier with a
+ * fixed byte budget; when the budget is exceeded, the least recently used
+ * entries are spilled to a disk tier, which is also capped. Entries evicted
+ * from the disk tier are lost. Entries larger than a quarter of the memory
+ * budget are stored directly on disk.
+ *
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>eu.sqooss.service.cache.dir</dt>
+ *      <dd>The directory under which the disk tier is stored</dd>
+ *      <dt>eu.sqooss.service.cache.memory.size</dt>
+ *      <dd>Size of the memory tier, in bytes (default: 64MB)</dd>
+ *      <dt>eu.sqooss.service.cache.disk.size</dt>
+ *      <dd>Size of the disk tier, in bytes (default: 1GB)</dd>
+ * </dl>
+ *
+ * The disk tier is not persistent; its contents are removed when the
+ * cache is initialized.
+ */
+public class TieredCache extends CacheServiceImpl {
+
+    public static final String MEM_SIZE = "eu.sqooss.service.cache.memory.size";
+    public static final String DISK_SIZE = "eu.sqooss.service.cache.disk.size";
+
+    private static final long DEFAULT_MEM_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_DISK_SIZE = 1024L * 1024 * 1024;
+
+    private File dir;
+    private long memBudget;
+    private long diskBudget;
+
+    /* Both tiers are LRU ordered; guarded by the respective map's lock */
+    private LinkedHashMap<String, byte[]> memory;
+    private long memSize = 0;
+
+    private LinkedHashMap<String, Long> disk;
+    private long diskSize = 0;
+
+    private AtomicLong memHits = new AtomicLong();
+    private AtomicLong diskHits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong memEvictions = new AtomicLong();
+    private AtomicLong diskEvictions = new AtomicLong();
+
+    public TieredCache() {
+        String dirpath = System.getProperty(OnDiskCache.CACHE_DIR);
+
+        if (dirpath == null) {
+            dirpath = System.getProperty("java.io.tmpdir");
+            if (dirpath == null)
+                dirpath = "tmp";
+        }
+
+        init(dirpath, sizeProperty(MEM_SIZE, DEFAULT_MEM_SIZE),
+                sizeProperty(DISK_SIZE, DEFAULT_DISK_SIZE));
+    }
+
+    public TieredCache(String cachedir, long memBudget, long diskBudget) {
+        init(cachedir, memBudget, diskBudget);
+    }
+
+    private void init(String path, long memBudget, long diskBudget) {
+        this.memBudget = memBudget;
+        this.diskBudget = diskBudget;
+        this.memory = new LinkedHashMap<String, byte[]>(1024, 0.75f, true);
+        this.disk = new LinkedHashMap<String, Long>(1024, 0.75f, true);
+
+        dir = new File(path, "tiered");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        } else {
+            File[] old = dir.listFiles();
+            if (old != null)
+                for (File f : old)
+                    f.delete();
+        }
+    }
+
+    private static long sizeProperty(String name, long def) {
+        String val = System.getProperty(name);
+        if (val == null)
+            return def;
+        try {
+            return Long.parseLong(val.trim());
+        } catch (NumberFormatException nfe) {
+            return def;
+        }
+    }
+
+    @Override
+    public byte[] get(String key) {
+        synchronized (memory) {
+            byte[] b = memory.get(key);
+            if (b != null) {
+                memHits.incrementAndGet();
+                return b;
+            }
+        }
+
+        byte[] b = diskGet(key);
+        if (b == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        diskHits.incrementAndGet();
+        if (b.length <= memBudget / 4)
+            memPut(key, b);
+        return b;
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        byte[] copy = new byte[data.length];
+        System.arraycopy(data, 0, copy, 0, data.length);
+
+        if (copy.length > memBudget / 4) {
+            synchronized (memory) {
+                byte[] old = memory.remove(key);
+                if (old != null)
+                    memSize -= old.length;
+            }
+            diskPut(key, copy);
+        } else {
+            memPut(key, copy);
+        }
+    }
+
+    /**
+     * Put an entry to the memory tier, spilling the least recently used
+     * entries to disk until the memory tier fits in its budget.
+     */
+    private void memPut(String key, byte[] data) {
+        Map<String, byte[]> spilled = new LinkedHashMap<String, byte[]>();
+
+        synchronized (memory) {
+            byte[] old = memory.put(key, data);
+            if (old != null)
+                memSize -= old.length;
+            memSize += data.length;
+
+            Iterator<Map.Entry<String, byte[]>> i = memory.entrySet().iterator();
+            while (memSize > memBudget && i.hasNext()) {
+                Map.Entry<String, byte[]> e = i.next();
+                if (e.getKey().equals(key))
+                    continue;
+                memSize -= e.getValue().length;
+                spilled.put(e.getKey(), e.getValue());
+                i.remove();
+                memEvictions.incrementAndGet();
+            }
+        }
+
+        for (Map.Entry<String, byte[]> e : spilled.entrySet())
+            diskPut(e.getKey(), e.getValue());
+    }
+
+    private byte[] diskGet(String key) {
+        synchronized (disk) {
+            if (disk.get(key) == null)
+                return null;
+
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(file(key), "r");
+                byte[] result = new byte[(int) raf.length()];
+                raf.readFully(result);
+                return result;
+            } catch (IOException e) {
+                Long size = disk.remove(key);
+                if (size != null)
+                    diskSize -= size;
+                return null;
+            } finally {
+                try {
+                    if (raf != null)
+                        raf.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Write an entry to the disk tier, removing the least recently used
+     * entries until the disk tier fits in its budget.
+     */
+    private void diskPut(String key, byte[] data) {
+        if (data.length > diskBudget)
+            return;
+
+        synchronized (disk) {
+            File f = file(key);
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(f);
+                out.write(data);
+            } catch (IOException e) {
+                f.delete();
+                Long size = disk.remove(key);
+                if (size != null)
+                    diskSize -= size;
+                return;
+            } finally {
+                try {
+                    if (out != null)
+                        out.close();
+                } catch (IOException e) {}
+            }
+
+            Long old = disk.put(key, (long) data.length);
+            if (old != null)
+                diskSize -= old;
+            diskSize += data.length;
+
+            Iterator<Map.Entry<String, Long>> i = disk.entrySet().iterator();
+            while (diskSize > diskBudget && i.hasNext()) {
+                Map.Entry<String, Long> e = i.next();
+                if (e.getKey().equals(key))
+                    continue;
+                file(e.getKey()).delete();
+                diskSize -= e.getValue();
+                i.remove();
+                diskEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private File file(String key) {
+        try {
+            MessageDigest m = MessageDigest.getInstance("MD5");
+            byte[] b = key.getBytes("UTF-8");
+            m.update(b, 0, b.length);
+            return new File(dir, new BigInteger(1, m.digest()).toString(16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Number of lookups served by the memory tier */
+    public long getMemoryHits() {
+        return memHits.get();
+    }
+
+    /** Number of lookups served by the disk tier */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /** Number of lookups that were not found in either tier */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Number of entries spilled from the memory tier to disk */
+    public long getMemoryEvictions() {
+        return memEvictions.get();
+    }
+
+    /** Number of entries dropped from the disk tier */
+    public long getDiskEvictions() {
+        return diskEvictions.get();
+    }
+
+    /** Bytes currently held in the memory tier */
+    public long getMemorySize() {
+        synchronized (memory) {
+            return memSize;
+        }
+    }
+
+    /** Bytes currently held in the disk tier */
+    public long getDiskSize() {
+        synchronized (disk) {
+            return diskSize;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TieredCache - mem hits: " + getMemoryHits() + " disk hits: "
+                + getDiskHits() + " misses: " + getMisses()
+                + " mem evictions: " + getMemoryEvictions()
+                + " disk evictions: " + getDiskEvictions();
+    }
+}
@@ -5,7 +5,7 @@ import static org.junit.Assert.assertEquals;
 import java.util.ArrayList;
 import java.util.List;
 
-import eu.sqooss.service.cache.OnDiskCache;
+import eu.sqooss.impl.service.cache.OnDiskCache;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -0,0 +1,124 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.sqooss.impl.service.cache.SegmentLogCache;
+import eu.sqooss.service.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentLogCacheTest {
+
+    private File dir;
+    private String path;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("segmentlogcache", "");
+        dir.delete();
+        dir.mkdirs();
+        path = dir.getPath();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteRecursive(dir);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        SegmentLogCache cache = new SegmentLogCache(path + "/get", 4096);
+        cache.set("foo", "this is val1".getBytes());
+        assertEquals(new String(cache.get("foo")), "this is val1");
+        assertNull(cache.get("bar"));
+
+        InputStream in = cache.getStream("foo");
+        byte[] b = new byte[32];
+        int read = in.read(b);
+        assertEquals(new String(b, 0, read), "this is val1");
+        assertEquals(-1, in.read());
+        cache.shutDown();
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        SegmentLogCache cache = new SegmentLogCache(path + "/compact", 1024);
+        for (int i = 0; i < 20; i++)
+            for (int j = 0; j < 10; j++)
+                cache.set("foo" + j, ("bar" + i + "-" + j).getBytes());
+
+        int before = cache.getSegmentCount();
+        cache.compact();
+        assertEquals(true, cache.getSegmentCount() < before);
+
+        for (int j = 0; j < 10; j++)
+            assertEquals(new String(cache.get("foo" + j)), "bar19-" + j);
+        cache.shutDown();
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        SegmentLogCache cache = new SegmentLogCache(path + "/recover", 1024);
+        for (int i = 0; i < 100; i++)
+            cache.set("foo" + (i % 50), ("bar" + i).getBytes());
+        cache.shutDown();
+
+        SegmentLogCache reopened = new SegmentLogCache(path + "/recover", 1024);
+        for (int i = 50; i < 100; i++)
+            assertEquals(new String(reopened.get("foo" + (i % 50))), "bar" + i);
+        reopened.shutDown();
+    }
+
+    @Test
+    public void testShutDown() throws Exception {
+        SegmentLogCache cache = new SegmentLogCache(path + "/shutdown", 1024);
+        cache.set("foo", "bar".getBytes());
+        cache.shutDown();
+
+        assertNull(cache.get("foo"));
+        cache.set("foo", "baz".getBytes());
+        assertNull(cache.get("foo"));
+        assertEquals(0, cache.getSegmentCount());
+        cache.shutDown();
+
+        SegmentLogCache reopened = new SegmentLogCache(path + "/shutdown", 1024);
+        assertEquals(new String(reopened.get("foo")), "bar");
+        reopened.shutDown();
+    }
+
+    @Test
+    public void testStreamAfterShutDown() throws Exception {
+        SegmentLogCache cache = new SegmentLogCache(path + "/stream", 1024);
+        cache.set("foo", "bar".getBytes());
+        InputStream in = cache.getStream("foo");
+        cache.shutDown();
+
+        byte[] b = new byte[8];
+        assertEquals(3, in.read(b));
+        assertEquals(new String(b, 0, 3), "bar");
+    }
+
+    @Test
+    public void testManyEntries() throws Exception {
+        byte[] blob = new byte[2048];
+        SegmentLogCache cache = new SegmentLogCache(path + "/many", 64 * 1024);
+        for (int i = 0; i < 500; i++) {
+            blob[0] = (byte) i;
+            cache.set("blob" + i, blob);
+        }
+
+        assertEquals(true, cache.getSegmentCount() > 1);
+        for (int i = 0; i < 500; i++) {
+            byte[] b = cache.get("blob" + i);
+            assertEquals(blob.length, b.length);
+            assertEquals((byte) i, b[0]);
+        }
+        cache.shutDown();
+    }
+}
@@ -0,0 +1,55 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import eu.sqooss.impl.service.cache.TieredCache;
+import org.junit.Test;
+
+public class TieredCacheTest {
+
+    static String path = "tmp";
+
+    @Test
+    public void testGet() {
+        TieredCache cache = new TieredCache(path, 1024, 4096);
+        cache.set("foo", "this is val1".getBytes());
+        assertEquals(new String(cache.get("foo")), "this is val1");
+        assertNull(cache.get("bar"));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testSpill() {
+        TieredCache cache = new TieredCache(path, 1024, 64 * 1024);
+        for (int i = 0; i < 100; i++)
+            cache.set("foo" + i, new byte[100]);
+
+        assertTrue(cache.getMemorySize() <= 1024);
+        assertTrue(cache.getMemoryEvictions() > 0);
+        assertEquals(0, cache.getDiskEvictions());
+
+        for (int i = 0; i < 100; i++)
+            assertEquals(100, cache.get("foo" + i).length);
+        assertTrue(cache.getDiskHits() > 0);
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testEvict() {
+        TieredCache cache = new TieredCache(path, 1024, 2048);
+        for (int i = 0; i < 100; i++) {
+            byte[] b = new byte[100];
+            byte[] val = ("bar" + i).getBytes();
+            System.arraycopy(val, 0, b, 0, val.length);
+            cache.set("foo" + i, b);
+        }
+
+        assertTrue(cache.getDiskSize() <= 2048);
+        assertTrue(cache.getDiskEvictions() > 0);
+        assertNull(cache.get("foo0"));
+        assertEquals(new String(cache.get("foo99"), 0, 5), "bar99");
+    }
+}
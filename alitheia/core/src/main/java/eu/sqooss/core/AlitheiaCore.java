@@ -55,6 +55,7 @@ import eu.sqooss.impl.service.tds.TDSServiceImpl;
 import eu.sqooss.impl.service.updater.UpdaterServiceImpl;
 import eu.sqooss.impl.service.webadmin.WebadminServiceImpl;
 import eu.sqooss.service.admin.AdminService;
+import eu.sqooss.service.cache.CacheService;
 import eu.sqooss.service.cluster.ClusterNodeService;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.fds.FDSService;
@@ -406,6 +407,17 @@ public class AlitheiaCore {
     	return (MetricActivator)instances.get(MetricActivator.class);
     }
     
+    /**
+     * Returns the cache service instance. The cache service is provided
+     * by an external bundle, so this method returns null until that
+     * bundle has registered it.
+     * 
+     * @return The Cache Service component's instance, or null.
+     */
+    public CacheService getCacheService() {
+        return (CacheService)instances.get(CacheService.class);
+    }
+    
     /**
      * Returns the locally stored Administration Service component's instance.
      * 
@@ -414,6 +426,15 @@ public class AlitheiaCore {
     public AdminService getAdminService() {
     	return (AdminService)instances.get(AdminService.class);
     }
+    
+    /**
+     * Returns the locally stored REST API service instance.
+     * 
+     * @return The REST API service's instance.
+     */
+    public RestService getRestService() {
+        return (RestService)instances.get(RestService.class);
+    }
 	
 	private void err(String msg) {
 		System.err.println("AlitheiaCore: " + msg);
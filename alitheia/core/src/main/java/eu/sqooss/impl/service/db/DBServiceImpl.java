@@ -65,6 +65,7 @@ import org.osgi.framework.BundleContext;
 import eu.sqooss.core.AlitheiaCoreService;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.util.URIUtills;
 
@@ -796,8 +797,44 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             return false;
         
         isInitialised.compareAndSet(false, true);
+        updateValidSequences();
         return true; 
     }
+    
+    /*
+     * File entries imported before the validity sequences of ProjectFile
+     * were introduced lack them, which hides them from the live file
+     * queries. Fill them in once, in a session of their own, before any
+     * other service gets to query them.
+     */
+    private void updateValidSequences() {
+        if (!startDBSession()) {
+            logger.error("Cannot start a session to record file validity sequences");
+            return;
+        }
+        
+        if (!ProjectFile.hasUnsequencedFiles(this)) {
+            commitDBSession();
+            return;
+        }
+        
+        logger.info("Recording validity sequences for existing files");
+        int updated = ProjectFile.updateValidSequences(this);
+        if (updated < 0) {
+            if (isDBSessionActive())
+                rollbackDBSession();
+            logger.error("Failed to record file validity sequences, live " +
+            		"file queries will miss files imported before them");
+            return;
+        }
+        
+        if (!commitDBSession()) {
+            logger.error("Failed to commit file validity sequences, live " +
+                    "file queries will miss files imported before them");
+            return;
+        }
+        logger.info("Recorded validity sequences for " + updated + " files");
+    }
 
     @Override
     public void shutDown() {
@@ -42,6 +42,9 @@ import java.io.InputStream;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import eu.sqooss.service.util.FileUtils;
@@ -49,6 +52,7 @@ import org.apache.commons.codec.binary.Hex;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.cache.CacheService;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectVersion;
@@ -100,6 +104,24 @@ public class FDSServiceImpl implements FDSService, Runnable {
      */
     private ConcurrentHashMap<OnDiskCheckout, Integer> checkoutHandles;
 
+    /**
+     * File retrievals in progress, keyed by the local path of the file.
+     */
+    private ConcurrentHashMap<String, FutureTask<File>> fileLoads =
+        new ConcurrentHashMap<String, FutureTask<File>>();
+
+    /**
+     * Requests for file contents served from and missed in the cache service.
+     */
+    private AtomicLong contentsCacheHits = new AtomicLong();
+    private AtomicLong contentsCacheMisses = new AtomicLong();
+
+    /**
+     * Whether file contents are stored in the cache service. Off by 
+     * default, as the cache is not bounded by all its implementations.
+     */
+    private boolean contentsCacheEnabled = false;
+
     private BundleContext bc;
     
     /*
@@ -415,7 +437,7 @@ public class FDSServiceImpl implements FDSService, Runnable {
     // ===[ INTERFACE METHODS ]===============================================
 
     /** {@inheritDoc} */
-    public synchronized File getFile(ProjectFile pf) {
+    public File getFile(ProjectFile pf) {
         Revision projectRevision = projectFileRevision(pf);
         if (projectRevision == null) {
             return null;
@@ -426,42 +448,80 @@ public class FDSServiceImpl implements FDSService, Runnable {
             return null;
         }
 
+        // Skip the checkout, in case this ProjectFile is already
+        // available (i.e. retrieved in a previous checkout)
+        if (FileLoader.isCheckedOut(checkoutFile)) {
+            return checkoutFile;
+        }
+
         SCMAccessor scm = projectFileAccessor(pf);
         if (scm == null) {
             return null;
         }
 
+        // Only one thread retrieves each file; concurrent requests for
+        // the same file wait for it to finish
+        String key = checkoutFile.getAbsolutePath();
+        FutureTask<File> load = new FutureTask<File>(new FileLoader(scm,
+                pf.getFileName(), projectRevision, checkoutFile));
+        FutureTask<File> running = fileLoads.putIfAbsent(key, load);
+        if (running == null) {
+            running = load;
+            try {
+                load.run();
+            } finally {
+                fileLoads.remove(key, load);
+            }
+        }
+
         try {
-            // Skip the checkout, in case this ProjectFile is already
-            // available (i.e. retrieved in a previous checkout)
-            if (!(checkoutFile.exists() && checkoutFile.length() <= 0)) {
-                // Create the path to the target file if it doesn't exist
-                if ((checkoutFile.getParentFile() != null)
-                        && (!checkoutFile.getParentFile().exists())) {
-                    checkoutFile.getParentFile().mkdirs();
-                }
-                // Try to checkout the target file
-                scm.getFile(pf.getFileName(), projectRevision, checkoutFile);
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            Throwable e = ee.getCause();
+            if (e instanceof InvalidRepositoryException) {
+                logger.error("The repository for " + pf.toString()
+                        + " is invalid: " + e.getMessage());
+            } else if (e instanceof InvalidProjectRevisionException) {
+                logger.error("The repository for "
+                        + pf.getProjectVersion().getProject() + " has no revision "
+                        + projectRevision + ":" + e.getMessage());
+            } else if (e instanceof FileNotFoundException) {
+                logger.error("File " + pf.toString() + " not found in the given "
+                        + "repository: " + e.getMessage());
+            } else {
+                logger.error("Error retrieving file " + pf.toString() + ": " 
+                        + e.getMessage());
             }
+        }
+        return null;
+    }
 
-            // Make sure that the target file is accessible
-            if ((checkoutFile.exists()) && (checkoutFile.isFile())
-                    && (checkoutFile.canRead())) {
-                return checkoutFile;
+    /**
+     * Key under which the contents of a project file are cached. If the
+     * repository identifies file contents (e.g. git blob ids), files with
+     * the same contents share a key. Otherwise, project file entries are 
+     * only created when a file changes, so the path and the revision the 
+     * entry was recorded in identify the file contents across all the 
+     * versions the entry is live in.
+     */
+    private String contentsCacheKey(ProjectFile pf, SCMAccessor scm, 
+            Revision projectRevision) {
+        try {
+            String id;
+            synchronized (scm) {
+                id = scm.getContentId(pf.getFileName(), projectRevision);
             }
-            // returning null here is fine
+            if (id != null)
+                return "fds:content:" + id;
         } catch (InvalidRepositoryException e) {
-            logger.error("The repository for " + pf.toString()
-                    + " is invalid: " + e.getMessage());
-        } catch (InvalidProjectRevisionException e) {
-            logger.error("The repository for "
-                    + pf.getProjectVersion().getProject() + " has no revision "
-                    + projectRevision + ":" + e.getMessage());
-        } catch (FileNotFoundException e) {
-            logger.error("File " + pf.toString() + " not found in the given "
-                    + "repository: " + e.getMessage());
+            logger.warn("Cannot get content id for " + pf.toString() + ": " 
+                    + e.getMessage());
         }
-        return null;
+        return "fds:" + pf.getProjectVersion().getProject().getId() + ":"
+                + pf.getFileName() + "@" 
+                + pf.getProjectVersion().getRevisionId();
     }
 
     /** {@inheritDoc} */
@@ -473,9 +533,32 @@ public class FDSServiceImpl implements FDSService, Runnable {
         }
 
         SCMAccessor scm = projectFileAccessor(pf);
+        if (scm == null) {
+            return null;
+        }
+
+        CacheService cache = null;
+        if (contentsCacheEnabled)
+            cache = AlitheiaCore.getInstance().getCacheService();
+        String key = null;
+        if (cache != null) {
+            key = contentsCacheKey(pf, scm, projectRevision);
+            InputStream cached = cache.getStream(key);
+            if (cached != null) {
+                contentsCacheHits.incrementAndGet();
+                return cached;
+            }
+            contentsCacheMisses.incrementAndGet();
+        }
+
         ByteArrayOutputStream buff = new ByteArrayOutputStream();
         try {
-            scm.getFile(pf.getFileName(), projectRevision, buff);
+            // Accessors are not thread safe, see FileLoader
+            synchronized (scm) {
+                scm.getFile(pf.getFileName(), projectRevision, buff);
+            }
+            if (cache != null)
+                cache.set(key, buff.toByteArray());
         } catch (InvalidProjectRevisionException e) {
             logger.error("The repository for " + pf.toString()
                     + " is invalid: " + e.getMessage());
@@ -493,6 +576,16 @@ public class FDSServiceImpl implements FDSService, Runnable {
         return contents;
     }
 
+    /** {@inheritDoc} */
+    public long getContentsCacheHits() {
+        return contentsCacheHits.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getContentsCacheMisses() {
+        return contentsCacheMisses.get();
+    }
+
     /** {@inheritDoc} */
     public InMemoryCheckout getInMemoryCheckout(ProjectVersion pv)
             throws CheckoutException {
@@ -704,6 +797,12 @@ public class FDSServiceImpl implements FDSService, Runnable {
         fdsCheckoutRoot = new File(s);
         randomCheckout = new Random();
 
+        s = bc.getProperty("eu.sqooss.fds.contentscache");
+        if (s != null && s.equals("true")) {
+            contentsCacheEnabled = true;
+            logger.info("Caching file contents in the cache service");
+        }
+
         return true;
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.fds;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import eu.sqooss.service.tds.Revision;
+import eu.sqooss.service.tds.SCMAccessor;
+
+/**
+ * Retrieves a single file from the repository to the FDS checkout area.
+ * The file is first written to a temporary file and then renamed, so
+ * that readers never see a partially written file.
+ * 
+ * SCM accessors are not required to be thread safe (the SVN accessor 
+ * shares one repository connection), so the accessor is locked while the 
+ * file is retrieved. Files of different projects are retrieved in 
+ * parallel.
+ */
+public class FileLoader implements Callable<File> {
+    private SCMAccessor scm;
+    private String path;
+    private Revision revision;
+    private File checkoutFile;
+
+    public FileLoader(SCMAccessor scm, String path, Revision revision,
+            File checkoutFile) {
+        this.scm = scm;
+        this.path = path;
+        this.revision = revision;
+        this.checkoutFile = checkoutFile;
+    }
+
+    public File call() throws Exception {
+        // Another thread may have retrieved the file while we were
+        // waiting to be scheduled
+        if (isCheckedOut(checkoutFile))
+            return checkoutFile;
+
+        // Create the path to the target file if it doesn't exist
+        if ((checkoutFile.getParentFile() != null)
+                && (!checkoutFile.getParentFile().exists())) {
+            checkoutFile.getParentFile().mkdirs();
+        }
+
+        File tmp = new File(checkoutFile.getPath() + ".part");
+        try {
+            synchronized (scm) {
+                scm.getFile(path, revision, tmp);
+            }
+            if (!tmp.renameTo(checkoutFile))
+                return null;
+        } finally {
+            tmp.delete();
+        }
+
+        return isCheckedOut(checkoutFile) ? checkoutFile : null;
+    }
+
+    /**
+     * Check whether a file has been retrieved and is accessible.
+     */
+    public static boolean isCheckedOut(File f) {
+        return f.exists() && f.isFile() && f.canRead();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A bounded, lock-free queue of logging events, drained by a single
+ * background thread that passes them to the log4j appenders. Any number of
+ * threads may add events concurrently; adding an event never blocks. When 
+ * the queue is full, the event is appended directly on the calling thread,
+ * so that no messages are lost.
+ */
+public class AsyncLogQueue implements Runnable {
+
+    private final AtomicReferenceArray<LoggingEvent> slots;
+    private final int mask;
+    
+    /* Next slot to be claimed by a producer */
+    private final AtomicLong head = new AtomicLong();
+    /* Next slot to be read by the consumer; written by the consumer only */
+    private volatile long tail = 0;
+    
+    private final AtomicLong overflows = new AtomicLong();
+    
+    private volatile boolean running = true;
+    private volatile boolean waiting = false;
+    private final Thread thread;
+    
+    /**
+     * @param capacity The number of events the queue can hold, rounded up 
+     *  to the next power of two
+     */
+    public AsyncLogQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<LoggingEvent>(size);
+        mask = size - 1;
+        thread = new Thread(this, "Log appender");
+        thread.setDaemon(true);
+    }
+    
+    public void start() {
+        thread.start();
+    }
+    
+    /**
+     * Queue an event to be appended by the background thread.
+     */
+    public void append(LoggingEvent e) {
+        if (!running || !offer(e)) {
+            overflows.incrementAndGet();
+            e.getLogger().callAppenders(e);
+            return;
+        }
+        if (waiting)
+            LockSupport.unpark(thread);
+    }
+    
+    boolean offer(LoggingEvent e) {
+        long h;
+        do {
+            h = head.get();
+            if (h - tail >= slots.length())
+                return false;
+        } while (!head.compareAndSet(h, h + 1));
+        slots.lazySet((int) h & mask, e);
+        return true;
+    }
+    
+    LoggingEvent poll() {
+        int i = (int) tail & mask;
+        LoggingEvent e = slots.get(i);
+        if (e == null)
+            return null;
+        slots.lazySet(i, null);
+        tail = tail + 1;
+        return e;
+    }
+    
+    /** The number of events waiting to be appended */
+    public long size() {
+        return head.get() - tail;
+    }
+    
+    /** The number of events that were appended on the calling thread */
+    public long getOverflows() {
+        return overflows.get();
+    }
+    
+    public void run() {
+        while (running || size() > 0) {
+            LoggingEvent e = poll();
+            if (e != null) {
+                e.getLogger().callAppenders(e);
+                continue;
+            }
+            waiting = true;
+            if (size() == 0)
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            waiting = false;
+        }
+    }
+    
+    /**
+     * Stop accepting events and wait until the queued ones have been 
+     * appended.
+     */
+    public void shutDown() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        /* Events queued while the appender thread was exiting */
+        if (!thread.isAlive()) {
+            LoggingEvent e;
+            while ((e = poll()) != null)
+                e.getLogger().callAppenders(e);
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
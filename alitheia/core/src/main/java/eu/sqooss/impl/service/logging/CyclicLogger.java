@@ -47,7 +47,9 @@ public class CyclicLogger extends AppenderSkeleton {
     }
 
     protected void append(LoggingEvent e) {
-        buffer.add(e);
+        synchronized(buffer) {
+            buffer.add(e);
+        }
     }
 
     public boolean requiresLayout() {
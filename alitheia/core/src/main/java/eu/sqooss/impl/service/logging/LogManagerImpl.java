@@ -35,9 +35,9 @@ package eu.sqooss.impl.service.logging;
 
 import java.net.URL;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.PatternLayout;
 import org.apache.log4j.PropertyConfigurator;
@@ -48,6 +48,13 @@ import eu.sqooss.service.logging.LogManager;
 import eu.sqooss.service.logging.Logger;
 
 public class LogManagerImpl implements LogManager {
+    
+    /** Append log messages on a background thread */
+    public static final String ASYNC_PROPERTY = "eu.sqooss.log.async";
+    
+    /** Number of messages the background thread can fall behind */
+    public static final String ASYNC_BUFFER_PROPERTY = "eu.sqooss.log.async.buffer";
+    
     // Our singleton manager
     public static LogManagerImpl logManager = null;
 
@@ -55,25 +62,33 @@ public class LogManagerImpl implements LogManager {
     private BundleContext bc;
 
     // This map stores all of the valid and active loggers in the system.
-    private Map<String,LoggerImpl> loggers = null;
+    // Loggers are kept after their last release, as they are cheap and
+    // often requested again.
+    private ConcurrentMap<String,LoggerImpl> loggers = null;
 
     private CyclicLogger cyclicLogger = null;
+    
+    // Null if logging is synchronous
+    private AsyncLogQueue queue = null;
 
     public LogManagerImpl() {}
 
     public LogManagerImpl(boolean testInit) {
         logManager = new LogManagerImpl();
-        loggers = new HashMap<String, LoggerImpl>();
+        loggers = new ConcurrentHashMap<String, LoggerImpl>();
     }
     
     public Logger createLogger(String name) {
         LoggerImpl logger = loggers.get(name);
 
         if (logger == null) {
-            org.apache.log4j.Logger.getRootLogger().info(
-                "Creating logger <" + name + ">");
-            logger = new LoggerImpl(name);
-            loggers.put(name, logger);
+            LoggerImpl l = new LoggerImpl(name, queue);
+            logger = loggers.putIfAbsent(name, l);
+            if (logger == null) {
+                org.apache.log4j.Logger.getRootLogger().info(
+                        "Creating logger <" + name + ">");
+                logger = l;
+            }
         }
         
         logger.get();
@@ -81,23 +96,15 @@ public class LogManagerImpl implements LogManager {
     }
 
     public void releaseLogger(String name) {
-        LoggerImpl logger;
-        if (!loggers.containsKey(name)) {
-            org.apache.log4j.Logger.getRootLogger().error("Release for bogus logger <" + name + ">");
-            return;
-        }
-
-        logger = loggers.get(name);
+        LoggerImpl logger = loggers.get(name);
         if (logger == null) {
-            org.apache.log4j.Logger.getRootLogger().error("Release on unallocated logger <" + name + ">");
+            org.apache.log4j.Logger.getRootLogger().error("Release for bogus logger <" + name + ">");
             return;
         }
 
         if (logger.unget() == 0) {
             org.apache.log4j.Logger.getRootLogger().info(
                     "Released last logger for <" + name + ">");
-
-            loggers.put(name, null);
         }
     }
 
@@ -120,12 +127,15 @@ public class LogManagerImpl implements LogManager {
 
 	@Override
 	public void shutDown() {
-	    
+	    if (queue != null) {
+	        queue.shutDown();
+	        queue = null;
+	    }
 	}
 
 	@Override
 	public boolean startUp() {
-	    loggers = new HashMap<String, LoggerImpl>();
+	    loggers = new ConcurrentHashMap<String, LoggerImpl>();
 		// The configuration is read automatically from the file log4j.properties
         // in the bundle .jar ; this is much like calling:
         //     PropertyConfigurator.configure("/log4j.properties");
@@ -154,6 +164,22 @@ public class LogManagerImpl implements LogManager {
         l.setThreshold(org.apache.log4j.Level.WARN);
         org.apache.log4j.Logger.getRootLogger().addAppender(l);
         cyclicLogger = l;
+        
+        if (Boolean.parseBoolean(bc.getProperty(ASYNC_PROPERTY))) {
+            int size = 8192;
+            String buffer = bc.getProperty(ASYNC_BUFFER_PROPERTY);
+            try {
+                if (buffer != null)
+                    size = Integer.parseInt(buffer.trim());
+            } catch (NumberFormatException e) {
+                org.apache.log4j.Logger.getRootLogger().warn("Invalid value <"
+                        + buffer + "> for " + ASYNC_BUFFER_PROPERTY);
+            }
+            queue = new AsyncLogQueue(size);
+            queue.start();
+            org.apache.log4j.Logger.getRootLogger().info(
+                    "Logging asynchronously, buffer size " + size);
+        }
 
         logManager = this;
         return true;
@@ -33,12 +33,17 @@
 
 package eu.sqooss.impl.service.logging;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
 import eu.sqooss.service.logging.Logger;
 
 public class LoggerImpl implements Logger {
 
-    // We use an object for synchronising between threads.
-    private Object lockObject = new Object();
+    // Fully qualified name of this class, used by log4j for location info.
+    private static final String FQCN = LoggerImpl.class.getName();
 
     // The name of this logger.
     private String name;
@@ -46,12 +51,19 @@ public class LoggerImpl implements Logger {
     // The actual backend logger being used.
     private org.apache.log4j.Logger theLogger;
 
+    // Queue for asynchronous logging, or null to log on the calling thread.
+    private AsyncLogQueue queue;
+
     // Reference count this logger. Used by LogManager.
-    private int takingsNumber;
+    private AtomicInteger takingsNumber = new AtomicInteger();
 
     public LoggerImpl(String name) {
+        this(name, null);
+    }
+
+    public LoggerImpl(String name, AsyncLogQueue queue) {
         this.name = name;
-        takingsNumber = 0;
+        this.queue = queue;
         theLogger = org.apache.log4j.Logger.getLogger(name);
     }
 
@@ -59,50 +71,105 @@ public class LoggerImpl implements Logger {
         return name;
     }
 
+    public boolean isDebugEnabled() {
+        return theLogger.isDebugEnabled();
+    }
+
     public void debug(String message) {
-        synchronized (lockObject) {
-            theLogger.debug(message);
-        }
+        log(Level.DEBUG, message, null);
+    }
+
+    public void debug(String format, Object... args) {
+        log(Level.DEBUG, format, args);
     }
 
     public void info(String message) {
-        synchronized (lockObject) {
-            theLogger.info(message);
-        }
+        log(Level.INFO, message, null);
+    }
+
+    public void info(String format, Object... args) {
+        log(Level.INFO, format, args);
     }
 
     public void warn(String message) {
-        synchronized (lockObject) {
-            theLogger.warn(message);
-        }
+        log(Level.WARN, message, null);
+    }
+
+    public void warn(String format, Object... args) {
+        log(Level.WARN, format, args);
     }
 
     public void warn(String message, Exception e) {
-        synchronized (lockObject) {
-            theLogger.warn(message);
-            theLogger.warn(renderStackTrace(e));
+        if (theLogger.isEnabledFor(Level.WARN)) {
+            append(Level.WARN, message);
+            append(Level.WARN, renderStackTrace(e));
         }
     }
 
     public void error(String message) {
-        synchronized (lockObject) {
-            theLogger.error(message);
-        }
+        log(Level.ERROR, message, null);
+    }
+
+    public void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
     }
 
     public void error(String message, Exception e) {
-        synchronized (lockObject) {
-            theLogger.error(message);
-            theLogger.error(renderStackTrace(e));
+        if (theLogger.isEnabledFor(Level.ERROR)) {
+            append(Level.ERROR, message);
+            append(Level.ERROR, renderStackTrace(e));
         }
     }
 
     protected void get() {
-        takingsNumber++;
+        takingsNumber.incrementAndGet();
     }
 
     protected int unget() {
-        return --takingsNumber;
+        return takingsNumber.decrementAndGet();
+    }
+
+    private void log(Level level, String format, Object[] args) {
+        if (!theLogger.isEnabledFor(level))
+            return;
+        append(level, args == null ? format : format(format, args));
+    }
+
+    private void append(Level level, String message) {
+        LoggingEvent e = new LoggingEvent(FQCN, theLogger, level, message, null);
+        if (queue == null) {
+            theLogger.callAppenders(e);
+            return;
+        }
+        // Thread names, location info and the diagnostic contexts are 
+        // resolved lazily; do it before changing threads
+        e.getThreadName();
+        e.getLocationInformation();
+        e.getNDC();
+        e.getMDCCopy();
+        queue.append(e);
+    }
+
+    /**
+     * Replace each <code>{}</code> in the format with the string value 
+     * of the next argument.
+     */
+    static String format(String format, Object[] args) {
+        if (format == null || args == null || args.length == 0)
+            return format;
+
+        StringBuilder b = new StringBuilder(format.length() + 16 * args.length);
+        int pos = 0, arg = 0;
+        while (arg < args.length) {
+            int i = format.indexOf("{}", pos);
+            if (i < 0)
+                break;
+            b.append(format, pos, i);
+            b.append(args[arg++]);
+            pos = i + 2;
+        }
+        b.append(format, pos, format.length());
+        return b.toString();
     }
 
     private static String renderStackTrace(Exception e) {
@@ -0,0 +1,303 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.exception.LockAcquisitionException;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Metric job that runs a metric on many resources of the same type. 
+ * Resources are processed in chunks; each chunk is loaded with a single 
+ * query and its results are committed in a single transaction.
+ * <p>
+ * Failures are isolated per resource. A resource that is locked by 
+ * another job is skipped, as it has already been rescheduled. A resource
+ * on which the metric fails is moved to a {@link MetricActivatorJob} of
+ * its own, so that its error is reported as usual. In both cases, the 
+ * chunk's transaction is rolled back and the rest of the chunk is 
+ * processed again, so that no partial results of the skipped resource 
+ * are committed. Failed commits and database lock failures restart the
+ * current chunk, up to the same number of restarts as 
+ * {@link Job#restart()} allows.
+ * </p> 
+ * <p>
+ * Database and metric access go through the protected chunk methods, so
+ * that the failure handling can be tested without a database.
+ * </p>
+ */
+public class MetricActivatorBatchJob extends Job {
+
+    private static final int MAX_RESTARTS = 5;
+
+    private Logger logger;
+    private DBService dbs;
+    private long[] daoIDs;
+    private boolean[] skip;
+    private int commitInterval;
+    private AbstractMetric metric;
+    private long priority;
+    Class<? extends DAObject> daoType;
+    private boolean fastSync = false;
+    /* Tracks the state of the jobs resources are moved to */
+    private MetricSyncStream stream;
+    private volatile int moved = 0;
+    /* The projects of the resources in the current chunk */
+    private Set<Long> chunkProjects = new HashSet<Long>();
+
+    private Map<Class<?>, List<Metric>> supported = 
+        new HashMap<Class<?>, List<Metric>>();
+
+    MetricActivatorBatchJob(AbstractMetric m, long[] daoIDs, 
+            int commitInterval, Logger l, Class<? extends DAObject> daoType, 
+            long priority, boolean fastSync) {
+        this(m, daoIDs, commitInterval, 
+                AlitheiaCore.getInstance().getDBService(), l, daoType, 
+                priority, fastSync);
+    }
+
+    protected MetricActivatorBatchJob(AbstractMetric m, long[] daoIDs, 
+            int commitInterval, DBService dbs, Logger l, 
+            Class<? extends DAObject> daoType, long priority, 
+            boolean fastSync) {
+        this.metric = m;
+        this.daoIDs = daoIDs;
+        this.skip = new boolean[daoIDs.length];
+        this.commitInterval = (commitInterval > 0) ? commitInterval : daoIDs.length;
+        this.logger = l;
+        this.daoType = daoType;
+        this.dbs = dbs;
+        this.priority = priority;
+        this.fastSync = fastSync;
+    }
+
+    @Override
+    public long priority() {
+        return priority;
+    }
+
+    /** 
+     * The number of resources processed by this job, not including those
+     * moved to jobs of their own.
+     */
+    public int size() {
+        return daoIDs.length - moved;
+    }
+    
+    /**
+     * Set the sync stream that must track the jobs that resources failing
+     * in this job are moved to.
+     */
+    void setStream(MetricSyncStream s) {
+        this.stream = s;
+    }
+
+    @Override
+    protected void run() throws Exception {
+        int pos = 0, restarts = 0;
+
+        while (pos < daoIDs.length) {
+            int end = Math.min(daoIDs.length, pos + commitInterval);
+            beginChunk();
+            chunkProjects.clear();
+            
+            if (runChunk(pos, end) && commitChunk()) {
+                pos = end;
+                continue;
+            }
+            
+            rollbackChunk();
+            if (++restarts >= MAX_RESTARTS)
+                throw new Exception("Too many restarts - failing job");
+            logger.warn("commit failed - restarting metric batch from DAO " 
+                    + daoIDs[pos]);
+        }
+    }
+
+    /**
+     * Run the metric on a chunk of resources.
+     * @return false if the chunk must be processed again
+     */
+    private boolean runChunk(int start, int end) throws Exception {
+        List<Long> ids = new ArrayList<Long>(end - start);
+        for (int i = start; i < end; i++)
+            if (!skip[i])
+                ids.add(daoIDs[i]);
+        
+        if (ids.isEmpty())
+            return true;
+        
+        List<DAObject> objs = load(ids);
+        Map<Long, DAObject> byId = new HashMap<Long, DAObject>(objs.size() * 2);
+        for (DAObject o : objs)
+            byId.put(o.getId(), o);
+        
+        for (int i = start; i < end; i++) {
+            if (skip[i])
+                continue;
+            
+            DAObject obj = byId.get(daoIDs[i]);
+            if (obj == null) {
+                logger.warn("DAO id " + daoIDs[i] + " not found, skipping");
+                continue;
+            }
+
+            try {
+                calculate(obj);
+            } catch (MetricMismatchException e) {
+                logger.warn("Metric " + metric.getName() + " failed");
+            } catch (AlreadyProcessingException ape) {
+                logger.warn("DAO id " + daoIDs[i] + " is locked, job has " +
+                        "been rescheduled");
+                return skipAndReplay(i, start, end);
+            } catch (LockAcquisitionException lae) {
+                return false;
+            } catch (Exception e) {
+                moveToOwnJob(daoIDs[i], e);
+                moved++;
+                return skipAndReplay(i, start, end);
+            }
+        }
+        return true;
+    }
+    
+    /*
+     * Drop whatever the interrupted calculation wrote and process the 
+     * rest of the chunk, without the resource at pos, in a new transaction.
+     */
+    private boolean skipAndReplay(int pos, int start, int end) 
+    throws Exception {
+        skip[pos] = true;
+        rollbackChunk();
+        beginChunk();
+        return runChunk(start, end);
+    }
+
+    /** Start the transaction of a chunk. */
+    protected void beginChunk() {
+        dbs.startDBSession();
+        metric.setJob(this);
+    }
+
+    /**
+     * Commit the transaction of a chunk.
+     * @return false if the commit failed 
+     */
+    protected boolean commitChunk() {
+        if (!dbs.commitDBSession())
+            return false;
+        for (Long projectId : chunkProjects)
+            MetricActivatorJob.invalidateResults(projectId);
+        return true;
+    }
+
+    /** Roll back the transaction of a chunk, if it is still active. */
+    protected void rollbackChunk() {
+        if (dbs.isDBSessionActive())
+            dbs.rollbackDBSession();
+    }
+
+    /**
+     * Load the resources with the provided ids. Resources that do not 
+     * exist are left out.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<DAObject> load(List<Long> ids) {
+        Map<String, Collection> params = new HashMap<String, Collection>();
+        params.put("ids", ids);
+        List<DAObject> objs = (List<DAObject>) dbs.doHQL("from " 
+                + daoType.getName() + " o where o.id in (:ids)", null, params);
+        for (DAObject o : objs)
+            chunkProjects.add(MetricActivatorJob.getProjectId(o));
+        return objs;
+    }
+
+    /** Run the metric on a single resource. */
+    protected void calculate(DAObject obj) throws Exception {
+        List<Metric> metrics = getSupportedMetrics(obj);
+        if (fastSync) {
+            /* See MetricActivatorJob */
+            metric.getResult(obj, metrics.subList(0, 1));
+        } else {
+            metric.getResult(obj, metrics);
+        }
+    }
+
+    /** Run the metric on a failing resource in a job of its own. */
+    protected void moveToOwnJob(long daoID, Exception cause) throws Exception {
+        logger.warn("Metric " + metric.getName() + " failed on DAO id "
+                + daoID + ", moving it to a separate job: " 
+                + cause.getMessage());
+        Job j = new MetricActivatorJob(metric, daoID, logger, daoType, 
+                priority, fastSync);
+        if (stream != null)
+            stream.adopt(j);
+        AlitheiaCore.getInstance().getScheduler().enqueue(j);
+    }
+
+    private List<Metric> getSupportedMetrics(DAObject obj) {
+        List<Metric> m = supported.get(obj.getClass());
+        if (m == null) {
+            m = metric.getSupportedMetrics(obj.getClass());
+            supported.put(obj.getClass(), m);
+        }
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricActivatorBatchJob: Metric:{" + metric.getName() 
+            + "} Activator:{" + daoType.getSimpleName() + "} DAOs:{" 
+            + daoIDs[0] + "-" + daoIDs[daoIDs.length - 1] + ", " 
+            + daoIDs.length + " total}";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
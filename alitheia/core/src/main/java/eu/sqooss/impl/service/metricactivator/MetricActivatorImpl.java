@@ -72,6 +72,12 @@ import eu.sqooss.service.util.GraphTS;
 
 public class MetricActivatorImpl  implements MetricActivator {
 
+    /** 
+     * Number of resources to schedule metric jobs for at once. If not set,
+     * all resources to sync are loaded and scheduled in one go. 
+     */
+    private static final String SYNC_BATCH_PROPERTY = "eu.sqooss.metricactivator.syncbatch";
+
     /** The parent bundle's context object. */
     private BundleContext bc;
 
@@ -81,6 +87,7 @@ public class MetricActivatorImpl  implements MetricActivator {
     private DBService db;
     private Scheduler sched;
     private boolean fastSync = false;
+    private int syncBatch = 0;
 
     private AtomicLong priority;
     
@@ -90,11 +97,25 @@ public class MetricActivatorImpl  implements MetricActivator {
 
     @Override
 	public <T extends DAObject> void runMetric(T resource, AlitheiaPlugin ap) {
+	    runMetric(resource, ap, null);
+	}
+
+    @Override
+    public <T extends DAObject> void runMetric(T resource, AlitheiaPlugin ap,
+            Job after) {
     	Class<? extends DAObject> activator = resource.getClass();
     	Job j = new MetricActivatorJob((AbstractMetric)ap, resource.getId(), logger, 
     			metricTypesToActivators.get(activator),
     			priority.incrementAndGet(),
     			fastSync);
+    	if (after != null) {
+    	    try {
+    	        j.addDependency(after);
+    	    } catch (SchedulerException e) {
+    	        logger.warn("Cannot run " + j + " after " + after + ": " 
+    	                + e.getMessage());
+    	    }
+    	}
     	try {
             sched.enqueue(j);
         } catch (SchedulerException e) {
@@ -297,6 +318,37 @@ public class MetricActivatorImpl  implements MetricActivator {
                 return;
             }
 
+            AbstractMetric metric = 
+                (AbstractMetric) bc.getService(mi.getServiceRef());
+            
+            /*Check what is the default activation ordering as suggested by the metric*/
+            Class<? extends DAObject>[] activOrder;
+            InvocationOrder invOrder;
+            SchedulerHints hints = metric.getClass().getAnnotation(SchedulerHints.class);
+
+            if (hints == null) {
+                activOrder = (Class<? extends DAObject>[])
+            		SchedulerHints.class.getMethod("activationOrder").getDefaultValue();
+                invOrder = (InvocationOrder)
+                       SchedulerHints.class.getMethod("invocationOrder").getDefaultValue();
+            } else {
+                activOrder = hints.activationOrder();
+                invOrder = hints.invocationOrder();
+            }
+            
+            /*
+             * Stream the resources to sync to the scheduler in batches,
+             * instead of loading all of them in memory.
+             */
+            if (syncBatch > 0) {
+                MetricSyncStream stream = new MetricSyncStream(
+                        MetricActivatorImpl.this, metric, sp, activOrder, 
+                        invOrder, syncBatch, pa, sched, logger);
+                stream.next();
+                dbs.commitDBSession();
+                return;
+            }
+
             List<Metric> metrics = pa.getPlugin(mi).getAllSupportedMetrics();
             
             Map<MetricType.Type, TreeSet<Long>> objectIds = new HashMap<MetricType.Type, TreeSet<Long>>();
@@ -314,24 +366,7 @@ public class MetricActivatorImpl  implements MetricActivator {
             	}
             }
             
-            AbstractMetric metric = 
-                (AbstractMetric) bc.getService(mi.getServiceRef());
             HashSet<Job> jobs = new HashSet<Job>();
-            
-            /*Check what is the default activation ordering as suggested by the metric*/
-            Class<? extends DAObject>[] activOrder;
-            InvocationOrder invOrder;
-            SchedulerHints hints = metric.getClass().getAnnotation(SchedulerHints.class);
-
-            if (hints == null) {
-                activOrder = (Class<? extends DAObject>[])
-            		SchedulerHints.class.getMethod("activationOrder").getDefaultValue();
-                invOrder = (InvocationOrder)
-                       SchedulerHints.class.getMethod("invocationOrder").getDefaultValue();
-            } else {
-                activOrder = hints.activationOrder();
-                invOrder = hints.invocationOrder();
-            }
 
 			/*
 			 * Iterate over all activation types but only create a job when
@@ -356,12 +391,14 @@ public class MetricActivatorImpl  implements MetricActivator {
                     ids = tmp;
                 }
 
+                long[] idArray = new long[ids.size()];
+                MetricType.Type[] types = new MetricType.Type[ids.size()];
+                int i = 0;
                 for (Long l : ids) {
-            		jobs.add(new MetricActivatorJob(metric, l, logger, 
-            			metricTypesToActivators.get(actType),
-            			priority.incrementAndGet(),
-            			fastSync));
-            	}
+                    idArray[i] = l;
+                    types[i++] = actType;
+                }
+                jobs.addAll(createMetricJobs(metric, idArray, types, i));
             }
             sched.enqueueNoDependencies(jobs);
             dbs.commitDBSession();
@@ -373,6 +410,44 @@ public class MetricActivatorImpl  implements MetricActivator {
         }
     }
 
+    /**
+     * Create the jobs that run a metric on the provided resources. 
+     * Consecutive resources of the same type are grouped in batch jobs,
+     * if the metric asks so through its {@link SchedulerHints}.
+     *  
+     * @param ids The resource ids, in invocation order
+     * @param types The type of each resource 
+     * @param n The number of resources in the arrays
+     */
+    List<Job> createMetricJobs(AbstractMetric metric, long[] ids, 
+            MetricType.Type[] types, int n) {
+        SchedulerHints hints = metric.getClass().getAnnotation(SchedulerHints.class);
+        int batch = (hints == null) ? 1 : Math.max(1, hints.batchSize());
+        int commit = (hints == null) ? 0 : hints.batchCommitInterval();
+        
+        List<Job> jobs = new ArrayList<Job>((n / batch) + 1);
+        int i = 0;
+        while (i < n) {
+            int end = i + 1;
+            while (end < n && end - i < batch && types[end] == types[i])
+                end++;
+            
+            if (end - i == 1) {
+                jobs.add(new MetricActivatorJob(metric, ids[i], logger, 
+                        metricTypesToActivators.get(types[i]),
+                        priority.incrementAndGet(), fastSync));
+            } else {
+                long[] batchIds = new long[end - i];
+                System.arraycopy(ids, i, batchIds, 0, end - i);
+                jobs.add(new MetricActivatorBatchJob(metric, batchIds, commit,
+                        logger, metricTypesToActivators.get(types[i]),
+                        priority.incrementAndGet(), fastSync));
+            }
+            i = end;
+        }
+        return jobs;
+    }
+
     class DecreasingLongComparator implements Comparator<Long> {
         @Override
         public int compare(Long a, Long b) {
@@ -433,6 +508,18 @@ public class MetricActivatorImpl  implements MetricActivator {
         
         if (sync != null && sync.equalsIgnoreCase("fast"))
             this.fastSync = true;
+        
+        String batch = bc.getProperty(SYNC_BATCH_PROPERTY);
+        if (batch != null) {
+            try {
+                this.syncBatch = Integer.parseInt(batch);
+            } catch (NumberFormatException nfe) {
+                logger.warn("Invalid metric sync batch size: " + batch);
+            }
+        }
+        
+        if (syncBatch > 0)
+            logger.info("Streaming metric sync, batch size: " + syncBatch);
 	
         return true;
 	}
@@ -41,10 +41,22 @@ import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.abstractmetric.AbstractMetric;
 import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
 import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.db.Bug;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Developer;
+import eu.sqooss.service.db.EncapsulationUnit;
+import eu.sqooss.service.db.ExecutionUnit;
+import eu.sqooss.service.db.MailMessage;
+import eu.sqooss.service.db.MailingList;
+import eu.sqooss.service.db.MailingListThread;
 import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.NameSpace;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.rest.RestService;
 import eu.sqooss.service.metricactivator.MetricActivator;
 import eu.sqooss.service.scheduler.Job;
 
@@ -86,6 +98,7 @@ public class MetricActivatorJob extends Job {
         dbs.startDBSession();
         metric.setJob(this);
         DAObject obj = dbs.findObjectById(daoType, daoID);
+        long projectId = getProjectId(obj);
 
         try {
             if (fastSync) {
@@ -117,7 +130,61 @@ public class MetricActivatorJob extends Job {
         if (!dbs.commitDBSession()) {
             logger.warn("commit failed - restarting metric job");
             restart();
+            return;
+        }
+        
+        invalidateResults(projectId);
+    }
+    
+    /**
+     * Invalidate the cached REST responses that depend on the results of
+     * the provided project, or of all projects if the id is -1.
+     */
+    static void invalidateResults(long projectId) {
+        RestService rs = AlitheiaCore.getInstance().getRestService();
+        if (rs == null)
+            return;
+        if (projectId < 0)
+            rs.invalidateResults();
+        else
+            rs.invalidateResults(projectId);
+    }
+    
+    /**
+     * Get the id of the project a metric activation DAO belongs to.
+     * Must be called with an active DB session.
+     * 
+     * @return The project id, or -1 if it cannot be determined
+     */
+    static long getProjectId(DAObject o) {
+        StoredProject sp = null;
+        if (o instanceof StoredProject) {
+            sp = (StoredProject) o;
+        } else if (o instanceof ProjectVersion) {
+            sp = ((ProjectVersion) o).getProject();
+        } else if (o instanceof ProjectFile) {
+            ProjectFile pf = (ProjectFile) o;
+            if (pf.getProjectId() != null)
+                return pf.getProjectId();
+            sp = pf.getProjectVersion().getProject();
+        } else if (o instanceof MailMessage) {
+            sp = ((MailMessage) o).getList().getStoredProject();
+        } else if (o instanceof MailingList) {
+            sp = ((MailingList) o).getStoredProject();
+        } else if (o instanceof MailingListThread) {
+            sp = ((MailingListThread) o).getList().getStoredProject();
+        } else if (o instanceof Bug) {
+            sp = ((Bug) o).getProject();
+        } else if (o instanceof Developer) {
+            sp = ((Developer) o).getStoredProject();
+        } else if (o instanceof NameSpace) {
+            sp = ((NameSpace) o).getChangeVersion().getProject();
+        } else if (o instanceof EncapsulationUnit) {
+            return getProjectId(((EncapsulationUnit) o).getFile());
+        } else if (o instanceof ExecutionUnit) {
+            return getProjectId(((ExecutionUnit) o).getFile());
         }
+        return (sp == null) ? -1 : sp.getId();
     }
 
     @Override
@@ -0,0 +1,452 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
+import eu.sqooss.service.abstractmetric.InvocationOrder;
+import eu.sqooss.service.abstractmetric.SyncPlanner;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.metricactivator.MetricActivationException;
+import eu.sqooss.service.pa.PluginAdmin;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.JobStateListener;
+import eu.sqooss.service.scheduler.Scheduler;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+/**
+ * Feeds the metric jobs required to synchronise a plug-in with a project
+ * to the scheduler in bounded batches, instead of materialising the ids 
+ * of all unmeasured resources in memory.
+ * <p>
+ * Resource ids are read in pages through 
+ * {@link AlitheiaPlugin#getObjectIdsToSync(StoredProject, Metric, MetricType.Type, InvocationOrder, long, int)}, 
+ * one cursor per metric and activation type. The cursors of each
+ * activation type are merged, so that a resource is only scheduled once
+ * even if more than one of the plug-in's metrics need to run on it. 
+ * </p>
+ * <p>
+ * At most two batches of jobs are in flight at any time: the stream 
+ * listens to the state changes of the jobs it created and, when half of
+ * the last batch has been processed, schedules a job that reads and 
+ * enqueues the next batch. This way, no worker thread is ever blocked 
+ * waiting for the queue to drain. Each job is accounted for once, when
+ * it finishes, fails or is removed from the scheduler's queue without
+ * running. Removed jobs stop the stream.
+ * </p>
+ * <p>
+ * Cursors start after each metric's {@link SyncPlanner} high-water mark.
+ * When all jobs of the stream have finished without errors, the marks 
+ * are advanced towards the highest id each cursor returned, but never
+ * past a resource that is still unmeasured. Jobs may finish without
+ * storing a result, or reschedule the calculation, so the cursor 
+ * queries are run again to find the lowest such resource.
+ * </p>
+ */
+class MetricSyncStream implements JobStateListener {
+
+    private AbstractMetric metric;
+    private long projectId;
+    private InvocationOrder order;
+    private int batchSize;
+
+    private MetricActivatorImpl ma;
+    private PluginAdmin pa;
+    private Scheduler sched;
+    private Logger logger;
+
+    /* Activation types still to be processed, in activation order */
+    private LinkedList<MetricType.Type> types = new LinkedList<MetricType.Type>();
+    /* Cursors for the activation type currently being processed */
+    private List<SyncCursor> cursors;
+    private MetricType.Type curType;
+    private StoredProject sp;
+
+    /* Cursors whose resources have all been scheduled */
+    private List<SyncCursor> finished = new ArrayList<SyncCursor>();
+
+    /* Jobs of the stream that have not been accounted for */
+    private Set<Job> pending = 
+        Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+    private AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean exhausted = false;
+    private volatile boolean failed = false;
+    private volatile boolean cancelled = false;
+    private boolean marked = false;
+    private Random random = new Random();
+
+    MetricSyncStream(MetricActivatorImpl ma, AbstractMetric metric, 
+            StoredProject sp, Class<? extends DAObject>[] activationOrder, 
+            InvocationOrder order, int batchSize, PluginAdmin pa, 
+            Scheduler sched, Logger logger) {
+        this.ma = ma;
+        this.metric = metric;
+        this.projectId = sp.getId();
+        this.order = order;
+        this.batchSize = batchSize;
+        this.pa = pa;
+        this.sched = sched;
+        this.logger = logger;
+
+        for (Class<? extends DAObject> act : activationOrder)
+            types.add(MetricType.fromActivator(act));
+    }
+
+    /**
+     * Read the next batch of resource ids and enqueue the corresponding
+     * metric jobs. Must be called with an active DB session.
+     */
+    synchronized void next() throws SchedulerException, 
+        MetricActivationException {
+        if (cancelled)
+            return;
+        
+        sp = DAObject.loadDAObyId(projectId, StoredProject.class);
+
+        if (exhausted) {
+            if (inFlight.get() == 0)
+                updateMarks();
+            return;
+        }
+
+        long[] ids = new long[batchSize];
+        MetricType.Type[] idTypes = new MetricType.Type[batchSize];
+        int n = 0;
+
+        while (n < batchSize) {
+            if (cursors == null && !nextType()) {
+                exhausted = true;
+                break;
+            }
+            
+            SyncCursor best = null;
+            for (SyncCursor c : cursors) {
+                if (!c.hasNext())
+                    continue;
+                if (best == null || before(c.peek(), best.peek()))
+                    best = c;
+            }
+
+            if (best == null) {
+                finished.addAll(cursors);
+                cursors = null;
+                continue;
+            }
+
+            long id = best.peek();
+            for (SyncCursor c : cursors) {
+                if (c.hasNext() && c.peek() == id)
+                    c.advance();
+            }
+            ids[n] = id;
+            idTypes[n] = curType;
+            n++;
+        }
+
+        if (order == InvocationOrder.RANDOM) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long tmp = ids[i]; ids[i] = ids[j]; ids[j] = tmp;
+                MetricType.Type t = idTypes[i]; idTypes[i] = idTypes[j]; idTypes[j] = t;
+            }
+        }
+
+        Set<Job> jobs = new HashSet<Job>();
+        for (Job j : ma.createMetricJobs(metric, ids, idTypes, n)) {
+            adopt(j);
+            if (j instanceof MetricActivatorBatchJob)
+                ((MetricActivatorBatchJob) j).setStream(this);
+            jobs.add(j);
+        }
+
+        logger.debug("Sync stream {}: scheduling {} resources in {} jobs{}", 
+                this, n, jobs.size(), 
+                exhausted ? ", no more resources to sync" : "");
+
+        if (n > 0) {
+            inFlight.addAndGet(n);
+            sched.enqueueNoDependencies(jobs);
+        } else if (exhausted) {
+            updateMarks();
+        }
+    }
+
+    /**
+     * Track the state of a job created for resources of the stream. Must
+     * be called before the job is enqueued.
+     */
+    void adopt(Job j) {
+        pending.add(j);
+        j.addJobStateListener(this);
+    }
+
+    /**
+     * Advance the high-water marks of the stream's metrics, if all 
+     * resources have been processed without errors. A mark is only 
+     * moved up to the id preceding the first resource that the metric
+     * still needs to be run on.
+     */
+    private void updateMarks() throws MetricActivationException {
+        if (marked || failed)
+            return;
+        marked = true;
+        
+        for (SyncCursor c : finished) {
+            long mark = SyncPlanner.getHighWaterMark(sp, c.m, c.type);
+            if (c.max <= mark)
+                continue;
+            
+            long upTo = c.max;
+            long[] pending = c.ap.getObjectIdsToSync(sp, c.m, c.type, 
+                    InvocationOrder.OLDFIRST, mark, 1);
+            if (pending.length > 0 && pending[0] <= upTo)
+                upTo = pending[0] - 1;
+            
+            if (upTo > mark) {
+                logger.debug("Sync stream {}: high-water mark for {}/{} at {}",
+                        this, c.m.getMnemonic(), c.type, upTo);
+                SyncPlanner.setHighWaterMark(sp, c.m, c.type, upTo);
+            }
+        }
+    }
+
+    /**
+     * Set up the cursors for the next activation type the plug-in's
+     * metrics support.
+     * @return false if there are no activation types left
+     */
+    private boolean nextType() throws MetricActivationException {
+        while (!types.isEmpty()) {
+            curType = types.removeFirst();
+            cursors = new ArrayList<SyncCursor>();
+            
+            for (Metric m : metric.getAllSupportedMetrics()) {
+                AlitheiaPlugin ap = pa.getImplementingPlugin(m.getMnemonic());
+                List<Class<? extends DAObject>> acts = 
+                    ap.getMetricActivationTypes(m);
+                if (acts == null)
+                    continue;
+                for (Class<? extends DAObject> act : acts) {
+                    if (MetricType.fromActivator(act) == curType) {
+                        cursors.add(new SyncCursor(ap, m, curType));
+                        break;
+                    }
+                }
+            }
+            
+            if (!cursors.isEmpty())
+                return true;
+        }
+        
+        cursors = null;
+        return false;
+    }
+
+    private boolean before(long a, long b) {
+        if (order == InvocationOrder.NEWFIRST)
+            return a > b;
+        return a < b;
+    }
+
+    /**
+     * Schedule the next batch when half of the resources in flight have 
+     * been processed, or update the high-water marks when all of them
+     * have. A job going back to the Created state has been dequeued;
+     * its resources are considered processed, but no more batches are
+     * scheduled. 
+     */
+    public void jobStateChanged(Job j, Job.State state) {
+        boolean dequeued = (state == Job.State.Created);
+        if (state != Job.State.Finished && state != Job.State.Error 
+                && !dequeued)
+            return;
+        if (!pending.remove(j))
+            return;
+        if (state == Job.State.Error)
+            failed = true;
+        if (dequeued) {
+            logger.warn("Sync stream " + this + ": job " + j 
+                    + " was dequeued, stopping");
+            cancelled = true;
+            failed = true;
+        }
+
+        int processed = 1;
+        if (j instanceof MetricActivatorBatchJob)
+            processed = ((MetricActivatorBatchJob) j).size();
+        
+        int left = inFlight.addAndGet(-processed);
+        if (cancelled)
+            return;
+        if ((left <= batchSize / 2 && left + processed > batchSize / 2 
+                && !exhausted) || (left == 0 && exhausted && !failed)) {
+            try {
+                sched.enqueue(new NextBatchJob());
+            } catch (SchedulerException e) {
+                logger.error("Could not schedule the next batch of " + this
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Project:{" + projectId + "} Metric:{" + metric.getName() + "}";
+    }
+
+    /**
+     * A paginated view on the ids of the resources a single metric must
+     * be run on.
+     */
+    private class SyncCursor {
+        AlitheiaPlugin ap;
+        Metric m;
+        MetricType.Type type;
+        long[] page = new long[0];
+        int pos = 0;
+        long last;
+        /* The high-water mark and the highest id returned */
+        long mark, max;
+        boolean done = false;
+
+        SyncCursor(AlitheiaPlugin ap, Metric m, MetricType.Type type) {
+            this.ap = ap;
+            this.m = m;
+            this.type = type;
+            this.mark = this.max = SyncPlanner.getHighWaterMark(sp, m, type);
+            this.last = (order == InvocationOrder.NEWFIRST) ? Long.MAX_VALUE : mark;
+        }
+
+        boolean hasNext() throws MetricActivationException {
+            if (pos < page.length)
+                return true;
+            if (done)
+                return false;
+            page = ap.getObjectIdsToSync(sp, m, type, order, last, batchSize);
+            pos = 0;
+            if (page.length < batchSize)
+                done = true;
+            if (page.length > 0)
+                last = page[page.length - 1];
+            if (order == InvocationOrder.NEWFIRST) {
+                /* Descending pages, stop at the mark */
+                int n = 0;
+                while (n < page.length && page[n] > mark)
+                    n++;
+                if (n < page.length) {
+                    long[] tmp = new long[n];
+                    System.arraycopy(page, 0, tmp, 0, n);
+                    page = tmp;
+                    done = true;
+                }
+                if (page.length > 0)
+                    max = Math.max(max, page[0]);
+            } else if (page.length > 0) {
+                max = Math.max(max, last);
+            }
+            return page.length > 0;
+        }
+
+        long peek() {
+            return page[pos];
+        }
+
+        void advance() {
+            pos++;
+        }
+    }
+
+    /**
+     * Reads and enqueues the next batch of jobs of the stream.
+     */
+    private class NextBatchJob extends Job {
+
+        @Override
+        public long priority() {
+            return 0x2;
+        }
+
+        @Override
+        protected void run() throws Exception {
+            DBService dbs = AlitheiaCore.getInstance().getDBService();
+            if (!dbs.startDBSession()) {
+                failed = true;
+                logger.error("Sync stream " + MetricSyncStream.this 
+                        + ": could not start a DB session, stopping");
+                return;
+            }
+            
+            try {
+                next();
+            } catch (Exception e) {
+                failed = true;
+                if (dbs.isDBSessionActive())
+                    dbs.rollbackDBSession();
+                logger.error("Sync stream " + MetricSyncStream.this 
+                        + ": reading the next batch failed, stopping: " 
+                        + e.getMessage(), e);
+                return;
+            }
+            
+            if (!dbs.commitDBSession()) {
+                failed = true;
+                logger.error("Sync stream " + MetricSyncStream.this 
+                        + ": commit failed, stopping");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MetricSyncStream.NextBatchJob - " + MetricSyncStream.this;
+        }
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
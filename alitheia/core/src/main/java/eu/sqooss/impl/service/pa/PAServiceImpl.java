@@ -50,6 +50,7 @@ import org.osgi.framework.ServiceReference;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
+import eu.sqooss.service.abstractmetric.SyncPlanner;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Metric;
@@ -58,6 +59,7 @@ import eu.sqooss.service.db.PluginConfiguration;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.pa.PluginAdmin;
 import eu.sqooss.service.pa.PluginInfo;
+import eu.sqooss.service.rest.RestService;
 import eu.sqooss.service.scheduler.Job;
 import eu.sqooss.service.scheduler.Scheduler;
 import eu.sqooss.service.scheduler.SchedulerException;
@@ -330,6 +332,12 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         if (daoPlugin != null) {
             // Create an info object for installed plug-in
             pluginInfo = createInstalledPI(srefPlugin, daoPlugin);
+            // Results computed by another version of the plug-in
+            AlitheiaPlugin sobjPlugin = getPluginObject(srefPlugin);
+            if (sobjPlugin != null && sobjPlugin.getVersion() != null
+                    && !sobjPlugin.getVersion().equals(daoPlugin.getVersion())) {
+                upgradePlugin(daoPlugin, sobjPlugin.getVersion());
+            }
         }
         // This plug-in is just registered
         else {
@@ -474,6 +482,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                             // Store the info object
                             registeredPlugins.put(
                                     pluginInfo.getHashcode(), pluginInfo);
+                            invalidateRestCache();
                             return true;
                         }
                     }
@@ -519,6 +528,32 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         return true;
     }
 
+    /*
+     * Drop the results stored by a different version of an installed 
+     * plug-in, as the new version may calculate them differently.
+     */
+    private void upgradePlugin(Plugin p, String version) {
+        logger.info("Plug-in " + p.getName() + " was upgraded from version "
+                + p.getVersion() + " to " + version + ", removing its results");
+        Scheduler s = AlitheiaCore.getInstance().getScheduler();
+        try {
+            s.enqueue(new PluginUpgradeJob(p.getHashcode(), version));
+        } catch (SchedulerException e) {
+            logger.warn("Failed to enqueue plugin upgrade job for plug-in <" 
+                    + p.getName() + ">. Error was: " + e.getMessage());
+        }
+    }
+
+    /* 
+     * Cached REST responses list the installed metrics and the results
+     * of all projects
+     */
+    private void invalidateRestCache() {
+        RestService rs = AlitheiaCore.getInstance().getRestService();
+        if (rs != null)
+            rs.invalidateAll();
+    }
+
     public <T extends DAObject> List<PluginInfo> listPluginProviders(Class<T> o) {
 
         Iterator<PluginInfo> plugins = registeredPlugins.values().iterator();
@@ -675,6 +710,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                     }
                 }
                 dbs.commitDBSession();
+                invalidateRestCache();
             } catch (Exception e) {
                 logger.warn(UNINSTALL_FAILED, e);
             }
@@ -686,6 +722,58 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         }
     }
 
+    private class PluginUpgradeJob extends Job {
+
+        private String hashcode;
+        private String version;
+        
+        public PluginUpgradeJob(String hashcode, String version) {
+            this.hashcode = hashcode;
+            this.version = version;
+        }
+        
+        @Override
+        public long priority() {
+            return 0x3;
+        }
+
+        @Override
+        protected void run() throws Exception {
+            DBService dbs = AlitheiaCore.getInstance().getDBService();
+            dbs.startDBSession();
+            Plugin p = Plugin.getPluginByHashcode(hashcode);
+            if (p == null) {
+                dbs.rollbackDBSession();
+                return;
+            }
+            
+            boolean result = true;
+            for (Metric m : p.getSupportedMetrics()) {
+                result &= m.removeMeasurements();
+                SyncPlanner.clearHighWaterMarks(m);
+            }
+            
+            if (!result) {
+                logger.warn("Failed to remove the results of plug-in <" 
+                        + p.getName() + ">, keeping version " + p.getVersion());
+                dbs.rollbackDBSession();
+                return;
+            }
+            
+            p.setVersion(version);
+            dbs.commitDBSession();
+            invalidateRestCache();
+            logger.info("Removed the results of plug-in <" + p.getName() 
+                    + ">, synchronise its metrics to recalculate them");
+        }
+        
+        @Override
+        public String toString() {
+            return "PluginUpgradeJob - Plugin:{" + hashcode + "} Version:{" 
+                + version + "}";
+        }
+    }
+
 	@Override
 	public boolean startUp() {
 	    logger.info("Starting the PluginAdmin component.");
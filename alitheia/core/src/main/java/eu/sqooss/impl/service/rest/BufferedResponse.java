@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                 Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package eu.sqooss.impl.service.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A response wrapper that keeps the response body in memory, so that it
+ * can be cached and tagged before it is sent. Headers are passed to the
+ * wrapped response as they are set. 
+ */
+class BufferedResponse extends HttpServletResponseWrapper {
+
+    private ByteArrayOutputStream buf = new ByteArrayOutputStream(4096);
+    private ServletOutputStream out;
+    private PrintWriter writer;
+    private int status = SC_OK;
+    private String contentType;
+    private String cacheControl;
+    
+    BufferedResponse(HttpServletResponse response) {
+        super(response);
+    }
+    
+    /** The status code set by the application */
+    int getStatus() {
+        return status;
+    }
+    
+    /** The content type set by the application, or null */
+    String getBufferedContentType() {
+        return contentType;
+    }
+    
+    /** The Cache-Control header set by the application, or null */
+    String getCacheControl() {
+        return cacheControl;
+    }
+    
+    /** The response body written by the application */
+    byte[] getBody() {
+        if (writer != null)
+            writer.flush();
+        return buf.toByteArray();
+    }
+    
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (out == null) {
+            out = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    buf.write(b);
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    buf.write(b, off, len);
+                }
+            };
+        }
+        return out;
+    }
+    
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null)
+            writer = new PrintWriter(new OutputStreamWriter(buf, 
+                    getCharacterEncoding()));
+        return writer;
+    }
+    
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+        super.setStatus(sc);
+    }
+    
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setStatus(int sc, String sm) {
+        status = sc;
+        super.setStatus(sc, sm);
+    }
+    
+    @Override
+    public void sendError(int sc) throws IOException {
+        status = sc;
+        super.sendError(sc);
+    }
+    
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        status = sc;
+        super.sendError(sc, msg);
+    }
+    
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        status = SC_FOUND;
+        super.sendRedirect(location);
+    }
+    
+    @Override
+    public void setContentType(String type) {
+        contentType = type;
+        super.setContentType(type);
+    }
+    
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Type".equalsIgnoreCase(name))
+            contentType = value;
+        else if ("Cache-Control".equalsIgnoreCase(name))
+            cacheControl = value;
+        super.setHeader(name, value);
+    }
+    
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Type".equalsIgnoreCase(name))
+            contentType = value;
+        else if ("Cache-Control".equalsIgnoreCase(name))
+            cacheControl = value;
+        super.addHeader(name, value);
+    }
+    
+    @Override
+    public void setContentLength(int len) {
+        /* Set when the buffered body is sent */
+    }
+    
+    @Override
+    public void flushBuffer() {
+        /* Nothing is sent before the body is complete */
+    }
+    
+    @Override
+    public void resetBuffer() {
+        buf.reset();
+    }
+    
+    @Override
+    public void reset() {
+        buf.reset();
+        status = SC_OK;
+        super.reset();
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
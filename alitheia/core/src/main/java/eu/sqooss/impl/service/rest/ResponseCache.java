@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                 Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package eu.sqooss.impl.service.rest;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded, least recently used cache of serialised REST responses.
+ * <p>
+ * Each response is stored along with the generation of the data it was
+ * computed from. Responses for URLs of the form 
+ * <code>/api/project/{numeric id}/...</code> depend on the data and the
+ * metric results of that project. All other responses depend on the data
+ * of all projects, and those under <code>/api/project</code> and 
+ * <code>/api/metrics</code> also on the metric results of all projects. 
+ * Invalidating data increments the corresponding generation, which makes
+ * the responses computed from older generations stale without having to 
+ * find them.
+ * </p>
+ * <p>
+ * Responses are sent with the Cache-Control header the resource set, or
+ * <code>no-cache</code> if it set none, so that clients revalidate them
+ * using their entity tag.
+ * </p>
+ */
+public class ResponseCache {
+    
+    private static final Pattern PROJECT_URL = 
+        Pattern.compile("^/api/project/([0-9]+)(/.*)?$");
+    private static final Pattern RESULTS_URL = 
+        Pattern.compile("^/api/(project|metrics)(/.*)?$");
+    
+    /** A cached response */
+    public static class Entry {
+        private final byte[] body;
+        private final String contentType;
+        private final String cacheControl;
+        private final String etag;
+        private final long dataGen, resultsGen;
+        
+        Entry(byte[] body, String contentType, String cacheControl, 
+                long dataGen, long resultsGen) {
+            this.body = body;
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.etag = etag(body);
+            this.dataGen = dataGen;
+            this.resultsGen = resultsGen;
+        }
+        
+        public byte[] getBody() {
+            return body;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        /** The Cache-Control header to send the response with */
+        public String getCacheControl() {
+            return (cacheControl == null) ? "no-cache" : cacheControl;
+        }
+        
+        /** A strong entity tag computed from the response body */
+        public String getETag() {
+            return etag;
+        }
+    }
+    
+    private final long maxSize;
+    private long size = 0;
+    private long hits = 0, misses = 0;
+    
+    private final LinkedHashMap<String, Entry> entries = 
+        new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    
+    private final AtomicLong dataGen = new AtomicLong();
+    private final ConcurrentMap<Long, AtomicLong> projectGens = 
+        new ConcurrentHashMap<Long, AtomicLong>();
+    /* Incremented when the results of any project change */
+    private final AtomicLong resultsGen = new AtomicLong();
+    /* Incremented when the results of all projects change */
+    private final AtomicLong allResultsGen = new AtomicLong();
+    private final ConcurrentMap<Long, AtomicLong> projectResultsGens = 
+        new ConcurrentHashMap<Long, AtomicLong>();
+    
+    /**
+     * @param maxSize The maximum total size, in bytes, of the cached 
+     *  response bodies
+     */
+    public ResponseCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Get the cached response for a key, if it is still valid.
+     * 
+     * @param key The response key, see {@link #key(String, String, String)}
+     * @return The response, or null
+     */
+    public synchronized Entry get(String key) {
+        Entry e = entries.get(key);
+        if (e != null && (e.dataGen != dataGeneration(key) 
+                || e.resultsGen != resultsGeneration(key))) {
+            remove(key);
+            e = null;
+        }
+        if (e == null)
+            misses++;
+        else
+            hits++;
+        return e;
+    }
+    
+    /**
+     * Prepare to compute the response for a key. The returned snapshot of
+     * the data generations must be passed to 
+     * {@link #put(String, byte[], String, long[])}, so that responses 
+     * computed while their data was being invalidated are not cached.
+     */
+    public long[] begin(String key) {
+        return new long[] {dataGeneration(key), resultsGeneration(key)};
+    }
+    
+    /**
+     * Cache a response that uses the default Cache-Control header.
+     * 
+     * @see #put(String, byte[], String, String, long[])
+     */
+    public Entry put(String key, byte[] body, String contentType, 
+            long[] gens) {
+        return put(key, body, contentType, null, gens);
+    }
+    
+    /**
+     * Cache a response.
+     * 
+     * @param cacheControl The Cache-Control header set by the resource, 
+     *  or null
+     * @param gens The snapshot returned by {@link #begin(String)} 
+     * @return The cached response
+     */
+    public synchronized Entry put(String key, byte[] body, String contentType,
+            String cacheControl, long[] gens) {
+        Entry e = new Entry(body, contentType, cacheControl, gens[0], gens[1]);
+        if (body.length > maxSize / 4)
+            return e;
+        
+        remove(key);
+        entries.put(key, e);
+        size += body.length;
+        
+        Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+        while (size > maxSize && i.hasNext()) {
+            size -= i.next().getValue().body.length;
+            i.remove();
+        }
+        return e;
+    }
+    
+    /**
+     * Invalidate the cached responses that depend on a project's data.
+     */
+    public void invalidateProject(long projectId) {
+        generation(projectGens, projectId).incrementAndGet();
+        dataGen.incrementAndGet();
+    }
+    
+    /**
+     * Invalidate the cached responses that depend on a project's metric
+     * results.
+     */
+    public void invalidateResults(long projectId) {
+        generation(projectResultsGens, projectId).incrementAndGet();
+        resultsGen.incrementAndGet();
+    }
+    
+    /**
+     * Invalidate the cached responses that depend on the metric results
+     * of any project.
+     */
+    public void invalidateResults() {
+        allResultsGen.incrementAndGet();
+        resultsGen.incrementAndGet();
+    }
+    
+    /**
+     * Invalidate all cached responses, e.g. after a project has been added
+     * or removed or a metric plug-in has been installed or uninstalled. 
+     */
+    public void invalidateAll() {
+        dataGen.incrementAndGet();
+        allResultsGen.incrementAndGet();
+        resultsGen.incrementAndGet();
+        clear();
+    }
+    
+    /**
+     * Remove all cached responses.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+    
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+    
+    public synchronized long getSize() {
+        return size;
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Build the cache key for a request.
+     * 
+     * @param uri The request URI, starting with <code>/api</code>
+     * @param query The query string, or null
+     * @param accept The value of the Accept header, or null
+     */
+    public static String key(String uri, String query, String accept) {
+        StringBuilder b = new StringBuilder(uri);
+        if (query != null)
+            b.append('?').append(query);
+        if (accept != null)
+            b.append(' ').append(accept);
+        return b.toString();
+    }
+    
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null)
+            size -= old.body.length;
+    }
+    
+    private long dataGeneration(String key) {
+        Matcher m = PROJECT_URL.matcher(path(key));
+        if (m.matches())
+            return generation(projectGens, Long.parseLong(m.group(1))).get();
+        return dataGen.get();
+    }
+    
+    private long resultsGeneration(String key) {
+        String path = path(key);
+        Matcher m = PROJECT_URL.matcher(path);
+        if (m.matches())
+            return generation(projectResultsGens, 
+                    Long.parseLong(m.group(1))).get() + allResultsGen.get();
+        if (RESULTS_URL.matcher(path).matches())
+            return resultsGen.get();
+        return 0;
+    }
+    
+    private static String path(String key) {
+        return key.split("[ ?]", 2)[0];
+    }
+    
+    private static AtomicLong generation(ConcurrentMap<Long, AtomicLong> gens,
+            long projectId) {
+        AtomicLong g = gens.get(projectId);
+        if (g == null) {
+            AtomicLong n = new AtomicLong();
+            g = gens.putIfAbsent(projectId, n);
+            if (g == null)
+                g = n;
+        }
+        return g;
+    }
+    
+    private static String etag(byte[] body) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            return "\"" + new BigInteger(1, md.digest(body)).toString(16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            return "\"" + body.length + "-" + Arrays.hashCode(body) + "\"";
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
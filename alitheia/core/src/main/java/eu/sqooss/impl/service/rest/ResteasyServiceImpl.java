@@ -41,8 +41,12 @@ import eu.sqooss.service.rest.RestService;
 
 public class ResteasyServiceImpl implements RestService {
 
+    /** Maximum size, in bytes, of the cached GET responses; 0 disables caching */
+    public static final String CACHE_SIZE_PROPERTY = "eu.sqooss.rest.cache.size";
+    
 	private BundleContext bc;
     private Logger log ;
+    private ResponseCache cache;
    
 	@Override
 	public void addResource(Class<?> resource) {
@@ -65,7 +69,7 @@ public class ResteasyServiceImpl implements RestService {
 		params.put("resteasy.scan", "false");
 		params.put("javax.ws.rs.Application", "eu.sqooss.service.rest.RestServiceApp");
 
-		ResteasyServlet bridge = new ResteasyServlet();
+		ResteasyServlet bridge = new ResteasyServlet(cache);
 		try {
 			http.registerServlet("/api", bridge, params, null);
 		} catch (Exception e) {
@@ -73,6 +77,30 @@ public class ResteasyServiceImpl implements RestService {
 		}
 	}
 
+	@Override
+	public void invalidate(long projectId) {
+	    if (cache != null)
+	        cache.invalidateProject(projectId);
+	}
+	
+	@Override
+	public void invalidateResults(long projectId) {
+	    if (cache != null)
+	        cache.invalidateResults(projectId);
+	}
+	
+	@Override
+	public void invalidateResults() {
+	    if (cache != null)
+	        cache.invalidateResults();
+	}
+	
+	@Override
+	public void invalidateAll() {
+	    if (cache != null)
+	        cache.invalidateAll();
+	}
+	
 	private void unregisterApp() {
 		HttpService http = getHttpService();
 		http.unregister("/api");
@@ -96,6 +124,7 @@ public class ResteasyServiceImpl implements RestService {
     public boolean startUp() {
         addResource(eu.sqooss.rest.api.StoredProjectResource.class);
         addResource(eu.sqooss.rest.api.MetricsResource.class);
+        addResource(eu.sqooss.rest.api.SchedulerResource.class);
         return true;
     }
 
@@ -108,5 +137,18 @@ public class ResteasyServiceImpl implements RestService {
     public void setInitParams(BundleContext bc, Logger l) {
         this.bc = bc;
         this.log = l;
+        
+        long size = 16L * 1024 * 1024;
+        String prop = bc.getProperty(CACHE_SIZE_PROPERTY);
+        if (prop != null) {
+            try {
+                size = Long.parseLong(prop.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value for " + CACHE_SIZE_PROPERTY + ": " 
+                        + prop + ", using " + size);
+            }
+        }
+        if (size > 0)
+            cache = new ResponseCache(size);
     }
 }
\ No newline at end of file
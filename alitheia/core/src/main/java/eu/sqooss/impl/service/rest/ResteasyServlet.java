@@ -44,19 +44,87 @@ public class ResteasyServlet extends HttpServletDispatcher {
 
 	private static final long serialVersionUID = 5968966644419029725L;
 	
+	private transient ResponseCache cache;
+	
+	public ResteasyServlet() {
+	    this(null);
+	}
+	
+	/**
+	 * @param cache Cache for GET responses, or null to disable caching 
+	 */
+	public ResteasyServlet(ResponseCache cache) {
+	    this.cache = cache;
+	}
+	
 	@Override
 	protected void service(HttpServletRequest httpServletRequest,
 	        HttpServletResponse httpServletResponse) throws ServletException,
 	        IOException {
 	    
+	    if (cache == null || !"GET".equals(httpServletRequest.getMethod())) {
+	        dispatch(httpServletRequest, httpServletResponse);
+	        return;
+	    }
+	    
+	    String key = ResponseCache.key(httpServletRequest.getRequestURI(),
+	            httpServletRequest.getQueryString(), 
+	            httpServletRequest.getHeader("Accept"));
+	    
+	    ResponseCache.Entry e = cache.get(key);
+	    if (e == null) {
+	        long[] gens = cache.begin(key);
+	        BufferedResponse buffered = new BufferedResponse(httpServletResponse);
+	        dispatch(httpServletRequest, buffered);
+	        
+	        String cc = buffered.getCacheControl();
+	        if (buffered.getStatus() != HttpServletResponse.SC_OK
+	                || (cc != null && cc.contains("no-store"))) {
+	            byte[] body = buffered.getBody();
+	            if (body.length > 0 && !httpServletResponse.isCommitted()) {
+	                httpServletResponse.setContentLength(body.length);
+	                httpServletResponse.getOutputStream().write(body);
+	            }
+	            return;
+	        }
+	        e = cache.put(key, buffered.getBody(), 
+	                buffered.getBufferedContentType(), cc, gens);
+	    } else if (e.getContentType() != null) {
+	        httpServletResponse.setContentType(e.getContentType());
+	    }
+	    
+	    httpServletResponse.setHeader("ETag", e.getETag());
+	    httpServletResponse.setHeader("Cache-Control", e.getCacheControl());
+	    
+	    if (matches(httpServletRequest.getHeader("If-None-Match"), e.getETag())) {
+	        httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	        return;
+	    }
+	    httpServletResponse.setContentLength(e.getBody().length);
+	    httpServletResponse.getOutputStream().write(e.getBody());
+	}
+	
+	private void dispatch(HttpServletRequest req, HttpServletResponse resp) 
+	        throws ServletException, IOException {
 	    DBService db = AlitheiaCore.getInstance().getDBService();
 	    
 	    if (!db.isDBSessionActive())
 	        db.startDBSession();
 	    
-	    super.service(httpServletRequest, httpServletResponse);
+	    super.service(req, resp);
 	    
 	    if (db.isDBSessionActive())
 	        db.commitDBSession();
 	}
-}
\ No newline at end of file
+	
+	private static boolean matches(String ifNoneMatch, String etag) {
+	    if (ifNoneMatch == null)
+	        return false;
+	    for (String tag : ifNoneMatch.split(",")) {
+	        tag = tag.trim();
+	        if (tag.equals("*") || tag.equals(etag))
+	            return true;
+	    }
+	    return false;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.List;
+
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Storage engine for the jobs held by the scheduler. A job in the queue is
+ * either blocked, waiting for its dependencies to finish, or runnable, 
+ * waiting for a worker thread to pick it up. Implementations must be 
+ * thread safe; the scheduler does not lock around calls to the queue.
+ */
+interface JobQueue {
+
+    /**
+     * Add a job, which is not already in the queue, to the set of blocked 
+     * jobs.
+     */
+    void addBlocked(Job job);
+
+    /**
+     * Add a job, which is not already in the queue, to the set of runnable 
+     * jobs without checking its dependencies.
+     */
+    void addRunnable(Job job);
+
+    /**
+     * @return True if the job is either blocked or runnable.
+     */
+    boolean contains(Job job);
+
+    /**
+     * Remove a job from the queue, regardless of its state.
+     * @return True if the job was found in the queue.
+     */
+    boolean remove(Job job);
+
+    /**
+     * Get the next runnable job, blocking until one is available.
+     */
+    Job take() throws InterruptedException;
+
+    /**
+     * Remove a specific job from the set of runnable jobs, without blocking.
+     * @return True if the job was runnable and has been removed.
+     */
+    boolean take(Job job);
+
+    /**
+     * Re-evaluate the dependencies of a job and move it between the blocked
+     * and runnable sets accordingly.
+     */
+    void dependenciesChanged(Job job);
+
+    /**
+     * @return A snapshot of the blocked and runnable jobs, in no 
+     * particular order.
+     */
+    List<Job> jobs();
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -36,11 +36,9 @@ package eu.sqooss.impl.service.scheduler;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 
 import org.osgi.framework.BundleContext;
 
@@ -56,6 +54,12 @@ public class SchedulerServiceImpl implements Scheduler {
 
     private static final String START_THREADS_PROPERTY = "eu.sqooss.scheduler.numthreads";
     private static final String PERF_LOG_PROPERTY = "eu.sqooss.log.perf";
+    private static final String QUEUE_PROPERTY = "eu.sqooss.scheduler.queue";
+    
+    /** Single lock, strict priority order job queue (the default) */
+    public static final String QUEUE_PRIORITY = "priority";
+    /** Lock-free, sharded job queue for large numbers of jobs */
+    public static final String QUEUE_SHARDED = "sharded";
     
     private Logger logger = null;
     private boolean perfLog = false;
@@ -63,130 +67,113 @@ public class SchedulerServiceImpl implements Scheduler {
     private SchedulerStats stats = new SchedulerStats();
 
     // thread safe job queue
-    private PriorityQueue<Job> blockedQueue = new PriorityQueue<Job>(1,
-            new JobPriorityComparator());
-    private BlockingQueue<Job> workQueue = new PriorityBlockingQueue<Job>(1,
-            new JobPriorityComparator());
+    private JobQueue queue;
 
     private BlockingQueue<Job> failedQueue = new ArrayBlockingQueue<Job>(1000);
 
     private List<WorkerThread> myWorkerThreads = null;
     
-    public SchedulerServiceImpl() { }
+    public SchedulerServiceImpl() {
+        this(System.getProperty(QUEUE_PROPERTY));
+    }
 
-    public void enqueue(Job job) throws SchedulerException {
-        synchronized (this) {
-            if (logger != null)
-                logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
-            job.callAboutToBeEnqueued(this);
-            blockedQueue.add(job);
-            stats.addWaitingJob(job.getClass().toString());
-            stats.incTotalJobs();
+    /**
+     * Create a scheduler using the specified job queue implementation.
+     * @param queueType One of {@link #QUEUE_PRIORITY} or 
+     * {@link #QUEUE_SHARDED}. Unknown or null values select the default.
+     */
+    public SchedulerServiceImpl(String queueType) {
+        if (QUEUE_SHARDED.equals(queueType)) {
+            queue = new ShardedJobQueue();
+        } else {
+            queue = new PriorityJobQueue();
         }
+    }
+
+    public void enqueue(Job job) throws SchedulerException {
+        if (logger != null)
+            logger.debug("SchedulerServiceImpl: queuing job {}", job);
+        job.callAboutToBeEnqueued(this);
+        queue.addBlocked(job);
+        stats.addWaitingJob(job);
+        stats.incTotalJobs();
         jobDependenciesChanged(job);
     }
     
     public void enqueueNoDependencies(Set<Job> jobs) throws SchedulerException {
-        synchronized (this) {
-            for (Job job : jobs) {
-                logger.debug("Scheduler ServiceImpl: queuing job "
-                        + job.toString());
-                job.callAboutToBeEnqueued(this);
-                workQueue.add(job);
-                stats.addWaitingJob(job.getClass().toString());
-                stats.incTotalJobs();
-            }
+        for (Job job : jobs) {
+            if (logger != null)
+                logger.debug("Scheduler ServiceImpl: queuing job {}", job);
+            job.callAboutToBeEnqueued(this);
+            queue.addRunnable(job);
+            stats.addWaitingJob(job);
+            stats.incTotalJobs();
         }
     }
     
     public void enqueueBlock(List<Job> jobs) throws SchedulerException {
-        synchronized (this) {
-            for (Job job : jobs) {
-                logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
-                job.callAboutToBeEnqueued(this);
-                blockedQueue.add(job);
-                stats.addWaitingJob(job.getClass().toString());
-                stats.incTotalJobs();
-            }
+        for (Job job : jobs) {
+            if (logger != null)
+                logger.debug("SchedulerServiceImpl: queuing job {}", job);
+            job.callAboutToBeEnqueued(this);
+            queue.addBlocked(job);
+            stats.addWaitingJob(job);
+            stats.incTotalJobs();
         }
         for (Job job : jobs)
             jobDependenciesChanged(job);
     }
 
     public void dequeue(Job job) {
-        synchronized (this) {
-            if (!blockedQueue.contains(job) && !workQueue.contains(job)) {
-                if (logger != null) {
-                    logger.info("SchedulerServiceImpl: job " + job.toString()
-                            + " not found in the queue.");
-                }
-                return;
+        if (!queue.contains(job)) {
+            if (logger != null) {
+                logger.info("SchedulerServiceImpl: job {} not found in the queue.",
+                        job);
             }
-            job.callAboutToBeDequeued(this);
-            blockedQueue.remove(job);
-            workQueue.remove(job);
-        }
-        if (logger != null) {
-            logger.warn("SchedulerServiceImpl: job " + job.toString()
-                    + " not found in the queue.");
+            return;
         }
+        job.callAboutToBeDequeued(this);
+        queue.remove(job);
     }
 
     public Job takeJob() throws java.lang.InterruptedException {
-        /*
-         * no synchronize needed here, the queue is doing that adding
-         * synchronize here would actually dead-lock this, since no new items
-         * can be added as long someone is waiting for items
-         */
-        return workQueue.take();
+        return queue.take();
     }
 
     public Job takeJob(Job job) throws SchedulerException {
-        synchronized (workQueue) {
-            if (!workQueue.contains(job)) {
-                throw new SchedulerException("Can't take job " + job
-                        + ": It is not in the scheduler's queue right now.");
-            }
-            workQueue.remove(job);
-            return job;
+        if (!queue.take(job)) {
+            throw new SchedulerException("Can't take job " + job
+                    + ": It is not in the scheduler's queue right now.");
         }
+        return job;
     }
     
     public void jobStateChanged(Job job, Job.State state) {
         if (logger != null) {
-            logger.debug("Job " + job + " changed to state " + state);
+            logger.debug("Job {} changed to state {}", job, state);
         }
 
         if (state == Job.State.Finished) {
-            stats.removeRunJob(job);
-            stats.incFinishedJobs();
+            stats.removeRunJob(job, job.previousStateTime());
+            stats.addFinishedJob(job);
         } else if (state == Job.State.Running) {
-            stats.removeWaitingJob(job.getClass().toString());
-            stats.addRunJob(job);
+            stats.addRunJob(job, job.previousStateTime());
         } else if (state == Job.State.Yielded) {
-            stats.removeRunJob(job);
-            stats.addWaitingJob(job.getClass().toString());
+            stats.removeRunJob(job, job.previousStateTime());
+            stats.addWaitingJob(job);
         } else if (state == Job.State.Error) {
 
             if (failedQueue.remainingCapacity() == 1)
                 failedQueue.remove();
             failedQueue.add(job);
             
-            stats.removeRunJob(job);
-            stats.addFailedJob(job.getClass().toString());
+            stats.removeRunJob(job, job.previousStateTime());
+            stats.addFailedJob(job);
         }
     }
 
     public void jobDependenciesChanged(Job job) {
-        synchronized (this) {
-            if (workQueue.contains(job) && !job.canExecute()) {
-                workQueue.remove(job);
-                blockedQueue.add(job);
-            } else if (job.canExecute()) {
-                blockedQueue.remove(job);
-                workQueue.add(job);
-            }
-        }
+        queue.dependenciesChanged(job);
     }
 
     public void startExecute(int n) {
@@ -254,8 +241,15 @@ public class SchedulerServiceImpl implements Scheduler {
 		this.logger = l;
 	}
 
+	/**
+	 * Stop the worker threads and dequeue all jobs that have not run, so 
+	 * that their state listeners learn that they never will.
+	 */
 	@Override
 	public void shutDown() {
+	    stopExecute();
+	    for (Job job : queue.jobs())
+	        dequeue(job);
 	}
 
 	@Override
@@ -278,6 +272,9 @@ public class SchedulerServiceImpl implements Scheduler {
             logger.info("Using performance logging");
             this.perfLog = true;
         }
+        
+        logger.info("Using job queue implementation " 
+                + queue.getClass().getSimpleName());
 
         return true;
 	}
@@ -304,8 +301,8 @@ public class SchedulerServiceImpl implements Scheduler {
         
         if (j.state() != Job.State.Yielded)
             j.yield(p);
-        workQueue.remove(j);
-        blockedQueue.add(j);
+        queue.remove(j);
+        queue.addBlocked(j);
     }
 }
 
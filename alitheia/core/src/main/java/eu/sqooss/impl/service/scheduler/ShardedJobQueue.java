@@ -0,0 +1,290 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * A job queue optimised for large numbers of short running jobs.
+ * <p>
+ * Runnable jobs are spread over a two dimensional array of lock-free FIFO 
+ * queues. The first dimension is the priority band; a job's band is the
+ * bit length of its priority, so jobs in lower bands are always taken
+ * before jobs in higher bands, while jobs within the same band are taken
+ * in roughly FIFO order. The second dimension is the shard; producers 
+ * distribute jobs to shards in a round robin fashion and each consumer 
+ * thread has a home shard, from which it takes jobs first before it 
+ * starts stealing jobs from the other shards of the same band.
+ * </p>
+ * <p>
+ * The state of each job in the queue is kept in a hash based index, so
+ * lookups, removals and state transitions take constant time. Removed
+ * or blocked jobs are not physically removed from the shard queues; 
+ * their queue entries are marked as stale and are discarded when they 
+ * reach the head of their queue.
+ * </p>
+ */
+class ShardedJobQueue implements JobQueue {
+
+    /** Number of priority bands, one per bit of a job priority */
+    private static final int BANDS = 64;
+
+    /* Entry states */
+    private static final int BLOCKED = 0;
+    private static final int RUNNABLE = 1;
+    private static final int STALE = 2;
+
+    private final int shards;
+    private final ConcurrentLinkedQueue<Entry>[][] queues;
+    private final ConcurrentHashMap<Job, Entry> index;
+
+    /* Number of runnable entries, in total and per band */
+    private final AtomicInteger runnable = new AtomicInteger();
+    private final AtomicIntegerArray bandRunnable = new AtomicIntegerArray(BANDS);
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final AtomicInteger nextHome = new AtomicInteger();
+    private final ThreadLocal<Integer> home = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return (nextHome.getAndIncrement() & Integer.MAX_VALUE) % shards;
+        }
+    };
+
+    /* Used only to park consumers while the queue is empty */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    public ShardedJobQueue() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings("unchecked")
+    public ShardedJobQueue(int shards) {
+        this.shards = Math.max(1, shards);
+        this.queues = new ConcurrentLinkedQueue[BANDS][this.shards];
+        for (int i = 0; i < BANDS; i++)
+            for (int j = 0; j < this.shards; j++)
+                queues[i][j] = new ConcurrentLinkedQueue<Entry>();
+        this.index = new ConcurrentHashMap<Job, Entry>(1024, 0.75f,
+                4 * this.shards);
+    }
+
+    public void addBlocked(Job job) {
+        Entry old = index.put(job, new Entry(job, BLOCKED));
+        if (old != null)
+            invalidate(old);
+    }
+
+    public void addRunnable(Job job) {
+        Entry e = new Entry(job, RUNNABLE);
+        acquire(e);
+        Entry old = index.put(job, e);
+        if (old != null)
+            invalidate(old);
+        publish(e);
+    }
+
+    public boolean contains(Job job) {
+        return index.containsKey(job);
+    }
+
+    public boolean remove(Job job) {
+        Entry e = index.remove(job);
+        if (e == null)
+            return false;
+        return invalidate(e) != STALE;
+    }
+
+    public Job take() throws InterruptedException {
+        while (true) {
+            Job j = poll();
+            if (j != null)
+                return j;
+
+            lock.lockInterruptibly();
+            try {
+                waiters.incrementAndGet();
+                try {
+                    while (runnable.get() <= 0)
+                        notEmpty.await();
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public boolean take(Job job) {
+        Entry e = index.get(job);
+        if (e == null || !e.state.compareAndSet(RUNNABLE, STALE))
+            return false;
+        release(e);
+        index.remove(job, e);
+        return true;
+    }
+
+    public void dependenciesChanged(Job job) {
+        Entry e = index.get(job);
+        if (e == null)
+            return;
+
+        int state = e.state.get();
+        if (state == RUNNABLE && !job.canExecute()) {
+            if (!e.state.compareAndSet(RUNNABLE, STALE))
+                return;
+            release(e);
+            index.replace(job, e, new Entry(job, BLOCKED));
+        } else if (state == BLOCKED && job.canExecute()) {
+            if (!e.state.compareAndSet(BLOCKED, STALE))
+                return;
+            Entry r = new Entry(job, RUNNABLE);
+            acquire(r);
+            if (index.replace(job, e, r)) {
+                publish(r);
+            } else {
+                /* The job was removed in the meantime */
+                r.state.set(STALE);
+                release(r);
+            }
+        }
+    }
+
+    public List<Job> jobs() {
+        return new ArrayList<Job>(index.keySet());
+    }
+
+    /**
+     * Find a runnable job, starting from the calling thread's home shard
+     * in the highest priority non-empty band.
+     */
+    private Job poll() {
+        if (runnable.get() <= 0)
+            return null;
+
+        int start = home.get();
+        for (int b = 0; b < BANDS; b++) {
+            if (bandRunnable.get(b) <= 0)
+                continue;
+            ConcurrentLinkedQueue<Entry>[] band = queues[b];
+            for (int i = 0; i < shards; i++) {
+                ConcurrentLinkedQueue<Entry> q = band[(start + i) % shards];
+                Entry e;
+                while ((e = q.poll()) != null) {
+                    if (e.state.compareAndSet(RUNNABLE, STALE)) {
+                        release(e);
+                        index.remove(e.job, e);
+                        return e.job;
+                    }
+                    /* Stale entry, drop it */
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Account for a new runnable entry, before it becomes visible. */
+    private void acquire(Entry e) {
+        runnable.incrementAndGet();
+        bandRunnable.incrementAndGet(e.band);
+    }
+
+    /** Account for an entry that stopped being runnable. */
+    private void release(Entry e) {
+        bandRunnable.decrementAndGet(e.band);
+        runnable.decrementAndGet();
+    }
+
+    /** Push a runnable entry to a shard and wake up a waiting consumer. */
+    private void publish(Entry e) {
+        int shard = (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards;
+        queues[e.band][shard].offer(e);
+
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Mark an entry as stale.
+     * @return The state of the entry before the call.
+     */
+    private int invalidate(Entry e) {
+        int old = e.state.getAndSet(STALE);
+        if (old == RUNNABLE)
+            release(e);
+        return old;
+    }
+
+    static int band(long priority) {
+        if (priority <= 0)
+            return 0;
+        return Math.min(BANDS - 1, 64 - Long.numberOfLeadingZeros(priority));
+    }
+
+    /**
+     * A queue entry. A job gets a fresh entry each time it changes state,
+     * so an entry never goes back from stale to any other state.
+     */
+    private static class Entry {
+        final Job job;
+        final int band;
+        final AtomicInteger state;
+
+        Entry(Job job, int state) {
+            this.job = job;
+            this.band = band(job.priority());
+            this.state = new AtomicInteger(state);
+        }
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
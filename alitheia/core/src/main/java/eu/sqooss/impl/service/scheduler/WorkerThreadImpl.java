@@ -59,6 +59,10 @@ class WorkerThreadImpl extends Thread implements WorkerThread {
     
     private boolean m_oneshot = false;
     
+    private Logger logger = null;
+    
+    private Logger perfLogger = null;
+    
     /**
      * Constructor creating a new WorkerThread
      * @param s the schedule being asked for jobs.
@@ -124,21 +128,32 @@ class WorkerThreadImpl extends Thread implements WorkerThread {
 			    time = m_job.execute();
 			}
 		} catch (ClassCastException cce) { 
-		    AlitheiaCore.getInstance().getLogManager().createLogger(
-		            Logger.NAME_SQOOSS_SCHEDULING).error("Job " + j + " is not resumable");
+		    logger().error("Job {} is not resumable", j);
 		} catch (Exception e) {
 			// no error handling needed here, the job
 			// itself takes care of that.
 		} finally {
 		    if (perfLog) {
-		        AlitheiaCore.getInstance().getLogManager().
-		            createLogger("sqooss.jobtimer").
-		            debug(m_job.toString() + ", time: " + time + " ms");
+		        perfLogger().debug("{}, time: {} ms", m_job, time);
 		    }
 			m_job = oldJob;
 		}
 	}
 	
+	private Logger logger() {
+	    if (logger == null)
+	        logger = AlitheiaCore.getInstance().getLogManager().createLogger(
+	                Logger.NAME_SQOOSS_SCHEDULING);
+	    return logger;
+	}
+	
+	private Logger perfLogger() {
+	    if (perfLogger == null)
+	        perfLogger = AlitheiaCore.getInstance().getLogManager().createLogger(
+	                "sqooss.jobtimer");
+	    return perfLogger;
+	}
+	
 	/**
 	 * Temporary Worker Thread is used to trigger instant
 	 * execution of a job.
@@ -56,6 +56,7 @@ import eu.sqooss.service.db.ClusterNode;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.rest.RestService;
 import eu.sqooss.service.scheduler.Job;
 import eu.sqooss.service.scheduler.Job.State;
 import eu.sqooss.service.scheduler.JobStateListener;
@@ -581,6 +582,10 @@ public class UpdaterServiceImpl implements UpdaterService, JobStateListener {
                         + " did not finish properly");
             }
             dbs.commitDBSession();
+            
+            RestService rs = AlitheiaCore.getInstance().getRestService();
+            if (rs != null)
+                rs.invalidate(projectId);
         }
     }
     
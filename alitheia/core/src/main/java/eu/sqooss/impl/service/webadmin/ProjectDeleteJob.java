@@ -43,6 +43,7 @@ import eu.sqooss.service.db.Plugin;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.db.StoredProjectConfig;
+import eu.sqooss.service.rest.RestService;
 import eu.sqooss.service.scheduler.Job;
 
 public class ProjectDeleteJob extends Job {
@@ -112,6 +113,10 @@ public class ProjectDeleteJob extends Job {
 
         if (success) {
             dbs.commitDBSession();
+            
+            RestService rs = core.getRestService();
+            if (rs != null)
+                rs.invalidate(sp.getId());
         } else {
             dbs.rollbackDBSession();
         }
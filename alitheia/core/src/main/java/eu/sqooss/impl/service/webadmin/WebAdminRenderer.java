@@ -33,14 +33,20 @@
 
 package eu.sqooss.impl.service.webadmin;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.velocity.VelocityContext;
 import org.osgi.framework.BundleContext;
 
+import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerStats.JobTypeStats;
+import eu.sqooss.service.util.LatencyHistogram;
 import eu.sqooss.service.util.StringUtils;
 
 /**
@@ -70,7 +76,7 @@ public class WebAdminRenderer  extends AbstractView {
      */
     public static String renderJobFailStats() {
         StringBuilder result = new StringBuilder();
-        HashMap<String,Integer> fjobs = sobjSched.getSchedulerStats().getFailedJobTypes();
+        Map<String,Long> fjobs = sobjSched.getSchedulerStats().getFailedJobTypes();
         result.append("<table width=\"100%\" cellpadding=\"0\" cellspacing=\"0\">\n");
         result.append("\t<thead>\n");
         result.append("\t\t<tr>\n");
@@ -224,7 +230,7 @@ public class WebAdminRenderer  extends AbstractView {
 
     public static String renderJobWaitStats() {
         StringBuilder result = new StringBuilder();
-        HashMap<String,Integer> wjobs = sobjSched.getSchedulerStats().getWaitingJobTypes();
+        Map<String,Long> wjobs = sobjSched.getSchedulerStats().getWaitingJobTypes();
         result.append("<table width=\"100%\" cellpadding=\"0\" cellspacing=\"0\">\n");
         result.append("\t<thead>\n");
         result.append("\t\t<tr>\n");
@@ -247,6 +253,101 @@ public class WebAdminRenderer  extends AbstractView {
         return result.toString();
     }
 
+    /**
+     * Creates an HTML list with the hit rate of the FDS file contents cache
+     */
+    public static String renderFileCacheStats() {
+        FDSService fds = sobjCore.getFDSService();
+        if (fds == null)
+            return "FDS not available";
+
+        long hits = fds.getContentsCacheHits();
+        long misses = fds.getContentsCacheMisses();
+        long total = hits + misses;
+
+        StringBuilder result = new StringBuilder();
+        result.append("<ul>\n");
+        result.append("\t<li>Cache service: ");
+        result.append(sobjCore.getCacheService() == null ? 
+                "not available" : "available");
+        result.append("</li>\n");
+        result.append("\t<li>Hits: " + hits + "</li>\n");
+        result.append("\t<li>Misses: " + misses + "</li>\n");
+        result.append("\t<li>Hit rate: ");
+        result.append(total == 0 ? "-" : 
+            String.format("%.1f%%", (100.0 * hits) / total));
+        result.append("</li>\n");
+        result.append("</ul>\n");
+        return result.toString();
+    }
+
+    /**
+     * Returns the number of jobs finished per second, over the last minute
+     * and since the system started
+     */
+    public static String renderThroughput() {
+        return String.format("%.2f jobs/sec (last minute), %.2f jobs/sec (mean)",
+                sobjSched.getSchedulerStats().getThroughput(),
+                sobjSched.getSchedulerStats().getMeanThroughput());
+    }
+
+    /**
+     * Creates an HTML table with the throughput, queue wait and execution 
+     * times of each job type, with the types that took the most execution 
+     * time first. Times are in milliseconds.
+     */
+    public static String renderJobTimeStats() {
+        List<JobTypeStats> types = sobjSched.getSchedulerStats().getJobTypes();
+        if (types.size() == 0) {
+            return "No jobs have run";
+        }
+        Collections.sort(types, new Comparator<JobTypeStats>() {
+            public int compare(JobTypeStats a, JobTypeStats b) {
+                long ta = a.getExecution().getTotal(TimeUnit.MILLISECONDS);
+                long tb = b.getExecution().getTotal(TimeUnit.MILLISECONDS);
+                return ta > tb ? -1 : (ta < tb ? 1 : 0);
+            }
+        });
+        
+        StringBuilder result = new StringBuilder();
+        result.append("<table width=\"100%\" cellpadding=\"0\" cellspacing=\"0\">\n");
+        result.append("\t<thead>\n");
+        result.append("\t\t<tr>\n");
+        result.append("\t\t\t<td>Job Type</td>\n");
+        result.append("\t\t\t<td>Finished</td>\n");
+        result.append("\t\t\t<td>Jobs/sec (1 min)</td>\n");
+        result.append("\t\t\t<td>Queue wait p50/p99/max</td>\n");
+        result.append("\t\t\t<td>Execution p50/p99/max</td>\n");
+        result.append("\t\t\t<td>Total execution</td>\n");
+        result.append("\t\t</tr>\n");
+        result.append("\t</thead>\n");
+        result.append("\t<tbody>\n");
+        for (JobTypeStats s : types) {
+            result.append("\t\t<tr>\n\t\t\t<td>");
+            result.append(StringUtils.makeXHTMLSafe(s.getType()));
+            result.append("</td>\n\t\t\t<td>");
+            result.append(s.getFinished().getCount());
+            result.append("</td>\n\t\t\t<td>");
+            result.append(String.format("%.2f", s.getFinished().getOneMinuteRate()));
+            result.append("</td>\n\t\t\t<td>");
+            result.append(renderPercentiles(s.getQueueWait()));
+            result.append("</td>\n\t\t\t<td>");
+            result.append(renderPercentiles(s.getExecution()));
+            result.append("</td>\n\t\t\t<td>");
+            result.append(s.getExecution().getTotal(TimeUnit.MILLISECONDS));
+            result.append("\t\t\t</td>\n\t\t</tr>");
+        }
+        result.append("\t</tbody>\n");
+        result.append("</table>");
+        return result.toString();
+    }
+    
+    private static String renderPercentiles(LatencyHistogram h) {
+        return h.getPercentile(0.5, TimeUnit.MILLISECONDS) + " / "
+            + h.getPercentile(0.99, TimeUnit.MILLISECONDS) + " / "
+            + h.getMax(TimeUnit.MILLISECONDS);
+    }
+
     public static String renderJobRunStats() {
         StringBuilder result = new StringBuilder();
         List<String> rjobs = sobjSched.getSchedulerStats().getRunJobs();
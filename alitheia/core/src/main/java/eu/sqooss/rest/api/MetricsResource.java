@@ -35,10 +35,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
@@ -47,6 +49,7 @@ import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.db.MetricType.Type;
 
 /**
@@ -56,6 +59,9 @@ import eu.sqooss.service.db.MetricType.Type;
 @Path("/api")
 public class MetricsResource {
 
+    /** Maximum number of results returned by a bulk results request */
+    public static final int MAX_RESULTS = 10000;
+    
 	public MetricsResource() {}
 
 	@GET
@@ -148,6 +154,54 @@ public class MetricsResource {
         
         return result; 
 	}
+	
+	/**
+	 * Get the results of a metric for a range of resource ids, optionally
+	 * restricted to a project, in increasing resource id order. At most
+	 * <code>limit</code> results are returned; to get the next page, 
+	 * repeat the request starting from the last resource id plus one.
+	 */
+	@Path("/metrics/by-id/{id}/results")
+    @GET
+    @Produces({"application/xml", "application/json"})
+    public List<Result> getMetricResults(@PathParam("id") Long id,
+            @QueryParam("project") Long project,
+            @QueryParam("from") @DefaultValue("0") long from,
+            @QueryParam("to") @DefaultValue("9223372036854775807") long to,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
+	    
+	    Metric m = DAObject.loadDAObyId(id, Metric.class);
+	    
+	    if (m == null)
+	        return Collections.EMPTY_LIST;
+	    
+	    return getResults(m, project, from, to, limit);
+	}
+	
+	public List<Result> getResults(Metric m, Long project, long from, long to,
+	        int limit) {
+	    StoredProject sp = null;
+	    if (project != null) {
+	        sp = DAObject.loadDAObyId(project, StoredProject.class);
+	        if (sp == null)
+	            return Collections.EMPTY_LIST;
+	    }
+	    
+	    AlitheiaPlugin ap = AlitheiaCore.getInstance().getPluginAdmin().getImplementingPlugin(m.getMnemonic());
+        
+        if (ap == null)
+            return Collections.EMPTY_LIST;
+        
+        if (limit <= 0 || limit > MAX_RESULTS)
+            limit = MAX_RESULTS;
+        
+        try {
+            return ap.getResults(m, sp, from, to, limit);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Collections.EMPTY_LIST;
+        }
+	}
     
 	@Path("/metrics/by-mnem/{mnem}")
 	@GET
@@ -170,6 +224,23 @@ public class MetricsResource {
        return getResult(m, resourceIds);
     }
 	
+	@Path("/metrics/by-mnem/{mnem}/results")
+    @GET
+    @Produces({"application/xml", "application/json"})
+    public List<Result> getMetricResultsByMnem(@PathParam("mnem") String name,
+            @QueryParam("project") Long project,
+            @QueryParam("from") @DefaultValue("0") long from,
+            @QueryParam("to") @DefaultValue("9223372036854775807") long to,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
+        
+        Metric m = Metric.getMetricByMnemonic(name);
+        
+        if (m == null)
+            return Collections.EMPTY_LIST;
+        
+        return getResults(m, project, from, to, limit);
+    }
+	
 	@Path("/metrics/by-type/{type}")
 	@GET
     @Produces({"application/xml", "application/json"})
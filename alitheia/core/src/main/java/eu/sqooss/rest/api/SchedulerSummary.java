@@ -0,0 +1,313 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.rest.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.scheduler.SchedulerStats;
+import eu.sqooss.service.scheduler.SchedulerStats.JobTypeStats;
+import eu.sqooss.service.util.LatencyHistogram;
+
+/**
+ * A snapshot of the scheduler statistics. Times are in milliseconds, 
+ * rates in jobs per second.
+ */
+@XmlRootElement(name="scheduler")
+@XmlAccessorType(XmlAccessType.NONE)
+public class SchedulerSummary {
+
+    @XmlElement
+    private long total;
+    
+    @XmlElement
+    private long waiting;
+    
+    @XmlElement
+    private long running;
+    
+    @XmlElement
+    private long finished;
+    
+    @XmlElement
+    private long failed;
+    
+    @XmlElement
+    private long threads;
+    
+    @XmlElement
+    private double rate;
+    
+    @XmlElement
+    private double meanRate;
+    
+    @XmlElement(name = "jobtype")
+    private List<JobType> jobTypes = new ArrayList<JobType>();
+    
+    @XmlElement(name = "pluginlocks")
+    private List<PluginLocks> pluginLocks = new ArrayList<PluginLocks>();
+    
+    /** Statistics for the jobs of one class */
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class JobType {
+        @XmlElement
+        private String name;
+        
+        @XmlElement
+        private long waiting;
+        
+        @XmlElement
+        private long finished;
+        
+        @XmlElement
+        private long failed;
+        
+        @XmlElement
+        private double rate;
+        
+        @XmlElement
+        private Times queueWait;
+        
+        @XmlElement
+        private Times execution;
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getWaiting() {
+            return waiting;
+        }
+        
+        public long getFinished() {
+            return finished;
+        }
+        
+        public long getFailed() {
+            return failed;
+        }
+        
+        public double getRate() {
+            return rate;
+        }
+        
+        public Times getQueueWait() {
+            return queueWait;
+        }
+        
+        public Times getExecution() {
+            return execution;
+        }
+    }
+    
+    /** Contention on the DAO locks of one metric plug-in */
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class PluginLocks {
+        @XmlElement
+        private String name;
+        
+        @XmlElement
+        private long contentions;
+        
+        @XmlElement
+        private long reschedulesCoalesced;
+        
+        public PluginLocks() {}
+        
+        PluginLocks(AbstractMetric m) {
+            this.name = m.getName();
+            this.contentions = m.getLockContentions();
+            this.reschedulesCoalesced = m.getReschedulesCoalesced();
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getContentions() {
+            return contentions;
+        }
+        
+        public long getReschedulesCoalesced() {
+            return reschedulesCoalesced;
+        }
+    }
+    
+    /** The distribution of a job time */
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class Times {
+        @XmlElement
+        private long count;
+        
+        @XmlElement
+        private long total;
+        
+        @XmlElement
+        private double mean;
+        
+        @XmlElement
+        private long p50;
+        
+        @XmlElement
+        private long p90;
+        
+        @XmlElement
+        private long p99;
+        
+        @XmlElement
+        private long max;
+        
+        public Times() {}
+        
+        Times(LatencyHistogram h) {
+            TimeUnit ms = TimeUnit.MILLISECONDS;
+            this.count = h.getCount();
+            this.total = h.getTotal(ms);
+            this.mean = h.getMean(ms);
+            this.p50 = h.getPercentile(0.5, ms);
+            this.p90 = h.getPercentile(0.9, ms);
+            this.p99 = h.getPercentile(0.99, ms);
+            this.max = h.getMax(ms);
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public long getTotal() {
+            return total;
+        }
+        
+        public double getMean() {
+            return mean;
+        }
+        
+        public long getP50() {
+            return p50;
+        }
+        
+        public long getP90() {
+            return p90;
+        }
+        
+        public long getP99() {
+            return p99;
+        }
+        
+        public long getMax() {
+            return max;
+        }
+    }
+    
+    public SchedulerSummary() {}
+    
+    public SchedulerSummary(SchedulerStats s) {
+        this.total = s.getTotalJobs();
+        this.waiting = s.getWaitingJobs();
+        this.running = s.getRunningJobs();
+        this.finished = s.getFinishedJobs();
+        this.failed = s.getFailedJobs();
+        this.threads = s.getWorkerThreads();
+        this.rate = s.getThroughput();
+        this.meanRate = s.getMeanThroughput();
+        
+        for (JobTypeStats t : s.getJobTypes()) {
+            JobType j = new JobType();
+            j.name = t.getType();
+            j.waiting = t.getWaiting();
+            j.finished = t.getFinished().getCount();
+            j.failed = t.getFailed();
+            j.rate = t.getFinished().getOneMinuteRate();
+            j.queueWait = new Times(t.getQueueWait());
+            j.execution = new Times(t.getExecution());
+            jobTypes.add(j);
+        }
+    }
+    
+    /**
+     * Add the lock contention counters of a metric plug-in.
+     */
+    public void addPlugin(AbstractMetric m) {
+        pluginLocks.add(new PluginLocks(m));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getWaiting() {
+        return waiting;
+    }
+
+    public long getRunning() {
+        return running;
+    }
+
+    public long getFinished() {
+        return finished;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getThreads() {
+        return threads;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public double getMeanRate() {
+        return meanRate;
+    }
+
+    public List<JobType> getJobTypes() {
+        return jobTypes;
+    }
+
+    public List<PluginLocks> getPluginLocks() {
+        return pluginLocks;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -39,10 +39,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.db.DAObject;
@@ -56,6 +60,15 @@ import eu.sqooss.service.db.StoredProject;
 @Path("/api")
 public class StoredProjectResource {
 
+    /** Maximum number of entries returned by a version or file listing */
+    public static final int MAX_RESULTS = 10000;
+    
+    /** Seconds clients may keep responses about a fully measured version */
+    public static final int VERSION_MAX_AGE = 3600;
+    
+    @Context
+    private HttpServletResponse response;
+    
 	public StoredProjectResource() {}
 	
 	@GET
@@ -81,13 +94,28 @@ public class StoredProjectResource {
 		return sp;
 	}
 	
+	/**
+	 * List a project's versions in sequence order. At most 
+	 * <code>limit</code> versions are returned; to get the next page, 
+	 * repeat the request with <code>after</code> set to the sequence 
+	 * number of the last version returned. 
+	 */
 	@Path("/project/{id}/versions")
 	@GET
 	@Produces({"application/xml", "application/json"})
-	public List<ProjectVersion> getAllVersions(@PathParam("id") Long id) {
+	public List<VersionSummary> getAllVersions(@PathParam("id") Long id,
+	        @QueryParam("after") @DefaultValue("-1") long after,
+	        @QueryParam("limit") @DefaultValue("1000") int limit) {
 		StoredProject sp = DAObject.loadDAObyId(id, StoredProject.class);
 	
-		return sp.getProjectVersions();
+		if (sp == null)
+		    return Collections.EMPTY_LIST;
+		
+		List<VersionSummary> versions = new ArrayList<VersionSummary>();
+		for (Object[] row : ProjectVersion.getVersionSummaries(sp, after, 
+		        pageSize(limit)))
+		    versions.add(new VersionSummary(row));
+		return versions;
 	}
 	
 	@Path("/project/{id}/versions/{vid: .+}")
@@ -110,15 +138,7 @@ public class StoredProjectResource {
 	        }
 	    }
 		
-	    List<ProjectVersion> versions = new ArrayList<ProjectVersion>();
-	    
-	    for (String verid : ids) {
-	    	ProjectVersion pv = ProjectVersion.getVersionByRevision(sp, verid);
-	    	if (pv != null)
-	    	    versions.add(pv);
-	    }
-	    
-		return versions;
+		return ProjectVersion.getVersionsByRevisions(sp, ids);
 	}
 
 	@Path("/project/{id}/version/{vid}")
@@ -135,38 +155,46 @@ public class StoredProjectResource {
 	                Metric.getMetricByMnemonic("TLOC"), //This can break, FIXME
 	                getProject(prid));
 	    
-		return ProjectVersion.getVersionByRevision(getProject(prid), verid);
+	    ProjectVersion pv = 
+	        ProjectVersion.getVersionByRevision(getProject(prid), verid);
+	    
+	    /* Imported versions do not change, but their results may still be
+	     * incomplete; the first and latest aliases are not cacheable */
+	    if (pv != null && response != null && pv.isFullyMeasured())
+	        response.setHeader("Cache-Control", "max-age=" + VERSION_MAX_AGE);
+		return pv;
 	}
 
+	/**
+	 * List the files in a project version. Files are returned in id 
+	 * order, at most <code>limit</code> at a time; to get the next page, 
+	 * repeat the request with <code>after</code> set to the id of the last
+	 * file returned. The same applies to the other file and directory 
+	 * listings.
+	 */
 	@Path("/project/{id}/version/{vid}/files/")
     @GET
     @Produces({"application/xml", "application/json"})
-    public List<ProjectFile> getAllFiles(@PathParam("id") String prid,
-            @PathParam("vid") String verid) {
+    public List<FileSummary> getAllFiles(@PathParam("id") String prid,
+            @PathParam("vid") String verid,
+            @QueryParam("after") @DefaultValue("-1") long after,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
         
-	    ProjectVersion pv = getVersion(prid, verid);
-	    if (pv == null)
-	        return Collections.EMPTY_LIST;
-	        
-        return pv.getFiles((Directory)null, ProjectVersion.MASK_FILES);
+        return listFiles(prid, verid, null, ProjectVersion.MASK_FILES, 
+                after, limit);
     }
 
 	@Path("/project/{id}/version/{vid}/files/{dir: .+}")
     @GET
     @Produces({"application/xml", "application/json"})
-    public List<ProjectFile> getFilesInDir(@PathParam("id") String prid,
+    public List<FileSummary> getFilesInDir(@PathParam("id") String prid,
             @PathParam("vid") String verid,
-            @PathParam("dir") String path) {
+            @PathParam("dir") String path,
+            @QueryParam("after") @DefaultValue("-1") long after,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
         
-        ProjectVersion pv = getVersion(prid, verid);
-        if (pv == null)
-            return Collections.EMPTY_LIST;
-        
-        if (!path.startsWith("/"))
-            path = "/" + path;
-        
-        return pv.getFiles(Directory.getDirectory(path, false), 
-                ProjectVersion.MASK_FILES);
+        return listFiles(prid, verid, path, ProjectVersion.MASK_FILES, 
+                after, limit);
     }
 
 	@Path("/project/{id}/version/{vid}/files/changed")
@@ -185,32 +213,54 @@ public class StoredProjectResource {
 	@Path("/project/{id}/version/{vid}/dirs/")
     @GET
     @Produces({"application/xml", "application/json"})
-    public List<ProjectFile> getDirs(@PathParam("id") String prid,
-            @PathParam("vid") String verid) {
+    public List<FileSummary> getDirs(@PathParam("id") String prid,
+            @PathParam("vid") String verid,
+            @QueryParam("after") @DefaultValue("-1") long after,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
         
-	    ProjectVersion pv = getVersion(prid, verid);
-        if (pv == null)
-            return Collections.EMPTY_LIST;
- 
-        return pv.getFiles((Directory)null,
-                ProjectVersion.MASK_DIRECTORIES);
+        return listFiles(prid, verid, null, ProjectVersion.MASK_DIRECTORIES, 
+                after, limit);
 	}
 
 	@Path("/project/{id}/version/{vid}/dirs/{dir: .+}")
     @GET
     @Produces({"application/xml", "application/json"})
-    public List<ProjectFile> getDirs(@PathParam("id") String prid,
+    public List<FileSummary> getDirs(@PathParam("id") String prid,
             @PathParam("vid") String verid,
-            @PathParam("dir") String path) {
+            @PathParam("dir") String path,
+            @QueryParam("after") @DefaultValue("-1") long after,
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
         
-        ProjectVersion pv = getVersion(prid, verid);
+        return listFiles(prid, verid, path, ProjectVersion.MASK_DIRECTORIES, 
+                after, limit);
+	}
+	
+	private List<FileSummary> listFiles(String prid, String verid, 
+	        String path, int mask, long after, int limit) {
+	    ProjectVersion pv = getVersion(prid, verid);
         if (pv == null)
             return Collections.EMPTY_LIST;
         
-        if (!path.startsWith("/"))
-            path = "/" + path;
+        Directory d = null;
+        if (path != null) {
+            if (!path.startsWith("/"))
+                path = "/" + path;
+            d = Directory.getDirectory(path, false);
+            if (d == null)
+                return Collections.EMPTY_LIST;
+        }
         
-        return pv.getFiles(Directory.getDirectory(path, false), 
-                ProjectVersion.MASK_DIRECTORIES);
+        List<FileSummary> files = new ArrayList<FileSummary>();
+        for (Object[] row : ProjectVersion.getLiveFileSummaries(
+                pv.getProject(), pv.getSequence(), d, mask, after, 
+                pageSize(limit)))
+            files.add(new FileSummary(row));
+        return files;
+	}
+	
+	private static int pageSize(int limit) {
+	    if (limit <= 0 || limit > MAX_RESULTS)
+	        return MAX_RESULTS;
+	    return limit;
 	}
 }
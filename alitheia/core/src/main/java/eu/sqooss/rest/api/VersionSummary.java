@@ -0,0 +1,100 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.rest.api;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A lightweight view of a project version, read with a projection query
+ * instead of loading the version entity. Serialised like the identically
+ * named fields of {@link eu.sqooss.service.db.ProjectVersion}.
+ */
+@XmlRootElement(name="version")
+@XmlAccessorType(XmlAccessType.NONE)
+public class VersionSummary {
+
+    @XmlElement
+    private long id;
+    
+    @XmlElement
+    private String revisionId;
+    
+    @XmlElement
+    private long timestamp;
+    
+    @XmlElement
+    private long sequence;
+    
+    @XmlElement
+    private String commitMsg;
+    
+    public VersionSummary() {}
+    
+    /**
+     * Create a version from a row returned by 
+     * {@link eu.sqooss.service.db.ProjectVersion#getVersionSummaries}.
+     */
+    public VersionSummary(Object[] row) {
+        this.id = (Long) row[0];
+        this.revisionId = (String) row[1];
+        this.timestamp = (Long) row[2];
+        this.sequence = (Long) row[3];
+        this.commitMsg = (String) row[4];
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRevisionId() {
+        return revisionId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getCommitMsg() {
+        return commitMsg;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
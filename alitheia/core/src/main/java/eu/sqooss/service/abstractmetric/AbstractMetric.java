@@ -39,17 +39,21 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -68,7 +72,10 @@ import eu.sqooss.service.db.MetricType;
 import eu.sqooss.service.db.NameSpaceMeasurement;
 import eu.sqooss.service.db.Plugin;
 import eu.sqooss.service.db.PluginConfiguration;
+import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.db.StoredProjectMeasurement;
@@ -79,6 +86,8 @@ import eu.sqooss.service.metricactivator.MetricActivator;
 import eu.sqooss.service.pa.PluginAdmin;
 import eu.sqooss.service.pa.PluginInfo;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.util.KeyedLocks;
+import eu.sqooss.service.util.LongHashMap;
 import eu.sqooss.service.util.Pair;
 
 /**
@@ -110,6 +119,49 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
      */
     protected ThreadLocal<Job> job = new ThreadLocal<Job>();
 
+    /*
+     * The run() and getResult() methods of this plug-in, resolved by DAO
+     * class and indexed by RUN and GET_RESULT, so that invocations do not
+     * repeat the reflective lookups. Entries for the activation types are
+     * added at construction and entries for other classes, e.g. Hibernate
+     * proxies, on first use. Missing methods are stored as nulls.
+     */
+    private ConcurrentMap<Class<?>, Method[]> dispatch = 
+        new ConcurrentHashMap<Class<?>, Method[]>();
+    private static final int RUN = 0;
+    private static final int GET_RESULT = 1;
+
+    /* Serialise result calculations per DAO, see getResult() */
+    private KeyedLocks daoLocks = new KeyedLocks();
+    /* The jobs of the threads holding the DAO locks */
+    private ConcurrentMap<Long, Job> lockHolders = 
+        new ConcurrentHashMap<Long, Job>();
+    
+    /* DAOs for which a calculation has been rescheduled and not yet run */
+    private Set<Long> rescheduled = 
+        Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    
+    private AtomicLong lockContentions = new AtomicLong();
+    private AtomicLong reschedulesCoalesced = new AtomicLong();
+
+    /* 
+     * Whether the version totals computed by aggregateLiveFiles() cover
+     * all live files, by version id. Bounded, as it is only needed until
+     * the next versions have been measured.
+     */
+    private static final int MAX_COMPLETE_TOTALS = 4096;
+    private Map<Long, Boolean> completeTotals = Collections.synchronizedMap(
+        new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> e) {
+                return size() > MAX_COMPLETE_TOTALS;
+            }
+        });
+
+    /** Results read by the current job, see {@link #getResultCache()} */
+    private ThreadLocal<ResultCache> resultCache = new ThreadLocal<ResultCache>();
+
     /** 
      * Metric mnemonics for the metrics required to be present for this 
      * metric to operate.
@@ -157,18 +209,18 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
     protected static final String QRY_SYNC_MM = "select mm.id " +
     		"from MailMessage mm " +
     		"where mm.list.storedProject = :project " +
-    		"and mm.id not in (" +
-    		"	select mmm.mail.id " +
+    		"and not exists (" +
+    		"	select mmm.mail " +
     		"	from MailMessageMeasurement mmm " +
-    		"	where mmm.metric.id =:metric and mmm.mail.id = mm.id))";
+    		"	where mmm.mail.id = mm.id and mmm.metric.id = :metric)";
     
     protected static final String QRY_SYNC_MT = "select mlt.id " +
     		"from MailingListThread mlt " +
     		"where mlt.list.storedProject = :project " +
-    		"and mlt.id not in (" +
-    		"	select mltm.thread.id " +
+    		"and not exists (" +
+    		"	select mltm.thread " +
     		"	from MailingListThreadMeasurement mltm " +
-    		"	where mltm.metric.id =:metric and mltm.thread.id = mlt.id)";
+    		"	where mltm.thread.id = mlt.id and mltm.metric.id = :metric)";
     
     protected static final String QRY_SYNC_DEV = "select d.id " +
     		"from Developer d " +
@@ -272,6 +324,9 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 		} else {
 			log.warn("Plug-in " + getName() + " declares no metrics");
 		}
+		
+		for (Class<? extends DAObject> activator : activators)
+		    getDispatch(activator);
      }
 
     /**
@@ -346,14 +401,14 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
                         + Plugin.getPluginByHashcode(getUniqueKey()).getName());
             }
             List<Result> re = null;
-            try {
-                Method method = findGetResultMethod(o.getClass());
-                re = (List<Result>) method.invoke(this, o, m);
-            } catch (SecurityException e) {
-                logErr("getResult", o, e);
-            } catch (NoSuchMethodException e) {
+            Method method = getDispatch(o.getClass())[GET_RESULT];
+            if (method == null) {
                 log.error("No method getResult(" + m.getMetricType().toActivator() + ") for type "
                         + this.getClass().getName());
+                continue;
+            }
+            try {
+                re = (List<Result>) method.invoke(this, o, m);
             } catch (IllegalArgumentException e) {
                 logErr("getResult", o, e);
             } catch (IllegalAccessException e) {
@@ -369,23 +424,6 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return result;
     }
 
-     private Method findGetResultMethod(Class<?> clazz) 
-     throws NoSuchMethodException {
-     Method m = null;
-     
-     try {
-         m = this.getClass().getMethod("getResult", clazz, Metric.class);                
-     } catch (NoSuchMethodException nsme) {
-         try {
-             m = this.getClass().getMethod("getResult", clazz.getSuperclass(), Metric.class);
-         } catch (NoSuchMethodException nsme1) {
-             throw nsme;
-         }
-     }
-
-     return m;
-     }
-     
     /**
      * Call the appropriate getResult() method according to
      * the type of the entity that is measured.
@@ -405,80 +443,83 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
      */
     public List<Result> getResult(DAObject o, List<Metric> l) 
     throws MetricMismatchException, AlreadyProcessingException, Exception {
+        /* A rescheduled calculation is being retried, see reschedule() */
+        rescheduled.remove(o.getId());
         List<Result> r = getResultIfAlreadyCalculated(o, l);
 
         // the result hasn't been calculated yet. Do so.
         if (r == null || r.size() == 0) {
-           /*
+            /*
              * To ensure that no two instances of the metric operate on the same
              * DAO lock on the DAO. Working on the same DAO can happen often
              * when a plugin starts the calculation of another metric as a
-             * result of a plugin dependency association. This lock has the side
-             * effect that no two Plugins can be invoked with the same DAO as an
-             * argument even if the plug-ins do not depend on each other.
+             * result of a plugin dependency association. If another thread
+             * is already calculating the result, do not wait for it: its
+             * results only become visible once its job commits, so retry 
+             * in a new job that runs after the other thread's job.
              */
-            synchronized (lockObject(o)) {
-                try {
-                    run(o);
-                    
-                    r = getResultIfAlreadyCalculated(o, l);
-                    if (r == null || r.size() == 0) {
-                        if (job.get().state() != Job.State.Yielded)
-                            log.debug("Metric " + getClass() + " didn't return"
-                                + "a result even after running it. DAO: "
-                                + o.getId());
-                    }
-                } finally {
-                    unlockObject(o);
+            long id = o.getId();
+            if (!daoLocks.tryLock(id)) {
+                lockContentions.incrementAndGet();
+                reschedule(o, lockHolders.get(id));
+            }
+            
+            Job current = job.get();
+            Job previous = (current == null) ? null : lockHolders.put(id, current);
+            try {
+                run(o);
+
+                r = getResultIfAlreadyCalculated(o, l);
+                if (r == null || r.size() == 0) {
+                    if (current == null 
+                            || current.state() != Job.State.Yielded)
+                        log.debug("Metric {} didn't return a result even "
+                            + "after running it. DAO: {}", getClass(), id);
                 }
+            } finally {
+                /* Re-entrant calls leave the outer call's entry in place */
+                if (current != null && previous == null)
+                    lockHolders.remove(id, current);
+                daoLocks.unlock(id);
             }
         }
 
         return r;
     }
 
-    private Map<Long,Pair<Object,Integer>> locks = new HashMap<Long,Pair<Object,Integer>>();
-    
-    private Object lockObject(DAObject o) throws AlreadyProcessingException {
-    	synchronized (locks) {
-            if (!locks.containsKey(o.getId())) {
-                locks.put(o.getId(), 
-                        new Pair<Object, Integer>(new Object(),0));
-            }
-            Pair<Object, Integer> p = locks.get(o.getId());
-            if (p.second + 1 > 1) {
-                /*
-                 * Break and reschedule the calculation of each call to the
-                 * getResult method if it originates from another thread than
-                 * the thread that has currently locked the DAO object. 
-                 * This is required for the DB transaction in the stopped
-                 * job to see the results of the calculation of the original
-                 * job.
-                 */ 
-                log.debug("DAO Id:" + o.getId() + 
-                        " Already locked - failing job");
-                try {
-                    throw new AlreadyProcessingException();
-                } finally {
-                    MetricActivator ma = AlitheiaCore.getInstance().getMetricActivator();
-                    ma.runMetric(o, this);
-                }
-            }
-            p.second = p.second + 1;
-            return p.first;
+    /* 
+     * Fail the current calculation and retry it in a new job, which runs
+     * after the job holding the DAO lock, if known, has finished. Requests
+     * for a DAO that is already waiting to be retried are not enqueued 
+     * again; the mark is cleared when any calculation for the DAO starts,
+     * so a retry that fails again is always rescheduled.
+     */
+    private void reschedule(DAObject o, Job holder) 
+    throws AlreadyProcessingException {
+        if (rescheduled.add(o.getId())) {
+            log.debug("DAO Id:{} Already locked - failing job", o.getId());
+            MetricActivator ma = AlitheiaCore.getInstance().getMetricActivator();
+            ma.runMetric(o, this, holder);
+        } else {
+            reschedulesCoalesced.incrementAndGet();
         }
+        throw new AlreadyProcessingException();
     }
     
-    private void unlockObject(DAObject o) {
-    	synchronized(locks) {
-    		Pair<Object,Integer> p = locks.get(o.getId());
-    		p.second = p.second - 1;
-    		if (p.second == 0) {
-    			locks.remove(o.getId());
-    		} else {
-    		log.debug("Unlocking DAO Id:" + o.getId());
-    		}
-    	}
+    /**
+     * Get the number of result calculations that found the DAO locked by 
+     * another thread calculating the same metric.
+     */
+    public long getLockContentions() {
+        return lockContentions.get();
+    }
+    
+    /**
+     * Get the number of failed result calculations that were not 
+     * rescheduled, as a retry for the same DAO was already pending.
+     */
+    public long getReschedulesCoalesced() {
+        return reschedulesCoalesced.get();
     }
     
     /**
@@ -500,13 +541,15 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
             return;
         }
 
+        Method m = getDispatch(o.getClass())[RUN];
+        if (m == null) {
+            logErr("run", o, new NoSuchMethodException(getClass().getName() 
+                    + ".run(" + o.getClass().getName() + ")"));
+            return;
+        }
+        
         try {
-            Method m = findRunMethod("run", o.getClass());
             m.invoke(this, o);
-        } catch (SecurityException e) {
-            logErr("run", o, e);
-        } catch (NoSuchMethodException e) {
-            logErr("run", o, e);
         } catch (IllegalArgumentException e) {
             logErr("run", o, e);
         } catch (IllegalAccessException e) {
@@ -527,23 +570,49 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         }
     }
     
-    private Method findRunMethod(String name, Class<?> clazz) 
-        throws NoSuchMethodException {
-        Method m = null;
-        
-        try {
-            m = this.getClass().getMethod(name, clazz);                
-        } catch (NoSuchMethodException nsme) {
-            try {
-                m = this.getClass().getMethod(name, clazz.getSuperclass());
-            } catch (NoSuchMethodException nsme1) {
-                throw nsme;
-            }
+    /*
+     * Get the run() and getResult() methods that accept the provided DAO
+     * class, resolving them if this is the first time the class is seen.
+     */
+    private Method[] getDispatch(Class<?> clazz) {
+        Method[] m = dispatch.get(clazz);
+        if (m == null) {
+            m = new Method[2];
+            m[RUN] = resolveMethod("run", clazz);
+            m[GET_RESULT] = resolveMethod("getResult", clazz, Metric.class);
+            dispatch.putIfAbsent(clazz, m);
         }
-       
         return m;
     }
     
+    /*
+     * Find the public method with the provided name whose first argument 
+     * is the closest superclass of the DAO class, followed by the 
+     * provided argument types. DAObject itself is not considered, as it
+     * would match the generic methods of this class. Returns null if 
+     * there is none.
+     */
+    private Method resolveMethod(String name, Class<?> clazz, Class<?>... args) {
+        Method[] methods = getClass().getMethods();
+        for (Class<?> c = clazz; c != null && !c.equals(DAObject.class); 
+                c = c.getSuperclass()) {
+            for (Method m : methods) {
+                Class<?>[] params = m.getParameterTypes();
+                if (!m.getName().equals(name) || params.length != args.length + 1 
+                        || !params[0].equals(c)) 
+                    continue;
+                if (!Arrays.equals(args, Arrays.copyOfRange(params, 1, params.length)))
+                    continue;
+                try {
+                    /* Skip the access checks on invocation */
+                    m.setAccessible(true);
+                } catch (SecurityException e) {}
+                return m;
+            }
+        }
+        return null;
+    }
+    
     private void logErr(String method, DAObject o, Exception e) {
         log.error("Plugin:" + this.getClass().toString() + 
                 "\nDAO id: " + o.getId() + 
@@ -638,10 +707,14 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
     /**
      * Remove a plug-in's record from the DB. The DB's referential integrity
      * mechanisms are expected to automatically remove associated records.
+     * The metrics' synchronisation high-water marks are removed here. 
      * Subclasses should also clean up any custom tables created.
      */
     public boolean remove() {
         Plugin p = Plugin.getPluginByHashcode(getUniqueKey());
+        if (p != null && p.getSupportedMetrics() != null)
+            for (Metric m : p.getSupportedMetrics())
+                SyncPlanner.clearHighWaterMarks(m);
         return db.deleteRecord(p);
     }
     
@@ -838,6 +911,41 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         resultFieldNames.put(EncapsulationUnitMeasurement.class, "encapsulationUnit");
         resultFieldNames.put(NameSpaceMeasurement.class, "namespace");
     }
+    
+    private static Map<Type, Class<? extends MetricMeasurement>> measurementTypes = 
+        new HashMap<Type, Class<? extends MetricMeasurement>>();
+    
+    static {
+        measurementTypes.put(Type.PROJECT, StoredProjectMeasurement.class);
+        measurementTypes.put(Type.PROJECT_VERSION, ProjectVersionMeasurement.class);
+        measurementTypes.put(Type.SOURCE_FILE, ProjectFileMeasurement.class);
+        measurementTypes.put(Type.SOURCE_DIRECTORY, ProjectFileMeasurement.class);
+        measurementTypes.put(Type.MAILMESSAGE, MailMessageMeasurement.class);
+        measurementTypes.put(Type.MAILTHREAD, MailingListThreadMeasurement.class);
+        measurementTypes.put(Type.EXECUNIT, ExecutionUnitMeasurement.class);
+        measurementTypes.put(Type.ENCAPSUNIT, EncapsulationUnitMeasurement.class);
+        measurementTypes.put(Type.NAMESPACE, NameSpaceMeasurement.class);
+    }
+    
+    /* Path from each measurement to the project of the measured entity */
+    private static Map<Class<? extends MetricMeasurement>, String> projectPaths = 
+        new HashMap<Class<? extends MetricMeasurement>, String>();
+    
+    static {
+        projectPaths.put(StoredProjectMeasurement.class, "storedProject");
+        projectPaths.put(ProjectVersionMeasurement.class, "projectVersion.project");
+        projectPaths.put(ProjectFileMeasurement.class, "projectFile.projectVersion.project");
+        projectPaths.put(MailMessageMeasurement.class, "mail.list.storedProject");
+        projectPaths.put(MailingListThreadMeasurement.class, "thread.list.storedProject");
+        projectPaths.put(ExecutionUnitMeasurement.class, 
+                "executionUnit.file.projectVersion.project");
+        projectPaths.put(EncapsulationUnitMeasurement.class, 
+                "encapsulationUnit.file.projectVersion.project");
+        projectPaths.put(NameSpaceMeasurement.class, "namespace.changeVersion.project");
+    }
+    
+    /* Maximum number of entity ids bound to a single query */
+    private static final int RESULTS_BATCH = 1000;
 
     /**
      * Convenience method to get the measurement for a single metric.
@@ -860,6 +968,134 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         
     }
 
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * The results are read directly from the measurement tables. Plug-ins
+     * whose <code>getResult()</code> methods do more than returning stored
+     * measurements should override this method.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, LongHashMap<String>> getResultsIfAlreadyCalculated(
+            List<Metric> l, long[] ids) throws MetricMismatchException {
+        Map<String, LongHashMap<String>> results = 
+            new HashMap<String, LongHashMap<String>>();
+        
+        /* Group the metrics by the table their measurements are stored in */
+        Map<Class<? extends MetricMeasurement>, Map<Long, LongHashMap<String>>> byType = 
+            new HashMap<Class<? extends MetricMeasurement>, Map<Long, LongHashMap<String>>>();
+        for (Metric m : l) {
+            if (!metrics.containsKey(m.getMnemonic())) {
+                throw new MetricMismatchException("Metric " + m.getMnemonic()
+                        + " not defined by plugin " + getName());
+            }
+            Class<? extends MetricMeasurement> clazz = 
+                measurementTypes.get(m.getMetricType().getEnumType());
+            if (clazz == null) {
+                throw new MetricMismatchException("Metric " + m.getMnemonic()
+                        + " does not store measurements");
+            }
+            
+            LongHashMap<String> r = new LongHashMap<String>(ids.length);
+            results.put(m.getMnemonic(), r);
+            Map<Long, LongHashMap<String>> metricResults = byType.get(clazz);
+            if (metricResults == null) {
+                metricResults = new HashMap<Long, LongHashMap<String>>();
+                byType.put(clazz, metricResults);
+            }
+            metricResults.put(m.getId(), r);
+        }
+        
+        for (Class<? extends MetricMeasurement> clazz : byType.keySet()) {
+            Map<Long, LongHashMap<String>> metricResults = byType.get(clazz);
+            String field = resultFieldNames.get(clazz);
+            String q = "select m." + field + ".id, m.metric.id, m.result " +
+                "from " + clazz.getSimpleName() + " m " +
+                "where m.metric.id in (:metrics) and m." + field + ".id in (:ids)";
+            
+            Map<String, Collection> params = new HashMap<String, Collection>();
+            params.put("metrics", metricResults.keySet());
+            
+            for (int i = 0; i < ids.length; i += RESULTS_BATCH) {
+                int end = Math.min(ids.length, i + RESULTS_BATCH);
+                List<Long> batch = new ArrayList<Long>(end - i);
+                for (int j = i; j < end; j++)
+                    batch.add(ids[j]);
+                params.put("ids", batch);
+                
+                List<Object[]> rows = (List<Object[]>) db.doHQL(q, null, params);
+                for (Object[] row : rows) {
+                    metricResults.get((Long) row[1]).put((Long) row[0], 
+                            (String) row[2]);
+                }
+            }
+        }
+        
+        return results;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * The results are read directly from the measurement tables, as 
+     * strings. Plug-ins whose <code>getResult()</code> methods do more 
+     * than returning stored measurements should override this method.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Result> getResults(Metric m, StoredProject sp, long from, 
+            long to, int limit) throws MetricMismatchException {
+        if (!metrics.containsKey(m.getMnemonic())) {
+            throw new MetricMismatchException("Metric " + m.getMnemonic()
+                    + " not defined by plugin " + getName());
+        }
+        Class<? extends MetricMeasurement> clazz = 
+            measurementTypes.get(m.getMetricType().getEnumType());
+        if (clazz == null) {
+            throw new MetricMismatchException("Metric " + m.getMnemonic()
+                    + " does not store measurements");
+        }
+        
+        String field = resultFieldNames.get(clazz);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("metric", m.getId());
+        params.put("from", from);
+        params.put("to", to);
+        
+        StringBuilder q = new StringBuilder();
+        q.append("select m.").append(field).append(".id, m.result ");
+        q.append("from ").append(clazz.getSimpleName()).append(" m ");
+        q.append("where m.metric.id = :metric ");
+        q.append("and m.").append(field).append(".id >= :from ");
+        q.append("and m.").append(field).append(".id <= :to ");
+        if (sp != null) {
+            q.append("and m.").append(projectPaths.get(clazz)).append(" = :project ");
+            params.put("project", sp);
+        }
+        q.append("order by m.").append(field).append(".id asc");
+        
+        List<Object[]> rows = (List<Object[]>) db.doHQL(q.toString(), params, limit);
+        List<Result> results = new ArrayList<Result>(rows.size());
+        for (Object[] row : rows) {
+            results.add(new Result((Long) row[0], m, row[1], 
+                    Result.ResultType.STRING));
+        }
+        return results;
+    }
+    
+    /**
+     * Get the cache of metric results read by the job that is currently
+     * executing the plug-in on this thread. The cache is discarded when
+     * a new job is set.
+     */
+    protected ResultCache getResultCache() {
+        ResultCache c = resultCache.get();
+        if (c == null) {
+            c = new ResultCache();
+            resultCache.set(c);
+        }
+        return c;
+    }
+    
     /**{@inheritDoc}*/
     @Override
     public final List<Class<? extends DAObject>> getMetricActivationTypes (Metric m) {
@@ -895,51 +1131,198 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 
     	Map<MetricType.Type, SortedSet<Long>> IDs = new HashMap<Type, SortedSet<Long>>();
     	
-        Map<String, Object> params = new HashMap<String, Object>();
-        params.put("project", sp);
-        params.put("metric", m.getId());
-
-    	String q = null;
-    	
     	for (Class<? extends DAObject> at : getMetricActivationTypes(m)) {
-    	
-	    	if (MetricType.fromActivator(at) == Type.PROJECT_VERSION) {
-	    		q = QRY_SYNC_PV;
-	    	} else if (MetricType.fromActivator(at) == Type.SOURCE_FILE) {
-	    		q = QRY_SYNC_PF;
-	    	} else if (MetricType.fromActivator(at) == Type.SOURCE_DIRECTORY) {
-	    		q = QRY_SYNC_PD;
-	     	} else if (MetricType.fromActivator(at) == Type.MAILING_LIST) {
-	    		throw new MetricActivationException("Metric synchronisation with MAILING_LIST objects not implemented");
-	    	} else if (MetricType.fromActivator(at) == Type.MAILMESSAGE) {
-	    		q = QRY_SYNC_MM;
-	    	} else if (MetricType.fromActivator(at) == Type.MAILTHREAD) {
-	    		q = QRY_SYNC_MT;
-	    	} else if (MetricType.fromActivator(at) == Type.BUG) {
-	    		throw new MetricActivationException("Metric synchronisation with BUG objects not implemented");
-	    	} else if (MetricType.fromActivator(at) == Type.DEVELOPER) {
-	    		q = QRY_SYNC_DEV;
-	    	} else if (MetricType.fromActivator(at) == Type.NAMESPACE) {
-                q = QRY_SYNC_NS;
-            } else if (MetricType.fromActivator(at) == Type.ENCAPSUNIT) {
-                q = QRY_SYNC_ENCUNT;
-            } else if (MetricType.fromActivator(at) == Type.EXECUNIT) {
-                q = QRY_SYNC_EXECUNT;
-            } else {
-	    		throw new MetricActivationException("Metric synchronisation with GENERIC objects not implemented");
-	    	}
-	    	
-	    	List<Long> objectIds = (List<Long>) db.doHQL(q, params);
+    	    Type t = MetricType.fromActivator(at);
 	    	TreeSet<Long> ids = new TreeSet<Long>();
-	    	ids.addAll(objectIds);
-	    	IDs.put(MetricType.fromActivator(at), ids);
+	    	for (long id : SyncPlanner.getObjectIds(sp, m, t))
+	    	    ids.add(id);
+	    	IDs.put(t, ids);
     	}
     	return IDs;
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public long[] getObjectIdsToSync(StoredProject sp, Metric m, Type t,
+            InvocationOrder order, long from, int limit)
+    throws MetricActivationException {
+        return SyncPlanner.getObjectIds(sp, m, t, order, from, limit);
+    }
+    
+    /**
+     * Run a query that selects object ids to sync and return the ids 
+     * succeeding the provided key, in the requested order. Plug-ins 
+     * overriding the object id selection queries can use this method to 
+     * paginate their custom queries.
+     *  
+     * @see SyncPlanner#getObjectIdsPage(String, String, StoredProject, Metric, InvocationOrder, long, int)
+     */
+    protected long[] getObjectIdsPage(String q, String alias, StoredProject sp,
+            Metric m, InvocationOrder order, long from, int limit) {
+        return SyncPlanner.getObjectIdsPage(q, alias, sp, m, order, from, limit);
+    }
+    
+    /**
+     * Computes the contribution of a single file entry to a set of version
+     * level totals. Used by {@link AbstractMetric#aggregateLiveFiles}.
+     */
+    public interface FileAggregator {
+        /**
+         * Add the contribution of the provided file entry, multiplied by 
+         * <code>sign</code>, to <code>totals</code>.
+         * 
+         * @param pf A non-deleted file or directory entry
+         * @param results The file's measurements for the requested file 
+         *  metrics, by metric mnemonic. Metrics that have not been measured
+         *  for the file are missing. 
+         * @param totals The totals, in the order of the version metric 
+         *  mnemonics passed to {@link AbstractMetric#aggregateLiveFiles}
+         * @param sign 1 when the file is added to the totals, -1 when it 
+         *  is removed from them
+         */
+        void aggregate(ProjectFile pf, Map<String, String> results, 
+                long[] totals, int sign);
+    }
+    
+    /**
+     * Aggregate measurements over the files that are live in a project 
+     * version. When the version that precedes <code>pv</code> in sequence 
+     * order has stored results for all <code>versionMetrics</code>, and 
+     * those were computed by this instance over files that all had their
+     * <code>fileMetrics</code> measured, they are used as the starting 
+     * totals and only the file entries that stopped or started being live
+     * at <code>pv</code> are visited. Otherwise, all live files are 
+     * visited. Totals computed before a restart are not known to be 
+     * complete, see {@link LiveFileTotals}.
+     * <br/>
+     * The predecessor in sequence order is used instead of the version's 
+     * parents, as this is what file liveness is defined against: the 
+     * files live at a merge commit are those live at the previous version
+     * in sequence order, adjusted by the file entries the merge recorded.
+     * The result is therefore the same as aggregating over 
+     * {@link ProjectVersion#getLiveFiles(StoredProject, long, eu.sqooss.service.db.Directory, int)}.
+     * 
+     * @param pv The version to aggregate measurements for
+     * @param versionMetrics The mnemonics of the version metrics whose 
+     *  totals are computed. They must be stored as integer values. 
+     * @param fileMetrics The mnemonics of the file metrics whose results 
+     *  are passed to the aggregator
+     * @param agg The per-file contribution function
+     * @return The totals, in the order of <code>versionMetrics</code>
+     */
+    protected long[] aggregateLiveFiles(ProjectVersion pv, 
+            String[] versionMetrics, String[] fileMetrics, FileAggregator agg) {
+        long[] base = new long[versionMetrics.length];
+        ProjectVersion prev = pv.getPreviousVersion();
+        LiveFileTotals totals;
+        
+        if (prev != null 
+                && Boolean.TRUE.equals(completeTotals.get(prev.getId()))
+                && getVersionTotals(prev, versionMetrics, base)) {
+            totals = new LiveFileTotals(base, true, fileMetrics.length);
+            Map<String, Object> params = new HashMap<String, Object>();
+            aggregateFiles(prev.leavingFilesCondition("pf", params), params, 
+                    fileMetrics, agg, totals, false);
+            params = new HashMap<String, Object>();
+            aggregateFiles(pv.enteringFilesCondition("pf", params), params, 
+                    fileMetrics, agg, totals, true);
+        } else {
+            totals = new LiveFileTotals(versionMetrics.length, 
+                    fileMetrics.length);
+            Map<String, Object> params = new HashMap<String, Object>();
+            aggregateFiles(pv.liveFilesCondition("pf", params), params, 
+                    fileMetrics, agg, totals, true);
+        }
+        
+        completeTotals.put(pv.getId(), totals.isComplete());
+        return totals.getTotals();
+    }
+    
+    /*
+     * Read the stored results of the provided metrics for a version into
+     * totals. Returns false if any of them is missing or is not an integer.
+     */
+    private boolean getVersionTotals(ProjectVersion pv, String[] mnemonics,
+            long[] totals) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("projectVersion", pv);
+        for (int i = 0; i < mnemonics.length; i++) {
+            Metric m = Metric.getMetricByMnemonic(mnemonics[i]);
+            if (m == null)
+                return false;
+            props.put("metric", m);
+            List<ProjectVersionMeasurement> pvms = 
+                db.findObjectsByProperties(ProjectVersionMeasurement.class, props);
+            if (pvms.isEmpty())
+                return false;
+            try {
+                totals[i] = Long.parseLong(pvms.get(0).getResult());
+            } catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /*
+     * Pass the non-deleted file entries matching the condition, along with
+     * their measurements for the provided metrics, to the aggregator.
+     */
+    @SuppressWarnings("unchecked")
+    private void aggregateFiles(String cond, Map<String, Object> params,
+            String[] fileMetrics, FileAggregator agg, LiveFileTotals totals, 
+            boolean add) {
+        params.put("paramDeleted", ProjectFileState.deleted());
+        String where = " where " + cond + " and pf.state <> :paramDeleted";
+        
+        List<ProjectFile> files = (List<ProjectFile>) db.doHQL(
+                "select pf from ProjectFile pf" + where, params);
+        if (files.isEmpty())
+            return;
+        
+        Map<Long, Map<String, String>> results = 
+            new HashMap<Long, Map<String, String>>();
+        Map<Long, String> mnemonics = new HashMap<Long, String>();
+        for (String mnem : fileMetrics) {
+            Metric m = Metric.getMetricByMnemonic(mnem);
+            if (m != null)
+                mnemonics.put(m.getId(), mnem);
+        }
+        
+        if (!mnemonics.isEmpty()) {
+            Map<String, Collection> colParams = new HashMap<String, Collection>();
+            colParams.put("paramMetrics", mnemonics.keySet());
+            List<ProjectFileMeasurement> pfms = 
+                (List<ProjectFileMeasurement>) db.doHQL("select pfm " +
+                    "from ProjectFile pf, ProjectFileMeasurement pfm" + where + 
+                    " and pfm.projectFile = pf and pfm.metric.id in (:paramMetrics)",
+                    params, colParams);
+            
+            for (ProjectFileMeasurement pfm : pfms) {
+                Long id = pfm.getProjectFile().getId();
+                Map<String, String> r = results.get(id);
+                if (r == null) {
+                    r = new HashMap<String, String>(4);
+                    results.put(id, r);
+                }
+                r.put(mnemonics.get(pfm.getMetric().getId()), pfm.getResult());
+            }
+        }
+        
+        Map<String, String> none = Collections.emptyMap();
+        for (ProjectFile pf : files) {
+            Map<String, String> r = results.get(pf.getId());
+            if (add)
+                totals.add(pf, r == null ? none : r, agg);
+            else
+                totals.remove(pf, r == null ? none : r, agg);
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void setJob(Job j) {
         this.job.set(j);
+        this.resultCache.remove();
     }
  }
@@ -46,6 +46,7 @@ import eu.sqooss.service.db.PluginConfiguration;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.metricactivator.MetricActivationException;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.util.LongHashMap;
 
 /**
  * This interface defines the common metric plug-in related functionality.
@@ -149,6 +150,42 @@ public interface AlitheiaPlugin {
     List<Result> getResultIfAlreadyCalculated(DAObject o, List<Metric> l)
     	throws MetricMismatchException;
 
+    /**
+     * Get the stored results of the provided metrics for a set of entities
+     * with a single database query per measurement type, without 
+     * triggering a metric calculation. Use this method instead of
+     * {@link #getResultIfAlreadyCalculated(DAObject, List)} when the 
+     * results for many entities are needed.
+     * 
+     * @param l The metrics to get results for
+     * @param ids The ids of the entities, of the activation type of each 
+     *  metric, to get results for
+     * @return The results by metric mnemonic and entity id. Entities
+     *  without a result for a metric are not included in its map.
+     * @throws MetricMismatchException if a metric is not defined by this
+     *  plug-in or its activation type does not store measurements
+     */
+    Map<String, LongHashMap<String>> getResultsIfAlreadyCalculated(
+            List<Metric> l, long[] ids) throws MetricMismatchException;
+
+    /**
+     * Get the stored results of a metric for the entities whose ids fall
+     * in the provided range, with a single database query, in increasing
+     * entity id order. Large ranges can be read in pages by starting each
+     * page after the last entity id of the previous one.
+     * 
+     * @param m The metric to get results for
+     * @param sp If not null, only results for entities that belong to this
+     *  project are returned 
+     * @param from The lowest entity id to return results for
+     * @param to The highest entity id to return results for
+     * @param limit The maximum number of results to return
+     * @throws MetricMismatchException if the metric is not defined by this
+     *  plug-in or its activation type does not store measurements
+     */
+    List<Result> getResults(Metric m, StoredProject sp, long from, long to,
+            int limit) throws MetricMismatchException;
+
     /**
      * Get a metric result. 
      * If the result was not calculated yet, the plugin's run method is called,
@@ -301,6 +338,24 @@ public interface AlitheiaPlugin {
      */
     Map<MetricType.Type, SortedSet<Long>> getObjectIdsToSync(StoredProject sp, Metric m) 
     	throws MetricActivationException;
+    
+    /**
+     * Get a page of the object ids for the database entities of the
+     * provided type to run the metric on. Ids are returned in increasing
+     * order, or decreasing when the order is
+     * {@link InvocationOrder#NEWFIRST}, so the last id of a page can be 
+     * used as the starting key for the next one. Use this method instead 
+     * of {@link #getObjectIdsToSync(StoredProject, Metric)} to avoid loading
+     * all ids to memory on large projects.
+     * 
+     * @param from Only ids after this one (in the requested order) are
+     *  returned 
+     * @param limit The maximum number of ids to return. A page with less 
+     *  ids signifies the end of the results.
+     */
+    long[] getObjectIdsToSync(StoredProject sp, Metric m, MetricType.Type t, 
+            InvocationOrder order, long from, int limit) 
+        throws MetricActivationException;
 
     /**
      * Set a reference to the scheduler job that executes the metric. The
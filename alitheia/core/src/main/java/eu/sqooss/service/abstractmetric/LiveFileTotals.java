@@ -0,0 +1,121 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                 Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package eu.sqooss.service.abstractmetric;
+
+import java.util.Map;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric.FileAggregator;
+import eu.sqooss.service.db.ProjectFile;
+
+/**
+ * Version level totals of file measurements, accumulated through a 
+ * {@link FileAggregator}, along with whether they cover every file they
+ * were computed over. Used by {@link AbstractMetric#aggregateLiveFiles}.
+ * <br/>
+ * Totals are complete if every file entry added to them had results for
+ * all requested file metrics. Only complete totals can be used as the 
+ * base of the next version's totals: file measurements are stored and 
+ * never changed, so the files removed from complete totals are known to
+ * have contributed the results they have now. Not thread safe.
+ */
+public class LiveFileTotals {
+    
+    private final long[] totals;
+    private final int fileMetrics;
+    private final boolean baseComplete;
+    private int unmeasured = 0;
+    
+    /**
+     * Start from zero totals.
+     * 
+     * @param size The number of totals
+     * @param fileMetrics The number of file metrics whose results are 
+     *  aggregated
+     */
+    public LiveFileTotals(int size, int fileMetrics) {
+        this.totals = new long[size];
+        this.fileMetrics = fileMetrics;
+        this.baseComplete = true;
+    }
+    
+    /**
+     * Start from the totals of another version.
+     * 
+     * @param base The totals to start from, not modified
+     * @param complete Whether the base totals are complete
+     * @param fileMetrics The number of file metrics whose results are 
+     *  aggregated
+     */
+    public LiveFileTotals(long[] base, boolean complete, int fileMetrics) {
+        this.totals = base.clone();
+        this.fileMetrics = fileMetrics;
+        this.baseComplete = complete;
+    }
+    
+    /**
+     * Add the contribution of a file entry to the totals.
+     * 
+     * @param results The file's results, by metric mnemonic
+     */
+    public void add(ProjectFile pf, Map<String, String> results, 
+            FileAggregator agg) {
+        agg.aggregate(pf, results, totals, 1);
+        if (!pf.getIsDirectory() && results.size() < fileMetrics)
+            unmeasured++;
+    }
+    
+    /**
+     * Remove the contribution of a file entry from the totals. 
+     * 
+     * @param results The file's results, by metric mnemonic
+     */
+    public void remove(ProjectFile pf, Map<String, String> results, 
+            FileAggregator agg) {
+        agg.aggregate(pf, results, totals, -1);
+    }
+    
+    /** The totals */
+    public long[] getTotals() {
+        return totals;
+    }
+    
+    /**
+     * Check whether the totals cover every file added to them, including
+     * those of the base totals.
+     */
+    public boolean isComplete() {
+        return baseComplete && unmeasured == 0;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -34,7 +34,11 @@ public class Result {
     public Result() {}
     
     public Result(DAObject o, Metric m, Object result, ResultType type) {
-        this.artifactId = o.getId();
+        this(o.getId(), m, result, type);
+    }
+    
+    public Result(long artifactId, Metric m, Object result, ResultType type) {
+        this.artifactId = artifactId;
         this.metricId = m.getId();
         this.result = result;
         this.type = type;
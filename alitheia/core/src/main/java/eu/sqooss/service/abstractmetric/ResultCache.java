@@ -0,0 +1,144 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                 Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package eu.sqooss.service.abstractmetric;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.util.LongHashMap;
+
+/**
+ * A read-through cache of metric results, used by metrics that read the 
+ * results of the metrics they depend on. Results for many entities can be
+ * loaded with a single query through 
+ * {@link #prefetch(AlitheiaPlugin, List, long[])}; results that were not
+ * prefetched are read one by one on first access. Missing results are 
+ * cached too.
+ * <br/>
+ * A cache is meant to live as long as the job that uses it, see
+ * {@link AbstractMetric#getResultCache()}, so results stored after they 
+ * were first read are not seen. Not thread safe.
+ */
+public class ResultCache {
+    
+    /* Marks entities known to have no result */
+    private static final String NONE = new String();
+    
+    private Map<String, LongHashMap<String>> results = 
+        new HashMap<String, LongHashMap<String>>();
+    
+    private int hits, misses;
+    
+    /**
+     * Load the results of the provided metrics for a set of entities in 
+     * bulk. 
+     * 
+     * @param plugin The plug-in that implements the metrics
+     * @param metrics The metrics to load the results of
+     * @param ids The ids of the entities to load results for
+     * @throws MetricMismatchException if a metric is not implemented by 
+     *  the plug-in
+     */
+    public void prefetch(AlitheiaPlugin plugin, List<Metric> metrics, long[] ids) 
+    throws MetricMismatchException {
+        Map<String, LongHashMap<String>> r = 
+            plugin.getResultsIfAlreadyCalculated(metrics, ids);
+        
+        for (Metric m : metrics) {
+            LongHashMap<String> fetched = r.get(m.getMnemonic());
+            LongHashMap<String> cached = results(m);
+            for (long id : ids) {
+                String value = fetched == null ? null : fetched.get(id);
+                cached.put(id, value == null ? NONE : value);
+            }
+        }
+    }
+    
+    /**
+     * Get the result of a metric for an entity, reading it from the plug-in
+     * if it is not cached.
+     * 
+     * @return The result or null if it has not been calculated
+     * @throws MetricMismatchException if the metric is not implemented by 
+     *  the plug-in or does not apply to the entity
+     */
+    public String get(AlitheiaPlugin plugin, Metric m, DAObject o) 
+    throws MetricMismatchException {
+        LongHashMap<String> cached = results(m);
+        String value = cached.get(o.getId());
+        
+        if (value == null) {
+            misses++;
+            List<Metric> l = new ArrayList<Metric>(1);
+            l.add(m);
+            List<Result> r = plugin.getResultIfAlreadyCalculated(o, l);
+            value = (r == null || r.isEmpty()) ? NONE : 
+                r.get(0).getResult().toString();
+            cached.put(o.getId(), value);
+        } else {
+            hits++;
+        }
+        
+        return value == NONE ? null : value;
+    }
+    
+    /** Number of results returned from the cache */
+    public int getHits() {
+        return hits;
+    }
+    
+    /** Number of results read from the plug-ins one by one */
+    public int getMisses() {
+        return misses;
+    }
+    
+    /** Remove all cached results */
+    public void clear() {
+        results.clear();
+    }
+    
+    private LongHashMap<String> results(Metric m) {
+        LongHashMap<String> r = results.get(m.getMnemonic());
+        if (r == null) {
+            r = new LongHashMap<String>();
+            results.put(m.getMnemonic(), r);
+        }
+        return r;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
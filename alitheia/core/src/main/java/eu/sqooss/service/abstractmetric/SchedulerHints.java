@@ -97,5 +97,20 @@ public @interface SchedulerHints {
      * This is a best effort approach
      */
     public InvocationOrder invocationOrder() default OLDFIRST;
+    
+    /**
+     * The number of resources of the same type each metric job should 
+     * process. Batching amortises the cost of loading resources and 
+     * committing results for metrics that are cheap to calculate. 
+     * The default is one resource per job; plug-ins opt in to batching
+     * by setting a larger value.
+     */
+    public int batchSize() default 1;
+    
+    /**
+     * When resources are processed in batches, commit the results every
+     * this many resources. The default (0) is to commit once per batch.
+     */
+    public int batchCommitInterval() default 0;
 }
 
@@ -0,0 +1,323 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                 Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.abstractmetric;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.db.ConfigurationOption;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.db.StoredProjectConfig;
+import eu.sqooss.service.db.MetricType.Type;
+import eu.sqooss.service.metricactivator.MetricActivationException;
+import eu.sqooss.service.util.Pair;
+
+/**
+ * Selects the ids of the resources a metric must be run on to be in sync
+ * with a project.
+ * <p>
+ * Resources that have already been measured are excluded with correlated
+ * <code>not exists</code> subqueries on the measurement tables, which 
+ * the database executes as anti-joins over the (metric, resource) indexes
+ * in <code>db/idx.*.sql</code>. Ids are returned in pages, using the last
+ * id of each page as the starting key of the next.
+ * </p>
+ * <p>
+ * Each metric also has a per project and resource type high-water mark: 
+ * the highest resource id that has been synchronised. Paginated 
+ * synchronisations start after the mark, so re-synchronising a project
+ * only looks at the resources added since the last synchronisation. This
+ * assumes that resource ids increase monotonically. This is also the only
+ * way to skip already measured developers, for which there is no 
+ * measurement table. The marks of a metric are removed along with its
+ * results, see {@link #clearHighWaterMarks(Metric)}.
+ * </p>
+ */
+public class SyncPlanner {
+    
+    private static final String MARK_KEY = "eu.sqooss.metric.sync.mark.";
+    
+    /*
+     * The queries that select unmeasured resources, indexed by the metric 
+     * type they select resources for. The first element of each pair is
+     * the alias of the entity whose ids are returned, the second the query
+     * without ordering. 
+     */
+    private static final Map<Type, Pair<String, String>> plans = 
+        new HashMap<Type, Pair<String, String>>();
+    
+    /*
+     * The queries that select the highest id of all resources of each 
+     * type, measured or not.
+     */
+    private static final Map<Type, String> lastIds = new HashMap<Type, String>();
+    
+    static {
+        plan(Type.PROJECT_VERSION, "pv",
+            "from ProjectVersion pv " +
+            "where pv.project = :project ",
+            "and not exists (" +
+            "   select pvm.projectVersion from ProjectVersionMeasurement pvm " +
+            "   where pvm.projectVersion.id = pv.id and pvm.metric.id = :metric) ");
+        plan(Type.SOURCE_FILE, "pf",
+            "from ProjectFile pf " +
+            "where pf.projectVersion.project = :project " +
+            "and pf.isDirectory = false ",
+            "and not exists (" +
+            "   select pfm.projectFile from ProjectFileMeasurement pfm " +
+            "   where pfm.projectFile.id = pf.id and pfm.metric.id = :metric) ");
+        plan(Type.SOURCE_DIRECTORY, "pf",
+            "from ProjectFile pf " +
+            "where pf.projectVersion.project = :project " +
+            "and pf.isDirectory = true ",
+            "and not exists (" +
+            "   select pfm.projectFile from ProjectFileMeasurement pfm " +
+            "   where pfm.projectFile.id = pf.id and pfm.metric.id = :metric) ");
+        plan(Type.MAILMESSAGE, "mm",
+            "from MailMessage mm " +
+            "where mm.list.storedProject = :project ",
+            "and not exists (" +
+            "   select mmm.mail from MailMessageMeasurement mmm " +
+            "   where mmm.mail.id = mm.id and mmm.metric.id = :metric) ");
+        plan(Type.MAILTHREAD, "mlt",
+            "from MailingListThread mlt " +
+            "where mlt.list.storedProject = :project ",
+            "and not exists (" +
+            "   select mltm.thread from MailingListThreadMeasurement mltm " +
+            "   where mltm.thread.id = mlt.id and mltm.metric.id = :metric) ");
+        /* No measurement table, only the high-water mark applies */
+        plan(Type.DEVELOPER, "d",
+            "from Developer d " +
+            "where d.storedProject = :project ",
+            null);
+        plan(Type.NAMESPACE, "ns",
+            "from NameSpace ns " +
+            "where ns.changeVersion.project = :project ",
+            "and not exists (" +
+            "   select nsm from NameSpaceMeasurement nsm " +
+            "   where nsm.namespace = ns and nsm.metric.id = :metric) ");
+        plan(Type.ENCAPSUNIT, "encu",
+            "from EncapsulationUnit encu " +
+            "where encu.file.projectVersion.project = :project ",
+            "and not exists (" +
+            "   select eum from EncapsulationUnitMeasurement eum " +
+            "   where eum.encapsulationUnit = encu and eum.metric.id = :metric) ");
+        plan(Type.EXECUNIT, "exu",
+            "from ExecutionUnit exu " +
+            "where exu.file.projectVersion.project = :project " +
+            "and exu.changed = true ",
+            "and not exists (" +
+            "   select eum from ExecutionUnitMeasurement eum " +
+            "   where eum.executionUnit = exu and eum.metric.id = :metric) ");
+    }
+    
+    /**
+     * Register the queries for a resource type.
+     * 
+     * @param from The from and where clauses selecting all resources of 
+     *  the type in a project
+     * @param unmeasured The clause that excludes measured resources, or
+     *  null if measurements cannot be looked up
+     */
+    private static void plan(Type t, String alias, String from, 
+            String unmeasured) {
+        plans.put(t, new Pair<String, String>(alias, "select " + alias 
+                + ".id " + from + (unmeasured == null ? "" : unmeasured)));
+        if (unmeasured != null)
+            lastIds.put(t, "select max(" + alias + ".id) " + from);
+    }
+    
+    /**
+     * Get the ids of all resources of the provided type, above the 
+     * metric's high-water mark, that the metric must be run on, in 
+     * increasing order. The mark is then advanced past the resources 
+     * that have already been measured: up to the id preceding the first 
+     * returned id, or to the highest resource id if none is returned.
+     * 
+     * @throws MetricActivationException if synchronisation with resources
+     *  of the provided type is not supported
+     */
+    public static long[] getObjectIds(StoredProject sp, Metric m, Type t)
+    throws MetricActivationException {
+        Pair<String, String> q = getPlan(t);
+        long mark = getHighWaterMark(sp, m, t);
+        
+        /* Read before the unmeasured resources, so that resources added 
+         * in between are above it */
+        long lastId = -1;
+        String last = lastIds.get(t);
+        if (last != null) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("project", sp);
+            List<?> max = AlitheiaCore.getInstance().getDBService()
+                .doHQL(last, params);
+            if (!max.isEmpty() && max.get(0) != null)
+                lastId = (Long) max.get(0);
+        }
+        
+        long[] ids = getObjectIdsPage(q.second, q.first, sp, m, 
+                InvocationOrder.OLDFIRST, mark, -1);
+        
+        long upTo = lastId;
+        if (ids.length > 0)
+            upTo = Math.min(upTo, ids[0] - 1);
+        if (upTo > mark)
+            setHighWaterMark(sp, m, t, upTo);
+        return ids;
+    }
+    
+    /**
+     * Get a page of the ids of the resources of the provided type the 
+     * metric must be run on. 
+     * 
+     * @see AlitheiaPlugin#getObjectIdsToSync(StoredProject, Metric, Type, InvocationOrder, long, int)
+     * @throws MetricActivationException if synchronisation with resources
+     *  of the provided type is not supported
+     */
+    public static long[] getObjectIds(StoredProject sp, Metric m, Type t,
+            InvocationOrder order, long from, int limit) 
+    throws MetricActivationException {
+        Pair<String, String> q = getPlan(t);
+        return getObjectIdsPage(q.second, q.first, sp, m, order, from, limit);
+    }
+    
+    /**
+     * Run a query that selects resource ids to sync and return the ids 
+     * succeeding the provided key, in the requested order. 
+     *  
+     * @param q The query, with a where clause and without any ordering 
+     *  clause. It may refer to the <code>:project</code> and 
+     *  <code>:metric</code> parameters. 
+     * @param alias The alias of the entity whose id is returned
+     * @param from Return ids greater (or, for {@link InvocationOrder#NEWFIRST},
+     *  smaller) than this value
+     * @param limit The maximum number of ids to return, or -1 for all
+     */
+    @SuppressWarnings("unchecked")
+    public static long[] getObjectIdsPage(String q, String alias, 
+            StoredProject sp, Metric m, InvocationOrder order, long from, 
+            int limit) {
+        DBService db = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", sp);
+        if (q.contains(":metric"))
+            params.put("metric", m.getId());
+        
+        params.put("lastId", from);
+        
+        StringBuilder hql = new StringBuilder(q);
+        if (order == InvocationOrder.NEWFIRST) {
+            hql.append(" and ").append(alias).append(".id < :lastId order by ");
+            hql.append(alias).append(".id desc");
+        } else {
+            hql.append(" and ").append(alias).append(".id > :lastId order by ");
+            hql.append(alias).append(".id asc");
+        }
+        
+        List<Long> page = (limit > 0) 
+            ? (List<Long>) db.doHQL(hql.toString(), params, limit) 
+            : (List<Long>) db.doHQL(hql.toString(), params);
+        long[] ids = new long[page.size()];
+        int i = 0;
+        for (Long id : page)
+            ids[i++] = id;
+        return ids;
+    }
+    
+    /**
+     * Get the highest id of the resources of the provided type that the
+     * metric has been synchronised with.
+     * 
+     * @return The high-water mark, or -1 if the metric has not been 
+     *  synchronised with the project yet
+     */
+    public static long getHighWaterMark(StoredProject sp, Metric m, Type t) {
+        String mark = sp.getConfigValue(markKey(m, t));
+        if (mark == null)
+            return -1;
+        try {
+            return Long.parseLong(mark);
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Set the highest id of the resources of the provided type that the 
+     * metric has been synchronised with. Setting the mark to -1 makes the 
+     * next synchronisation consider all resources again. 
+     */
+    public static void setHighWaterMark(StoredProject sp, Metric m, Type t, 
+            long id) {
+        sp.setConfigValue(markKey(m, t), String.valueOf(id));
+    }
+    
+    /**
+     * Remove the high-water marks of a metric for all projects and 
+     * resource types, so that the next synchronisation considers all 
+     * resources again. To be called when the metric's results are 
+     * removed.
+     */
+    @SuppressWarnings("unchecked")
+    public static void clearHighWaterMarks(Metric m) {
+        DBService db = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("key", MARK_KEY + m.getId() + ".%");
+        
+        db.deleteRecords((List<StoredProjectConfig>) db.doHQL(
+                "from StoredProjectConfig spc where spc.confOpt.key like :key",
+                params));
+        db.deleteRecords((List<ConfigurationOption>) db.doHQL(
+                "from ConfigurationOption co where co.key like :key", params));
+    }
+    
+    private static String markKey(Metric m, Type t) {
+        return MARK_KEY + m.getId() + "." + t.toString().toLowerCase();
+    }
+    
+    private static Pair<String, String> getPlan(Type t) 
+    throws MetricActivationException {
+        Pair<String, String> q = plans.get(t);
+        if (q == null)
+            throw new MetricActivationException("Metric synchronisation with "
+                    + t + " objects not implemented");
+        return q;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
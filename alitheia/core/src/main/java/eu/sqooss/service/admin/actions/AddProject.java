@@ -13,6 +13,7 @@ import eu.sqooss.service.db.ConfigOption;
 import eu.sqooss.service.db.ConfigurationOption;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.rest.RestService;
 import eu.sqooss.service.tds.BTSAccessor;
 import eu.sqooss.service.tds.InvalidAccessorException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
@@ -211,6 +212,10 @@ public class AddProject extends AdminActionBase {
         
         log("Added a new project <" + name + "> with ID " + sp.getId());
         
+        RestService rs = AlitheiaCore.getInstance().getRestService();
+        if (rs != null)
+            rs.invalidate(sp.getId());
+        
         if (args.get("update") != null)
             AlitheiaCore.getInstance().getUpdater().update(sp);
         
@@ -64,6 +64,9 @@ public class RunTimeInfo extends AdminActionBase {
             result.put("sched.jobs.finished", s.getFinishedJobs());
             result.put("sched.threads.idle", s.getIdleWorkerThreads());
             result.put("sched.threads.total", s.getWorkerThreads());
+            result.put("sched.jobs.running", s.getRunningJobs());
+            result.put("sched.jobs.rate", s.getThroughput());
+            result.put("sched.jobs.rate.mean", s.getMeanThroughput());
         } catch (Exception e) {
             error(e);
         }
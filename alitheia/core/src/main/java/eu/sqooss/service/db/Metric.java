@@ -308,6 +308,32 @@ public class Metric extends DAObject {
 		return false;
 	}
 
+	/* Entities metric results are stored in */
+	private static final String[] measurementEntities = {
+		"StoredProjectMeasurement", "ProjectVersionMeasurement",
+		"ProjectFileMeasurement", "MailMessageMeasurement",
+		"MailingListThreadMeasurement", "NameSpaceMeasurement",
+		"EncapsulationUnitMeasurement", "ExecutionUnitMeasurement"
+	};
+	
+	/**
+	 * Delete all results of this metric, for all projects.
+	 * 
+	 * @return false if any of the deletions failed
+	 */
+	public boolean removeMeasurements() {
+		DBService dbs = AlitheiaCore.getInstance().getDBService();
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("metric", this);
+		
+		boolean result = true;
+		for (String entity : measurementEntities) {
+			result &= dbs.executeUpdate("delete from " + entity 
+					+ " where metric = :metric", params) >= 0;
+		}
+		return result;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if ((obj == null) || (!(obj instanceof Metric))) {
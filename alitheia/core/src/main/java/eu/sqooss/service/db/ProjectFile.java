@@ -73,6 +73,9 @@ public class ProjectFile extends DAObject{
     
     private static final String qPrevVersion = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and  pf.name = :paramFile and pf.dir.id = :paramDir order by pv.sequence desc";
     private static final String qPrevVersionCopy = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and ((pf.name = :paramFile and pf.dir.id = :paramDir) or ( pf.name = :paramCopyFromName and pf.dir.id = :paramCopyFromDir)) order by pv.sequence desc";
+    /** Value of the valid until sequence for files that are still valid */
+    public static final long VALID_UNTIL_OPEN = Long.MAX_VALUE;
+    
     private static final String qChangedMethods = "from ExecutionUnit eu where eu.file = :file and eu.changed = true";
     
 	@Id
@@ -134,6 +137,34 @@ public class ProjectFile extends DAObject{
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="VALID_TO_ID")
     private ProjectVersion validUntil;
+    
+    /**
+     * The id of the project the file version belongs to, copied from 
+     * the project version so that the validity sequence indexes can
+     * be restricted to a single project.
+     */
+    @Column(name="STORED_PROJECT_ID", nullable = true)
+    @Index(name="IDX_PROJECT_FILE_VALID_SEQUENCE", 
+            columnNames={"STORED_PROJECT_ID", "VALID_FROM_SEQUENCE", 
+                         "VALID_UNTIL_SEQUENCE"})
+    private Long projectId;
+    
+    /**
+     * The sequence number of the validFrom version. Together with 
+     * validUntilSequence, it allows the files that are live in a version
+     * to be found with a range query, without joining project versions. 
+     */
+    @Column(name="VALID_FROM_SEQUENCE", nullable = true)
+    private Long validFromSequence;
+    
+    /**
+     * The sequence number of the validUntil version, or 
+     * {@link #VALID_UNTIL_OPEN} if the file is still valid
+     */
+    @Column(name="VALID_UNTIL_SEQUENCE", nullable = true)
+    @Index(name="IDX_PROJECT_FILE_VALID_UNTIL", 
+            columnNames={"VALID_UNTIL_SEQUENCE", "STORED_PROJECT_ID"})
+    private Long validUntilSequence;
 
     /**
      * The ProjectFile this file was copied from. Only gets a value 
@@ -176,7 +207,7 @@ public class ProjectFile extends DAObject{
 
     public ProjectFile(ProjectVersion pv) {
         this();
-        this.projectVersion = pv;
+        this.setProjectVersion(pv);
         this.setValidFrom(pv);
         this.setValidUntil(null);
     }
@@ -202,9 +233,9 @@ public class ProjectFile extends DAObject{
         this.isDirectory = f.getIsDirectory();
         this.measurements = null;
         this.name = f.getName();
-        this.projectVersion = v;
-        this.validFrom = v;
-        this.validUntil = null;
+        this.setProjectVersion(v);
+        this.setValidFrom(v);
+        this.setValidUntil(null);
         //this.status = f.getStatus();
     }
     
@@ -229,6 +260,9 @@ public class ProjectFile extends DAObject{
 
     public void setProjectVersion(ProjectVersion projectVersion ) {
         this.projectVersion = projectVersion;
+        this.projectId = (projectVersion == null 
+                || projectVersion.getProject() == null) ? null : 
+            projectVersion.getProject().getId();
     }
 
     public ProjectVersion getProjectVersion() {
@@ -301,6 +335,7 @@ public class ProjectFile extends DAObject{
 
     public void setValidFrom(ProjectVersion validFrom) {
         this.validFrom = validFrom;
+        this.validFromSequence = (validFrom == null) ? null : validFrom.getSequence();
     }
 
     public ProjectVersion getValidUntil() {
@@ -309,6 +344,19 @@ public class ProjectFile extends DAObject{
 
     public void setValidUntil(ProjectVersion validUntil) {
         this.validUntil = validUntil;
+        this.validUntilSequence = (validUntil == null) ? VALID_UNTIL_OPEN : validUntil.getSequence();
+    }
+    
+    public Long getProjectId() {
+        return projectId;
+    }
+    
+    public Long getValidFromSequence() {
+        return validFromSequence;
+    }
+    
+    public Long getValidUntilSequence() {
+        return validUntilSequence;
     }
     
     public ProjectFile getCopyFrom() {
@@ -650,6 +698,59 @@ public class ProjectFile extends DAObject{
         return (List<ExecutionUnit>)dbs.doHQL(qChangedMethods, params);
     }
     
+    /**
+     * Fill in the project id and the valid from/until sequence numbers 
+     * of file entries imported before they were recorded. Runs in the 
+     * session of the calling thread, which is expected to commit it on 
+     * its own.
+     * 
+     * @return The number of updated file entries, or -1 on error
+     */
+    public static int updateValidSequences(DBService dbs) {
+        Map<String,Object> params = new HashMap<String,Object>();
+        
+        int updated = dbs.executeUpdate("update ProjectFile pf " +
+                "set pf.projectId = (select pv.project.id " +
+                "from ProjectVersion pv where pv.id = pf.projectVersion.id) " +
+                "where pf.projectId is null", params);
+        if (updated < 0)
+            return -1;
+        
+        if (dbs.executeUpdate("update ProjectFile pf " +
+                "set pf.validFromSequence = (select pv.sequence " +
+                "from ProjectVersion pv where pv.id = pf.validFrom.id) " +
+                "where pf.validFromSequence is null", params) < 0)
+            return -1;
+        
+        if (dbs.executeUpdate("update ProjectFile pf " +
+                "set pf.validUntilSequence = (select pv.sequence " +
+                "from ProjectVersion pv where pv.id = pf.validUntil.id) " +
+                "where pf.validUntilSequence is null " +
+                "and pf.validUntil is not null", params) < 0)
+            return -1;
+        
+        params.put("paramOpen", VALID_UNTIL_OPEN);
+        if (dbs.executeUpdate("update ProjectFile pf " +
+                "set pf.validUntilSequence = :paramOpen " +
+                "where pf.validUntilSequence is null " +
+                "and pf.validUntil is null", params) < 0)
+            return -1;
+        
+        return updated;
+    }
+    
+    /**
+     * Check whether any file entry lacks its project id, which is the
+     * case for entries imported before the validity sequences were 
+     * recorded and not yet filled in by 
+     * {@link #updateValidSequences(DBService)}.
+     */
+    public static boolean hasUnsequencedFiles(DBService dbs) {
+        List<?> l = dbs.doHQL("select pf.id from ProjectFile pf " +
+        		"where pf.projectId is null", null, 1);
+        return l != null && !l.isEmpty();
+    }
+
     public String toString() {
     	StringBuilder sb  = new StringBuilder();
         return sb.append(projectVersion.getRevisionId())
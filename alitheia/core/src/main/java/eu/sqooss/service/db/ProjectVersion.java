@@ -34,6 +34,7 @@ package eu.sqooss.service.db;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -195,6 +196,10 @@ public class ProjectVersion extends DAObject {
 	 */
 	public static final int MASK_ALL = MASK_FILES | MASK_DIRECTORIES;
 
+	/** Parameter names used by the live files HQL condition */
+	public static final String PARAM_LIVE_PROJECT = "paramLiveProject";
+	public static final String PARAM_LIVE_SEQUENCE = "paramLiveSequence";
+
 
 	public ProjectVersion() {
 		// Nothing to do
@@ -528,6 +533,58 @@ public class ProjectVersion extends DAObject {
         }
     }
     
+    /**
+     * Look up the project versions for a set of SCM revision ids with a 
+     * single query. Revision ids that do not correspond to a version of
+     * the project are ignored.
+     * 
+     * @param project Project to look up
+     * @param revisionIds The revision ids to look up
+     * @return The versions found, in sequence order
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ProjectVersion> getVersionsByRevisions(
+            StoredProject project, Collection<String> revisionIds) {
+        if (revisionIds.isEmpty())
+            return Collections.emptyList();
+        
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", project);
+        Map<String, Collection> listParams = new HashMap<String, Collection>();
+        listParams.put("revisionIds", revisionIds);
+        
+        return (List<ProjectVersion>) dbs.doHQL("from ProjectVersion pv " +
+        		"where pv.project = :project " +
+        		"and pv.revisionId in (:revisionIds) " +
+        		"order by pv.sequence asc", params, listParams);
+    }
+    
+    /**
+     * Get a page of the versions of a project without loading the version
+     * entities. Versions are returned in sequence order, as arrays of the
+     * version's id, revision id, timestamp, sequence number and commit 
+     * message.
+     * 
+     * @param project The project to list versions for
+     * @param after Only return versions with a greater sequence number
+     * @param limit The maximum number of versions to return
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> getVersionSummaries(StoredProject project,
+            long after, int limit) {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", project);
+        params.put("after", after);
+        
+        return (List<Object[]>) dbs.doHQL("select pv.id, pv.revisionId, " +
+        		"pv.timestamp, pv.sequence, pv.commitMsg " +
+        		"from ProjectVersion pv " +
+        		"where pv.project = :project and pv.sequence > :after " +
+        		"order by pv.sequence asc", params, limit);
+    }
+    
     /**
      * Look up a project version based on the given time stamp. This does a
      * database lookup and returns the <code>ProjectVersion</code> DAO, which
@@ -602,6 +659,44 @@ public class ProjectVersion extends DAObject {
         return (pvList == null || pvList.isEmpty()) ? null : (ProjectVersion) pvList.get(0);
     }
     
+    /**
+     * Check whether every installed version metric has a result for this 
+     * version, and every installed file and directory metric a result for
+     * each file entry recorded in it. Metrics that skip some files leave
+     * them without results, so versions measured by such metrics are not
+     * considered fully measured. Neither are versions for which the check
+     * fails. 
+     */
+    public boolean isFullyMeasured() {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("pv", this);
+        params.put("version", MetricType.Type.PROJECT_VERSION.toString());
+        
+        List<?> unmeasured = dbs.doHQL("select count(m) from Metric m " +
+                "where m.metricType.type = :version and not exists (" +
+                "   select pvm.id from ProjectVersionMeasurement pvm " +
+                "   where pvm.metric = m and pvm.projectVersion = :pv)", 
+                params);
+        if (unmeasured.isEmpty() || (Long) unmeasured.get(0) > 0)
+            return false;
+        
+        params.remove("version");
+        params.put("file", MetricType.Type.SOURCE_FILE.toString());
+        params.put("dir", MetricType.Type.SOURCE_DIRECTORY.toString());
+        params.put("deleted", ProjectFileState.STATE_DELETED);
+        unmeasured = dbs.doHQL("select count(pf) from ProjectFile pf, Metric m " +
+                "where pf.projectVersion = :pv " +
+                "and pf.state.status <> :deleted " +
+                "and ((pf.isDirectory = false and m.metricType.type = :file) " +
+                "  or (pf.isDirectory = true and m.metricType.type = :dir)) " +
+                "and not exists (" +
+                "   select pfm.id from ProjectFileMeasurement pfm " +
+                "   where pfm.metric = m and pfm.projectFile = pf)", 
+                params);
+        return !unmeasured.isEmpty() && (Long) unmeasured.get(0) == 0;
+    }
+    
     /**
      * For a given metric and project, return the latest version of that
      * project that was actually measured.  If no measurements have been made, 
@@ -666,109 +761,173 @@ public class ProjectVersion extends DAObject {
     public long getLiveFilesCount() {
     	DBService dbs = AlitheiaCore.getInstance().getDBService();
 
-    	String paramVersionId = "paramVersion";
         String paramIsDirectory = "paramIsDirectory";
-        String paramProjectId = "paramProject";
         String paramState = "paramState";
         Map<String, Object> params = new HashMap<String, Object>();
 
         StringBuffer q = new StringBuffer("select count(pf) ");
-        
-        if (this.sequence == ProjectVersion.getLastProjectVersion(this.project).sequence) {
-            q.append(" from ProjectFile pf, ProjectVersion pv");
-            q.append(" where pv.id = :").append(paramVersionId);
-            q.append(" and pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and ((pf.validFrom.id = pv2.id and pf.validUntil.id = pv3.id)");
-            q.append("     or (pf.validFrom.id = pv2.id and pf.validUntil.id is null))");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, this.getProject().getId());
-        }
+        q.append(" from ProjectFile pf ");
+        q.append(" where ").append(liveFilesCondition("pf", params));
         q.append(" and pf.isDirectory = :").append(paramIsDirectory);
         q.append(" and pf.state <> :").append(paramState);
 
-        
-        params.put(paramVersionId, this.getId());
         params.put(paramIsDirectory, Boolean.FALSE);
         params.put(paramState, ProjectFileState.deleted());
         
         return (Long) dbs.doHQL(q.toString(), params).get(0);
     }
 
+    /**
+     * Returns an HQL condition that restricts the ProjectFile entries named
+     * by <code>alias</code> to those that are live in this version, and
+     * adds the parameters it uses to <code>params</code>. Entries in the
+     * deleted state are not filtered out.
+     * 
+     * @see #liveFilesCondition(StoredProject, long, String, Map)
+     */
+    public String liveFilesCondition(String alias, Map<String, Object> params) {
+        return liveFilesCondition(project, sequence, alias, params);
+    }
 
-    public String toString() {
-        return "ProjectVersion(\"" + this.project.getName() + "\",r" + this.revisionId +")";
+    /**
+     * Returns an HQL condition that restricts the ProjectFile entries named
+     * by <code>alias</code> to those that are live at the provided version
+     * sequence number of the provided project, and adds the parameters it 
+     * uses to <code>params</code>. Entries in the deleted state are not
+     * filtered out.
+     * <p>
+     * The condition is a range query on the validity interval of file 
+     * entries, which is served by the index on the project id and the
+     * valid from/until sequence columns of the ProjectFile table.  
+     */
+    public static String liveFilesCondition(StoredProject sp, long sequence, 
+            String alias, Map<String, Object> params) {
+        
+        params.put(PARAM_LIVE_PROJECT, sp.getId());
+        params.put(PARAM_LIVE_SEQUENCE, sequence);
+        
+        return alias + ".validFromSequence <= :" + PARAM_LIVE_SEQUENCE 
+            + " and " + alias + ".validUntilSequence >= :" + PARAM_LIVE_SEQUENCE
+            + " and " + alias + ".projectId = :" + PARAM_LIVE_PROJECT;
     }
 
+    /**
+     * Returns an HQL condition that restricts the ProjectFile entries named
+     * by <code>alias</code> to those that became live in this version, 
+     * and adds the parameters it uses to <code>params</code>. Entries in
+     * the deleted state are not filtered out.
+     */
+    public String enteringFilesCondition(String alias, Map<String, Object> params) {
+        params.put(PARAM_LIVE_PROJECT, project.getId());
+        params.put(PARAM_LIVE_SEQUENCE, sequence);
+        
+        return alias + ".validFromSequence = :" + PARAM_LIVE_SEQUENCE 
+            + " and " + alias + ".projectId = :" + PARAM_LIVE_PROJECT;
+    }
+    
+    /**
+     * Returns an HQL condition that restricts the ProjectFile entries named
+     * by <code>alias</code> to those that are live in this version but 
+     * not in the next one, and adds the parameters it uses to 
+     * <code>params</code>. Entries in the deleted state are not filtered
+     * out. The condition is served by the index on the valid until 
+     * sequence and project id columns of the ProjectFile table.
+     */
+    public String leavingFilesCondition(String alias, Map<String, Object> params) {
+        params.put(PARAM_LIVE_PROJECT, project.getId());
+        params.put(PARAM_LIVE_SEQUENCE, sequence);
+        
+        return alias + ".validUntilSequence = :" + PARAM_LIVE_SEQUENCE 
+            + " and " + alias + ".projectId = :" + PARAM_LIVE_PROJECT;
+    }
+    
+    /**
+     * Returns the files, the directories or both that are live at the 
+     * provided version sequence number of the provided project, 
+     * optionally restricted to a single directory. Does not list 
+     * recursively. Does not return null, but the list may be empty.
+     *
+     * @param sp The project
+     * @param sequence The version sequence number
+     * @param d Directory to list, or null to list all live files
+     * @param mask Used to restrict the returned values to either files or
+     * directories
+     */
+    public static List<ProjectFile> getLiveFiles(StoredProject sp, 
+            long sequence, Directory d, int mask) {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
 
-    private List<ProjectFile> getVersionFiles(Directory d, int mask) {
+        Map<String,Object> params = new HashMap<String,Object>();
+        StringBuffer q = liveFilesQuery("select pf from ProjectFile pf", sp, 
+                sequence, d, mask, params);
+        
+        List<ProjectFile> projectFiles = (List<ProjectFile>) dbs.doHQL(q.toString(), params);
+
+        if (projectFiles == null) 
+            return Collections.emptyList();
+
+        return projectFiles;
+    }
+    
+    /**
+     * Get a page of the files, the directories or both that are live at
+     * the provided version sequence number of the provided project, 
+     * without loading the file entities. Files are returned in id order,
+     * as arrays of the file's id, name, directory flag, directory id and
+     * directory path.
+     * 
+     * @param after Only return files with a greater id
+     * @param limit The maximum number of files to return
+     * @see #getLiveFiles(StoredProject, long, Directory, int)
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> getLiveFileSummaries(StoredProject sp, 
+            long sequence, Directory d, int mask, long after, int limit) {
         DBService dbs = AlitheiaCore.getInstance().getDBService();
 
+        Map<String,Object> params = new HashMap<String,Object>();
+        StringBuffer q = liveFilesQuery("select pf.id, pf.name, " +
+        		"pf.isDirectory, dir.id, dir.path " +
+        		"from ProjectFile pf join pf.dir dir", sp, sequence, d, mask, 
+        		params);
+        q.append(" and pf.id > :paramAfter order by pf.id asc");
+        params.put("paramAfter", after);
+        
+        return (List<Object[]>) dbs.doHQL(q.toString(), params, limit);
+    }
+    
+    private static StringBuffer liveFilesQuery(String from, StoredProject sp,
+            long sequence, Directory d, int mask, Map<String, Object> params) {
         String paramDirectory = "paramDirectory";
         String paramIsDirectory = "is_directory";
-        String paramVersionId = "paramVersionId";
-        String paramProjectId = "paramProjectId";
         String paramState = "paramStatus";
 
-        Map<String,Object> params = new HashMap<String,Object>();
-        StringBuffer q = new StringBuffer("select distinct pf ");
+        StringBuffer q = new StringBuffer(from);
+        q.append(" where ").append(liveFilesCondition(sp, sequence, "pf", params));
+        q.append(" and pf.state <> :").append(paramState);
         
-        if (this.sequence == ProjectVersion.getLastProjectVersion(this.project).sequence) {
-            q.append(" from ProjectFile pf, ProjectVersion pv");
-            q.append(" where pv.id = :").append(paramVersionId);
-            q.append(" and pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and ((pf.validFrom.id = pv2.id and pf.validUntil.id = pv3.id)");
-            q.append("     or (pf.validFrom.id = pv2.id and pf.validUntil.id is null))");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, this.project.getId());
+        if (d != null) {
+            q.append(" and pf.dir = :").append(paramDirectory);
+            params.put(paramDirectory, d);
         }
         
-        q.append(" and pf.state <> :").append(paramState);
+        if (mask != ProjectVersion.MASK_ALL) {
+            q.append(" and pf.isDirectory = :").append(paramIsDirectory);
+            Boolean isDirectory = ((mask == ProjectVersion.MASK_DIRECTORIES)?true:false);
+            params.put(paramIsDirectory, isDirectory);
+        }
         
-        if (d != null) {
- 	    	q.append(" and pf.dir = :").append(paramDirectory);
- 	    }
- 	        
- 	    if (mask != ProjectVersion.MASK_ALL) {
- 	    	q.append(" and pf.isDirectory = :").append(paramIsDirectory);
- 	    }
-    
-     	params.put(paramState, ProjectFileState.deleted());
-     	params.put(paramVersionId, this.getId());
- 	    
-     	if (d != null) {
-     		params.put(paramDirectory, d);
-     	}
-     	
- 	    if (mask != ProjectVersion.MASK_ALL) {
- 	        Boolean isDirectory = ((mask == ProjectVersion.MASK_DIRECTORIES)?true:false);
- 	        params.put(paramIsDirectory, isDirectory);
- 	    }
- 	    
- 	    List<ProjectFile> projectFiles = (List<ProjectFile>) dbs.doHQL(q.toString(), params);
-
- 	    if (projectFiles == null) 
- 	        return Collections.emptyList();
-
- 	    return projectFiles;
+        params.put(paramState, ProjectFileState.deleted());
+        return q;
+    }
+
+    public String toString() {
+        return "ProjectVersion(\"" + this.project.getName() + "\",r" + this.revisionId +")";
+    }
 
+
+    private List<ProjectFile> getVersionFiles(Directory d, int mask) {
+        return getLiveFiles(project, sequence, d, mask);
     }
     
     /**
@@ -162,6 +162,18 @@ public interface FDSService extends AlitheiaCoreService {
      * @return the file contents or null if none.
      */
     InputStream getFileContents(ProjectFile pf);
+
+    /**
+     * Get the number of {@link #getFileContents(ProjectFile)} requests
+     * that were served from the cache service.
+     */
+    long getContentsCacheHits();
+
+    /**
+     * Get the number of {@link #getFileContents(ProjectFile)} requests
+     * that had to retrieve the file contents from the repository.
+     */
+    long getContentsCacheMisses();
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
@@ -65,6 +65,14 @@ package eu.sqooss.service.logging;
  *           Use error to log to the console that bad parameters have been
  *           passed in (perhaps before throwing an exception).
  *
+ * @section Parameterised messages
+ *
+ * Each logging method also accepts a format and a list of arguments; each
+ * <code>{}</code> in the format is replaced by the string value of the next
+ * argument. The message is only built if the level is enabled, so prefer
+ * <code>log.debug("Job {} took {} ms", job, time)</code> over string 
+ * concatenation on frequently executed paths.
+ *
  * The constants used here are the legal names for loggers; any others
  * will cause an exception to be thrown when used.
  */
@@ -172,6 +180,20 @@ public interface Logger {
     */
     public void debug(String message);
 
+    /**
+    * Log a parameterised message with debug logging level.
+    *
+    * @param format a log message, with <code>{}</code> placeholders
+    * @param args the values of the placeholders
+    */
+    public void debug(String format, Object... args);
+
+    /**
+    * Checks whether debug messages are logged, to avoid computing
+    * expensive debug output that would be discarded.
+    */
+    public boolean isDebugEnabled();
+
     /**
     * Logs a message with a info (lowest) logging level. The info
     * level is used to give an idea of what is going on in the system
@@ -181,12 +203,27 @@ public interface Logger {
     */
     public void info(String message);
 
+    /**
+    * Logs a parameterised message with info logging level.
+    *
+    * @param format a log message, with <code>{}</code> placeholders
+    * @param args the values of the placeholders
+    */
+    public void info(String format, Object... args);
+
     /**
     * Logs a message with a warning logging level
     * @param message a log message
     */
     public void warn(String message);
 
+    /**
+    * Logs a parameterised message with a warning logging level
+    * @param format a log message, with <code>{}</code> placeholders
+    * @param args the values of the placeholders
+    */
+    public void warn(String format, Object... args);
+
     /**
     * Logs a message with a warning logging level and
     * a stack trace from the exception explaining why.
@@ -201,6 +238,13 @@ public interface Logger {
     */
     public void error(String message);
 
+    /**
+    * Logs a parameterised message with a severe(highest) logging level
+    * @param format a log message, with <code>{}</code> placeholders
+    * @param args the values of the placeholders
+    */
+    public void error(String format, Object... args);
+
     /**
     * Logs a message with a severe(highest) logging level and
     * a stack trace from the exception explaining why.
@@ -37,6 +37,7 @@ import eu.sqooss.core.AlitheiaCoreService;
 import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.scheduler.Job;
 
 /**
  * The MetricActivator service is responsible for kickstarting metric jobs
@@ -54,6 +55,19 @@ public interface MetricActivator extends AlitheiaCoreService {
 	 */
 	public <T extends DAObject> void runMetric(T resource, AlitheiaPlugin ap);
 	
+	/**
+	 * Run a metric plug-in on a single resource object, after the 
+	 * provided job has finished.
+	 * 
+	 * @param <T> The resource to run the metric on
+	 * @param ap The plug-in to execute
+	 * @param after The job to wait for, or null to run the metric as soon
+	 *     as possible
+	 * @see #runMetric(DAObject, AlitheiaPlugin)
+	 */
+	public <T extends DAObject> void runMetric(T resource, AlitheiaPlugin ap,
+	        Job after);
+	
     /**
      * Runs all metrics that support the given activation type, on the
      * given project.
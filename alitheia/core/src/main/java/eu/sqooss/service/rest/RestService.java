@@ -60,4 +60,33 @@ public interface RestService extends AlitheiaCoreService {
 	 * @param resource  The resource to remove.
 	 */
 	public void removeResource(Class<?> resource);	
+	
+	/**
+	 * Invalidate the cached API responses that depend on the data of a 
+	 * project. To be called after the project's data have been updated.
+	 * 
+	 * @param projectId The id of the updated project.
+	 */
+	public void invalidate(long projectId);
+	
+	/**
+	 * Invalidate the cached API responses that depend on the metric results
+	 * of a project. To be called after new metric results have been stored.
+	 * 
+	 * @param projectId The id of the project the results belong to.
+	 */
+	public void invalidateResults(long projectId);
+	
+	/**
+	 * Invalidate the cached API responses that depend on metric results,
+	 * for results that cannot be attributed to a single project.
+	 */
+	public void invalidateResults();
+	
+	/**
+	 * Invalidate all cached API responses. To be called when projects are
+	 * added or removed and when metric plug-ins are installed or 
+	 * uninstalled.
+	 */
+	public void invalidateAll();
 }
\ No newline at end of file
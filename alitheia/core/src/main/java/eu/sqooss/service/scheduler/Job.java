@@ -101,6 +101,12 @@ public abstract class Job implements Comparable<Job> {
     
     private ResumePoint resumePoint;
     
+    /* When the job entered its current state, from System.nanoTime() */
+    private volatile long m_stateTime = System.nanoTime();
+    
+    /* Time spent in the previous state, in nanoseconds */
+    private volatile long m_previousStateTime = 0;
+    
     public void setWorkerThread(WorkerThread worker) {
     	m_worker = worker;
      }
@@ -116,6 +122,14 @@ public abstract class Job implements Comparable<Job> {
         return m_state;
     }
     
+    /**
+     * @return The time, in nanoseconds, the job spent in the state it was in
+     *  before its current state.
+     */
+    public final long previousStateTime() {
+        return m_previousStateTime;
+    }
+    
     /**
      * Returns the Scheduler this Job was enqueued to.
      */
@@ -257,22 +271,24 @@ public abstract class Job implements Comparable<Job> {
         }
         aboutToBeEnqueued(s);
         m_state = State.Queued;
+        m_stateTime = System.nanoTime();
         m_scheduler = s;
     }
 
     /**
-     * Sets the job's state back from Queued to Created and informs about being
-     * dequeud.
+     * Sets the job's state back from Queued or Yielded to Created and informs
+     * about being dequeud. State listeners are notified of the change, as 
+     * the job will not run unless it is enqueued again.
      * This method should only be called by Scheduler.dequeue.
      */
     public final void callAboutToBeDequeued(Scheduler s) {
         aboutToBeDequeued(s);
 
-        if (m_state == State.Queued) {
-            m_state = State.Created;
-        }
-
         m_scheduler = null;
+        if (m_state == State.Queued || m_state == State.Yielded) {
+            resumePoint = null;
+            setState(State.Created);
+        }
     }
 
 
@@ -389,6 +405,9 @@ public abstract class Job implements Comparable<Job> {
             return;
         }
 
+        long now = System.nanoTime();
+        m_previousStateTime = now - m_stateTime;
+        m_stateTime = now;
         m_state = s;
 
         if ((m_state == State.Finished || m_state == State.Error) && m_dependencies != null) {
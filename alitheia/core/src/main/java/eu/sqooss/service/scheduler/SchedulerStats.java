@@ -34,143 +34,233 @@
 package eu.sqooss.service.scheduler;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.collections.list.SynchronizedList;
+import eu.sqooss.service.util.LatencyHistogram;
+import eu.sqooss.service.util.RateMeter;
+import eu.sqooss.service.util.StripedCounter;
 
+/**
+ * Scheduler statistics. Updates are lock-free, as they happen on every 
+ * job state transition; the values read are not a consistent snapshot of
+ * all counters.
+ */
 public class SchedulerStats {
+    
+    /**
+     * Statistics for the jobs of a single class.
+     */
+    public static class JobTypeStats {
+        private final String type;
+        private final StripedCounter waiting = new StripedCounter();
+        private final StripedCounter failed = new StripedCounter();
+        private final RateMeter finished = new RateMeter();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram execution = new LatencyHistogram();
+        
+        JobTypeStats(Class<?> clazz) {
+            this.type = clazz.toString();
+        }
+        
+        /** The job class name, as returned by <code>Class.toString()</code> */
+        public String getType() {
+            return type;
+        }
+        
+        /** Number of jobs currently waiting to run */
+        public long getWaiting() {
+            return waiting.sum();
+        }
+        
+        public long getFailed() {
+            return failed.sum();
+        }
+        
+        /** Finished jobs, with their throughput */
+        public RateMeter getFinished() {
+            return finished;
+        }
+        
+        /** 
+         * Time spent between being enqueued, or yielding, and starting
+         * to run, including time waiting for dependencies 
+         */
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+        
+        /** Time spent running, per run; a yielded job runs more than once */
+        public LatencyHistogram getExecution() {
+            return execution;
+        }
+    }
+    
     // the number of jobs currently in the scheduler
-    private long totalJobs = 0;
-    // the number of jobs which were finished
-    private long finishedJobs = 0;
+    private StripedCounter totalJobs = new StripedCounter();
+    // the number of jobs which were finished, with their throughput
+    private RateMeter finishedJobs = new RateMeter();
     // the number of jobs currently waiting
-    private long waitingJobs = 0;
-    // the number of jobs currently running
-    private long runningJobs = 0;
+    private StripedCounter waitingJobs = new StripedCounter();
     // the total number of threads available for scheduling
-    private long workerThreads = 0;
+    private AtomicLong workerThreads = new AtomicLong();
     // the number of threads being idle at the moment
-    private long idleWorkerThreads = 0;
+    private AtomicLong idleWorkerThreads = new AtomicLong();
     // the number of jobs which failed
-    private long failedJobs = 0;
-    //Classname->Failed Jobs 
-    private HashMap<String, Integer> failedJobTypes = new HashMap<String, Integer>();
-    //Classname->Num jobs waiting
-    private HashMap<String, Integer> waitingJobTypes = new HashMap<String, Integer>();
-    //Running jobs
-    private List<Job> runJobs = new Vector<Job>();
+    private StripedCounter failedJobs = new StripedCounter();
+    // Job class -> statistics
+    private ConcurrentMap<Class<?>, JobTypeStats> jobTypes = 
+        new ConcurrentHashMap<Class<?>, JobTypeStats>();
+    // Running jobs
+    private Set<Job> runJobs = 
+        Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
     
-    public synchronized void incTotalJobs() {
-        totalJobs++;
+    public void incTotalJobs() {
+        totalJobs.increment();
     }
 
-    public synchronized void decTotalJobs() {
-        totalJobs--;
+    public void decTotalJobs() {
+        totalJobs.decrement();
     }
-   
-    public synchronized void incFinishedJobs() {
-        finishedJobs++;
+    
+    public void incWorkerThreads() {
+        workerThreads.incrementAndGet();
     }
     
-    public synchronized void incWorkerThreads() {
-        workerThreads++;
+    public void decWorkerThreads() {
+        workerThreads.decrementAndGet();
     }
     
-    public synchronized void decWorkerThreads() {
-        workerThreads--;
+    public void incIdleWorkerThreads() {
+        idleWorkerThreads.incrementAndGet();
     }
     
-    public synchronized void incIdleWorkerThreads() {
-        idleWorkerThreads++;
+    public void decIdleWorkerThreads() {
+        idleWorkerThreads.decrementAndGet();
     }
     
-    public synchronized void decIdleWorkerThreads() {
-        idleWorkerThreads--;
+    /** A job has been enqueued, or has yielded */
+    public void addWaitingJob(Job j) {
+        waitingJobs.increment();
+        typeStats(j).waiting.increment();
     }
     
-    public synchronized void addFailedJob(String classname) {
-        this.failedJobs++;
-        if (failedJobTypes.containsKey(classname))
-            failedJobTypes.put(classname, (failedJobTypes.get(classname) + 1));
-        else
-            failedJobTypes.put(classname, 1);
+    /**
+     * A job has started to run.
+     * @param waited Time, in nanoseconds, the job waited to run 
+     */
+    public void addRunJob(Job j, long waited) {
+        JobTypeStats s = typeStats(j);
+        waitingJobs.decrement();
+        s.waiting.decrement();
+        s.queueWait.record(waited);
+        runJobs.add(j);
     }
-
-    public synchronized void addWaitingJob(String classname) {
-        this.waitingJobs++;
-        if (waitingJobTypes.containsKey(classname))
-            waitingJobTypes.put(classname, (waitingJobTypes.get(classname) + 1));
-        else
-            waitingJobTypes.put(classname, 1);
-    }
-    
-    public synchronized void removeWaitingJob(String classname) {
-        this.waitingJobs --;
-        if (waitingJobTypes.containsKey(classname)) {
-            int jobs = waitingJobTypes.get(classname) - 1;
-            if (jobs == 0) {
-                waitingJobTypes.remove(classname);
-            }
-            
-            waitingJobTypes.put(classname, jobs);
-        }
+    
+    /**
+     * A job has stopped running, or failed before it could run.
+     * @param ran Time, in nanoseconds, the job ran 
+     */
+    public void removeRunJob(Job j, long ran) {
+        if (runJobs.remove(j))
+            typeStats(j).execution.record(ran);
     }
- 
-    public synchronized void addRunJob(Job j) {
-        this.runningJobs++;
-        this.runJobs.add(j);
+    
+    public void addFinishedJob(Job j) {
+        finishedJobs.mark();
+        typeStats(j).finished.mark();
     }
     
-    public synchronized void removeRunJob(Job j) {
-        this.runningJobs--;
-        this.runJobs.remove(j);
+    public void addFailedJob(Job j) {
+        failedJobs.increment();
+        typeStats(j).failed.increment();
+    }
+    
+    private JobTypeStats typeStats(Job j) {
+        JobTypeStats s = jobTypes.get(j.getClass());
+        if (s == null) {
+            JobTypeStats n = new JobTypeStats(j.getClass());
+            s = jobTypes.putIfAbsent(j.getClass(), n);
+            if (s == null)
+                s = n;
+        }
+        return s;
     }
     
     public long getTotalJobs() {
-        return totalJobs;
+        return totalJobs.sum();
     }
 
     public long getWaitingJobs() {
-        return waitingJobs;
+        return waitingJobs.sum();
     }
 
     public long getFinishedJobs() {
-        return finishedJobs;
+        return finishedJobs.getCount();
+    }
+    
+    /** Finished jobs per second, averaged over the last minute */
+    public double getThroughput() {
+        return finishedJobs.getOneMinuteRate();
+    }
+    
+    /** Finished jobs per second, averaged since the scheduler started */
+    public double getMeanThroughput() {
+        return finishedJobs.getMeanRate();
     }
 
     public long getRunningJobs() {
-        return runningJobs;
+        return runJobs.size();
     }
 
     public long getWorkerThreads() {
-        return workerThreads;
+        return workerThreads.get();
     }
 
     public long getIdleWorkerThreads() {
-        return idleWorkerThreads;
+        return idleWorkerThreads.get();
     }
 
     public long getFailedJobs() {
-        return failedJobs;
+        return failedJobs.sum();
     }
     
-    public HashMap<String, Integer> getFailedJobTypes() {
-        return failedJobTypes;
+    /** Job class name -> number of failed jobs, for classes with failures */
+    public Map<String, Long> getFailedJobTypes() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (JobTypeStats s : jobTypes.values())
+            if (s.getFailed() > 0)
+                result.put(s.getType(), s.getFailed());
+        return result;
     }
     
-    public HashMap<String, Integer> getWaitingJobTypes() {
-        return waitingJobTypes;
+    /** Job class name -> number of waiting jobs, for classes with waiting jobs */
+    public Map<String, Long> getWaitingJobTypes() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (JobTypeStats s : jobTypes.values())
+            if (s.getWaiting() > 0)
+                result.put(s.getType(), s.getWaiting());
+        return result;
     }
     
-    public synchronized List<String> getRunJobs() {
-        Job[] jobs = new Job[runJobs.size()];
-        runJobs.toArray(jobs);
+    /** Statistics for all job classes seen so far */
+    public List<JobTypeStats> getJobTypes() {
+        return new ArrayList<JobTypeStats>(jobTypes.values());
+    }
+    
+    public List<String> getRunJobs() {
         List<String> jobDescr = new ArrayList<String>();
-        for (Job j : jobs) {
+        for (Job j : runJobs) {
             jobDescr.add(j.toString());
         }
         return jobDescr;
     }
 }
+
+// vi: ai nosi sw=4 ts=4 expandtab
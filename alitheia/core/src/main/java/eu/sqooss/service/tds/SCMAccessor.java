@@ -224,6 +224,23 @@ public interface SCMAccessor extends DataAccessor {
                InvalidRepositoryException,
                FileNotFoundException;
 
+    /**
+     * Get an identifier for the contents of a file at the given revision.
+     * Files with the same identifier have the same contents, whatever 
+     * their path or revision.
+     *
+     * @param repoPath File within this repository
+     * @param revision Revision to use for the file
+     * 
+     * @return The content identifier, or null if the repository does not
+     * identify file contents
+     * 
+     * @throws InvalidRepositoryException When there is an error accessing the 
+     * underlying repository
+     */
+    public String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException;
+
     /**
      * Get the commit log entries in ascending date order for the changes between revisions
      * <code>r1</code> and <code>r2</code>
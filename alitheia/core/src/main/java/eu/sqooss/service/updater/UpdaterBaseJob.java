@@ -80,11 +80,11 @@ public abstract class UpdaterBaseJob extends Job {
     
     /** Convenience method to write info messages per project */
     protected void info(String message) {
-        logger.info(project.getName() + ":" + message);
+        logger.info("{}:{}", project.getName(), message);
     }
     
     /** Convenience method to write debug messages per project */
     protected void debug(String message) {
-        logger.debug(project.getName() + ":" + message);
+        logger.debug("{}:{}", project.getName(), message);
     }
 }
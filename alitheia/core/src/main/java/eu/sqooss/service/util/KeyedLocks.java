@@ -0,0 +1,144 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A set of reentrant mutual exclusion locks, one per <code>long</code> key,
+ * typically a DAO id. Locks are created when first requested and discarded
+ * when no thread holds or waits for them, so the set only grows as large
+ * as the number of keys in use. Threads locking different keys never
+ * block each other.
+ */
+public class KeyedLocks {
+
+    /*
+     * A lock along with the number of threads that hold or wait for it.
+     * A count of -1 marks a lock that has been removed from the map and
+     * must not be used any more.
+     */
+    private static final class Entry extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+        
+        private final AtomicInteger refs = new AtomicInteger();
+        
+        boolean retain() {
+            for (;;) {
+                int c = refs.get();
+                if (c < 0)
+                    return false;
+                if (refs.compareAndSet(c, c + 1))
+                    return true;
+            }
+        }
+        
+        boolean release() {
+            return refs.decrementAndGet() == 0 && refs.compareAndSet(0, -1);
+        }
+    }
+    
+    private final ConcurrentMap<Long, Entry> locks = 
+        new ConcurrentHashMap<Long, Entry>();
+    
+    /**
+     * Acquire the lock for a key only if it is not held by another thread.
+     * 
+     * @return true if the lock was acquired
+     */
+    public boolean tryLock(long key) {
+        Entry e = retain(key);
+        if (e.tryLock())
+            return true;
+        release(key, e);
+        return false;
+    }
+    
+    /**
+     * Release the lock for a key.
+     * 
+     * @throws IllegalMonitorStateException if the current thread does not
+     *  hold the lock 
+     */
+    public void unlock(long key) {
+        Entry e = locks.get(key);
+        if (e == null || !e.isHeldByCurrentThread())
+            throw new IllegalMonitorStateException("Key " + key 
+                    + " is not locked by the current thread");
+        e.unlock();
+        release(key, e);
+    }
+    
+    /**
+     * Check whether the lock for a key is held by any thread.
+     */
+    public boolean isLocked(long key) {
+        Entry e = locks.get(key);
+        return e != null && e.isLocked();
+    }
+    
+    /**
+     * Get the number of keys that are currently locked or waited for.
+     */
+    public int size() {
+        return locks.size();
+    }
+    
+    private Entry retain(long key) {
+        Long k = Long.valueOf(key);
+        for (;;) {
+            Entry e = locks.get(k);
+            if (e == null) {
+                Entry n = new Entry();
+                e = locks.putIfAbsent(k, n);
+                if (e == null)
+                    e = n;
+            }
+            if (e.retain())
+                return e;
+            /* Being discarded by another thread, help and retry */
+            locks.remove(k, e);
+        }
+    }
+    
+    private void release(long key, Entry e) {
+        if (e.release())
+            locks.remove(Long.valueOf(key), e);
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
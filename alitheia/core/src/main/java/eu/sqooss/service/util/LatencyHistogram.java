@@ -0,0 +1,150 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, in nanoseconds. Durations are
+ * counted in buckets whose width grows with their value, as in 
+ * HdrHistogram: each power of two is split in 32 buckets, so the values
+ * reported for percentiles are within about 3% of the recorded ones.
+ * Durations over 2^44 ns (nearly 5 hours) are counted as 2^44 ns.
+ */
+public class LatencyHistogram {
+
+    /* log2 of the number of buckets per power of two */
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_BITS = 44;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    
+    private final AtomicLongArray buckets = 
+        new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter total = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Record a duration.
+     * @param nanos The duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long v = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        buckets.incrementAndGet(index(v));
+        count.increment();
+        total.add(v);
+        
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v));
+    }
+    
+    /** The number of recorded durations */
+    public long getCount() {
+        return count.sum();
+    }
+    
+    /** The sum of the recorded durations, in the given unit */
+    public long getTotal(TimeUnit unit) {
+        return unit.convert(total.sum(), TimeUnit.NANOSECONDS);
+    }
+    
+    /** The mean of the recorded durations, in the given unit */
+    public double getMean(TimeUnit unit) {
+        long n = count.sum();
+        if (n == 0)
+            return 0;
+        return (double) total.sum() / n / unit.toNanos(1);
+    }
+    
+    /** The longest recorded duration, in the given unit */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * The duration below which the given fraction of the recorded durations
+     * lie.
+     *  
+     * @param quantile A number between 0 and 1, e.g. 0.99 for the 99th
+     *  percentile
+     * @param unit The unit of the returned value
+     * @return The duration, or 0 if no durations have been recorded 
+     */
+    public long getPercentile(double quantile, TimeUnit unit) {
+        long n = 0;
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0)
+            return 0;
+        
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return unit.convert(Math.min(highestValue(i), max.get()), 
+                        TimeUnit.NANOSECONDS);
+        }
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+    
+    /*
+     * Values below 2 * SUB_COUNT have a bucket each. Larger values are 
+     * shifted right until they have SUB_BITS + 1 bits left; the bucket is
+     * determined by the shift and the remaining bits.
+     */
+    static int index(long v) {
+        if (v < 2 * SUB_COUNT)
+            return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (v >>> shift);
+    }
+    
+    /* The largest value counted in a bucket */
+    static long highestValue(int index) {
+        if (index < 2 * SUB_COUNT)
+            return index;
+        int shift = index / SUB_COUNT - 1;
+        long lowest = (long) (index - shift * SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
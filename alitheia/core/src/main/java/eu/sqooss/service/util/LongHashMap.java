@@ -0,0 +1,168 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map with primitive <code>long</code> keys, such as entity ids.
+ * Keys are stored in open addressing arrays, so lookups neither box the
+ * key nor allocate entries. Not thread safe.
+ *
+ * @param <V> The type of the mapped values
+ */
+public class LongHashMap<V> {
+    
+    private long[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int size;
+    
+    /** Create an empty map */
+    public LongHashMap() {
+        this(16);
+    }
+    
+    /** 
+     * Create an empty map that can hold the provided number of entries
+     * without resizing.
+     */
+    public LongHashMap(int capacity) {
+        int n = 16;
+        while (n < capacity * 2)
+            n <<= 1;
+        keys = new long[n];
+        values = new Object[n];
+        used = new boolean[n];
+    }
+    
+    /**
+     * Return the value mapped to the key, or null if the key is not 
+     * mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = slot(key);
+        return used[i] ? (V) values[i] : null;
+    }
+    
+    /** Return true if the key is mapped, even to a null value */
+    public boolean containsKey(long key) {
+        return used[slot(key)];
+    }
+    
+    /**
+     * Map the key to the provided value.
+     * @return The value previously mapped to the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        int i = slot(key);
+        if (used[i]) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        
+        keys[i] = key;
+        values[i] = value;
+        used[i] = true;
+        if (++size * 2 > keys.length)
+            resize();
+        return null;
+    }
+    
+    /** Number of mapped keys */
+    public int size() {
+        return size;
+    }
+    
+    /** True if no key is mapped */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /** Return the mapped keys, in no particular order */
+    public long[] keys() {
+        long[] k = new long[size];
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i])
+                k[j++] = keys[i];
+        }
+        return k;
+    }
+    
+    /** Remove all mappings */
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+    
+    /* The slot holding the key, or the empty slot where it would go */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (used[i] && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+    
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        
+        keys = new long[oldKeys.length * 2];
+        values = new Object[keys.length];
+        used = new boolean[keys.length];
+        
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                used[j] = true;
+            }
+        }
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,113 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the rate of events, as a one minute exponentially weighted 
+ * moving average (like the Unix load average) and as the mean rate since 
+ * the meter was created. Marking events never blocks; the average is 
+ * brought up to date in five second steps, by whichever thread first 
+ * notices that a step has passed.
+ */
+public class RateMeter {
+
+    private static final long TICK = TimeUnit.SECONDS.toNanos(5);
+    private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+    
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter uncounted = new StripedCounter();
+    private final long start;
+    private final AtomicLong lastTick;
+    private volatile double rate = 0;
+    private volatile boolean initialised = false;
+    
+    public RateMeter() {
+        start = System.nanoTime();
+        lastTick = new AtomicLong(start);
+    }
+    
+    /** Record an event */
+    public void mark() {
+        tickIfNecessary();
+        count.increment();
+        uncounted.increment();
+    }
+    
+    /** The number of recorded events */
+    public long getCount() {
+        return count.sum();
+    }
+    
+    /** The one minute moving average rate, in events per second */
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return rate;
+    }
+    
+    /** The mean rate since the meter was created, in events per second */
+    public double getMeanRate() {
+        long elapsed = System.nanoTime() - start;
+        if (elapsed <= 0)
+            return 0;
+        return count.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+    
+    private void tickIfNecessary() {
+        long old = lastTick.get();
+        long now = System.nanoTime();
+        long age = now - old;
+        if (age < TICK)
+            return;
+        long ticks = age / TICK;
+        if (!lastTick.compareAndSet(old, old + ticks * TICK))
+            return;
+        
+        /* 
+         * Only the thread that moved lastTick gets here. Events counted 
+         * since the last update are spread evenly over the elapsed steps;
+         * after a minute without updates the old average no longer matters.
+         */
+        double instant = uncounted.sumThenReset() / (5.0 * ticks);
+        double r = initialised ? rate : instant;
+        for (long i = 0; i < Math.min(ticks, 60); i++)
+            r += ALPHA * (instant - r);
+        rate = r;
+        initialised = true;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
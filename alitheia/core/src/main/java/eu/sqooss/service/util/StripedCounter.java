@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for values updated by many threads and read rarely. Updates
+ * are spread over a number of cells, each in its own cache line, selected
+ * by the updating thread; reading the counter adds up all cells. Reads
+ * that run concurrently with updates are not atomic snapshots.
+ */
+public class StripedCounter {
+
+    /* Longs per cell: one 64 byte cache line */
+    private static final int PAD = 8;
+    
+    private final AtomicLongArray cells;
+    private final int mask;
+    
+    public StripedCounter() {
+        int n = Integer.highestOneBit(
+                Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        cells = new AtomicLongArray(n * PAD);
+        mask = n - 1;
+    }
+    
+    public void add(long x) {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 16)) * 0x9E3779B9;
+        cells.addAndGet(((h >>> 16) & mask) * PAD, x);
+    }
+    
+    public void increment() {
+        add(1);
+    }
+    
+    public void decrement() {
+        add(-1);
+    }
+    
+    /** The current value of the counter */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PAD)
+            sum += cells.get(i);
+        return sum;
+    }
+    
+    /** 
+     * Return the current value of the counter and subtract it from the 
+     * counter. Updates made concurrently are not lost.
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PAD)
+            sum += cells.getAndSet(i, 0);
+        return sum;
+    }
+    
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
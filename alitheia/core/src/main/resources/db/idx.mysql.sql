@@ -6,4 +6,30 @@ CREATE INDEX MessageIDidx on MAILMESSAGE(MESSAGEID);
 
 ALTER TABLE `alitheia`.`BUG_REPORT_MESSAGE` MODIFY COLUMN `text` LONGTEXT  CHARACTER SET utf8 COLLATE utf8_general_ci DEFAULT NULL;
 
-ALTER TABLE `alitheia`.`DEVELOPER` CHARACTER SET utf8;
\ No newline at end of file
+ALTER TABLE `alitheia`.`DEVELOPER` CHARACTER SET utf8;
+
+CREATE INDEX pfvalidseqidx ON PROJECT_FILE(STORED_PROJECT_ID,VALID_FROM_SEQUENCE,VALID_UNTIL_SEQUENCE);
+
+CREATE INDEX pfvaliduntilidx ON PROJECT_FILE(VALID_UNTIL_SEQUENCE,STORED_PROJECT_ID);
+
+UPDATE PROJECT_FILE pf, PROJECT_VERSION pv SET pf.STORED_PROJECT_ID = pv.STORED_PROJECT_ID WHERE pf.PROJECT_VERSION_ID = pv.PROJECT_VERSION_ID AND pf.STORED_PROJECT_ID IS NULL;
+
+UPDATE PROJECT_FILE pf, PROJECT_VERSION pv SET pf.VALID_FROM_SEQUENCE = pv.VERSION_SEQUENCE WHERE pf.VALID_FROM_ID = pv.PROJECT_VERSION_ID AND pf.VALID_FROM_SEQUENCE IS NULL;
+
+UPDATE PROJECT_FILE pf, PROJECT_VERSION pv SET pf.VALID_UNTIL_SEQUENCE = pv.VERSION_SEQUENCE WHERE pf.VALID_TO_ID = pv.PROJECT_VERSION_ID AND pf.VALID_UNTIL_SEQUENCE IS NULL;
+
+UPDATE PROJECT_FILE SET VALID_UNTIL_SEQUENCE = 9223372036854775807 WHERE VALID_TO_ID IS NULL AND VALID_UNTIL_SEQUENCE IS NULL;
+
+CREATE INDEX pvmmetricidx ON PROJECT_VERSION_MEASUREMENT(METRIC_ID,PROJECT_VERSION_ID);
+
+CREATE INDEX pfmmetricidx ON PROJECT_FILE_MEASUREMENT(METRIC_ID,PROJECT_FILE_ID);
+
+CREATE INDEX mmmmetricidx ON MAILMESSAGE_MEASUREMENT(METRIC_ID,MAILMESSAGE_ID);
+
+CREATE INDEX mltmmetricidx ON ML_THREAD_MEASUREMENT(METRIC_ID,THREAD_ID);
+
+CREATE INDEX nsmmetricidx ON NAMESPACE_MEASUREMENT(METRIC_ID,NAMESPACE_ID);
+
+CREATE INDEX eummetricidx ON ENCAPSULATION_UNIT_MEASUREMENT(METRIC_ID,ENCAPSULATION_UNIT_ID);
+
+CREATE INDEX exummetricidx ON EXECUTION_UNIT_MEASUREMENT(METRIC_ID,EXECUTION_UNIT_ID);
@@ -1,3 +1,29 @@
 CREATE INDEX pvseqidx ON PROJECT_VERSION(STORED_PROJECT_ID,VERSION_SEQUENCE);
 
-CREATE INDEX pfnameidx on PROJECT_FILE(FILE_NAME);
\ No newline at end of file
+CREATE INDEX pfnameidx on PROJECT_FILE(FILE_NAME);
+
+CREATE INDEX pfvalidseqidx ON PROJECT_FILE(STORED_PROJECT_ID,VALID_FROM_SEQUENCE,VALID_UNTIL_SEQUENCE);
+
+CREATE INDEX pfvaliduntilidx ON PROJECT_FILE(VALID_UNTIL_SEQUENCE,STORED_PROJECT_ID);
+
+UPDATE PROJECT_FILE SET STORED_PROJECT_ID = pv.STORED_PROJECT_ID FROM PROJECT_VERSION pv WHERE PROJECT_FILE.PROJECT_VERSION_ID = pv.PROJECT_VERSION_ID AND PROJECT_FILE.STORED_PROJECT_ID IS NULL;
+
+UPDATE PROJECT_FILE SET VALID_FROM_SEQUENCE = pv.VERSION_SEQUENCE FROM PROJECT_VERSION pv WHERE PROJECT_FILE.VALID_FROM_ID = pv.PROJECT_VERSION_ID AND PROJECT_FILE.VALID_FROM_SEQUENCE IS NULL;
+
+UPDATE PROJECT_FILE SET VALID_UNTIL_SEQUENCE = pv.VERSION_SEQUENCE FROM PROJECT_VERSION pv WHERE PROJECT_FILE.VALID_TO_ID = pv.PROJECT_VERSION_ID AND PROJECT_FILE.VALID_UNTIL_SEQUENCE IS NULL;
+
+UPDATE PROJECT_FILE SET VALID_UNTIL_SEQUENCE = 9223372036854775807 WHERE VALID_TO_ID IS NULL AND VALID_UNTIL_SEQUENCE IS NULL;
+
+CREATE INDEX pvmmetricidx ON PROJECT_VERSION_MEASUREMENT(METRIC_ID,PROJECT_VERSION_ID);
+
+CREATE INDEX pfmmetricidx ON PROJECT_FILE_MEASUREMENT(METRIC_ID,PROJECT_FILE_ID);
+
+CREATE INDEX mmmmetricidx ON MAILMESSAGE_MEASUREMENT(METRIC_ID,MAILMESSAGE_ID);
+
+CREATE INDEX mltmmetricidx ON ML_THREAD_MEASUREMENT(METRIC_ID,THREAD_ID);
+
+CREATE INDEX nsmmetricidx ON NAMESPACE_MEASUREMENT(METRIC_ID,NAMESPACE_ID);
+
+CREATE INDEX eummetricidx ON ENCAPSULATION_UNIT_MEASUREMENT(METRIC_ID,ENCAPSULATION_UNIT_ID);
+
+CREATE INDEX exummetricidx ON EXECUTION_UNIT_MEASUREMENT(METRIC_ID,EXECUTION_UNIT_ID);
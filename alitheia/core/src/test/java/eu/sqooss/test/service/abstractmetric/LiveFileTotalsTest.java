@@ -0,0 +1,123 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric.FileAggregator;
+import eu.sqooss.service.abstractmetric.LiveFileTotals;
+import eu.sqooss.service.db.ProjectFile;
+
+public class LiveFileTotalsTest {
+
+    /* Number of files and total lines, as the wc metric does */
+    private static final FileAggregator LINES = new FileAggregator() {
+        public void aggregate(ProjectFile pf, Map<String, String> results,
+                long[] totals, int sign) {
+            if (pf.getIsDirectory())
+                return;
+            totals[0] += sign;
+            String loc = results.get("LOC");
+            if (loc != null)
+                totals[1] += sign * Long.parseLong(loc);
+        }
+    };
+    
+    private static final Map<String, String> NONE = Collections.emptyMap();
+    
+    private static ProjectFile file(long id, boolean dir) {
+        ProjectFile pf = new ProjectFile();
+        pf.setId(id);
+        pf.setName("f" + id);
+        pf.setIsDirectory(dir);
+        return pf;
+    }
+    
+    private static Map<String, String> loc(long lines) {
+        Map<String, String> r = new HashMap<String, String>();
+        r.put("LOC", String.valueOf(lines));
+        return r;
+    }
+    
+    @Test
+    public void testDeltaMatchesFull() {
+        ProjectFile a = file(1, false), b = file(2, false), d = file(3, true);
+        ProjectFile b2 = file(4, false), c = file(5, false);
+        
+        LiveFileTotals v1 = new LiveFileTotals(2, 1);
+        v1.add(a, loc(10), LINES);
+        v1.add(b, loc(20), LINES);
+        v1.add(d, NONE, LINES);
+        assertTrue(v1.isComplete());
+        assertArrayEquals(new long[] {2, 30}, v1.getTotals());
+        
+        /* b is modified (b2) and c is added in the next version */
+        LiveFileTotals delta = new LiveFileTotals(v1.getTotals(), 
+                v1.isComplete(), 1);
+        delta.remove(b, loc(20), LINES);
+        delta.add(b2, loc(25), LINES);
+        delta.add(c, loc(5), LINES);
+        
+        LiveFileTotals full = new LiveFileTotals(2, 1);
+        full.add(a, loc(10), LINES);
+        full.add(d, NONE, LINES);
+        full.add(b2, loc(25), LINES);
+        full.add(c, loc(5), LINES);
+        
+        assertArrayEquals(full.getTotals(), delta.getTotals());
+        assertArrayEquals(new long[] {3, 40}, delta.getTotals());
+        assertTrue(delta.isComplete());
+        
+        /* The base is not modified */
+        assertArrayEquals(new long[] {2, 30}, v1.getTotals());
+    }
+    
+    @Test
+    public void testUnmeasuredFileMakesTotalsIncomplete() {
+        ProjectFile a = file(1, false), b = file(2, false);
+        
+        /* b had not been measured yet when the version totals were computed */
+        LiveFileTotals v1 = new LiveFileTotals(2, 1);
+        v1.add(a, loc(10), LINES);
+        v1.add(b, NONE, LINES);
+        assertFalse(v1.isComplete());
+        
+        /* 
+         * Removing b with the measurement it has now would drive the 
+         * totals wrong, which is why incomplete totals are not used as a
+         * base. The incompleteness also carries over to derived totals.
+         */
+        LiveFileTotals delta = new LiveFileTotals(v1.getTotals(), 
+                v1.isComplete(), 1);
+        delta.remove(b, loc(20), LINES);
+        assertArrayEquals(new long[] {1, -10}, delta.getTotals());
+        assertFalse(delta.isComplete());
+    }
+    
+    @Test
+    public void testCompleteness() {
+        LiveFileTotals t = new LiveFileTotals(2, 2);
+        t.add(file(1, true), NONE, LINES);
+        assertTrue(t.isComplete());
+        
+        /* A file must have results for all file metrics */
+        t.add(file(2, false), loc(3), LINES);
+        assertFalse(t.isComplete());
+        
+        Map<String, String> both = loc(3);
+        both.put("LOCOM", "1");
+        t = new LiveFileTotals(2, 2);
+        t.add(file(2, false), both, LINES);
+        assertTrue(t.isComplete());
+        
+        /* Removed files do not affect completeness */
+        t.remove(file(3, false), NONE, LINES);
+        assertTrue(t.isComplete());
+    }
+}
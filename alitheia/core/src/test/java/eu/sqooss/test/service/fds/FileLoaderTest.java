@@ -0,0 +1,129 @@
+package eu.sqooss.test.service.fds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.fds.FileLoader;
+import eu.sqooss.service.tds.SCMAccessor;
+import eu.sqooss.service.util.FileUtils;
+
+public class FileLoaderTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("fileloader", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteRecursive(dir);
+    }
+
+    /**
+     * An accessor whose getFile() writes the path to the file, after
+     * waiting for the latch, and counts the calls running concurrently.
+     */
+    private static SCMAccessor accessor(final CountDownLatch latch,
+            final AtomicInteger inside, final AtomicInteger maxInside) {
+        return (SCMAccessor) Proxy.newProxyInstance(
+                SCMAccessor.class.getClassLoader(),
+                new Class<?>[] {SCMAccessor.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] args)
+                    throws Throwable {
+                if (!m.getName().equals("getFile"))
+                    throw new UnsupportedOperationException(m.getName());
+                int now = inside.incrementAndGet();
+                synchronized (maxInside) {
+                    maxInside.set(Math.max(maxInside.get(), now));
+                }
+                try {
+                    latch.countDown();
+                    latch.await(500, TimeUnit.MILLISECONDS);
+                    FileOutputStream out = new FileOutputStream((File) args[2]);
+                    out.write(((String) args[0]).getBytes("UTF-8"));
+                    out.close();
+                    return null;
+                } finally {
+                    inside.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private File[] load(final SCMAccessor[] scms, final String[] paths)
+            throws Exception {
+        final File[] result = new File[paths.length];
+        final Exception[] errors = new Exception[paths.length];
+        Thread[] threads = new Thread[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            final int idx = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        result[idx] = new FileLoader(scms[idx], paths[idx],
+                                null, new File(dir, paths[idx])).call();
+                    } catch (Exception e) {
+                        errors[idx] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        for (Exception e : errors)
+            if (e != null)
+                throw e;
+        return result;
+    }
+
+    @Test
+    public void testSameProjectSerialised() throws Exception {
+        AtomicInteger inside = new AtomicInteger(), max = new AtomicInteger();
+        /* Only released if both calls run at the same time */
+        SCMAccessor scm = accessor(new CountDownLatch(2), inside, max);
+
+        File[] files = load(new SCMAccessor[] {scm, scm},
+                new String[] {"a.c", "b.c"});
+
+        assertEquals(1, max.get());
+        assertEquals(new File(dir, "a.c"), files[0]);
+        assertEquals(new File(dir, "b.c"), files[1]);
+        assertEquals(3, files[0].length());
+        assertTrue(FileLoader.isCheckedOut(files[1]));
+        /* No temporary files left behind */
+        assertEquals(2, dir.listFiles().length);
+    }
+
+    @Test
+    public void testProjectsInParallel() throws Exception {
+        AtomicInteger inside = new AtomicInteger(), max = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(2);
+
+        File[] files = load(new SCMAccessor[] {
+                accessor(latch, inside, max), accessor(latch, inside, max)},
+                new String[] {"a.c", "b.c"});
+
+        assertEquals(2, max.get());
+        assertTrue(FileLoader.isCheckedOut(files[0]));
+        assertTrue(FileLoader.isCheckedOut(files[1]));
+    }
+}
@@ -0,0 +1,77 @@
+package eu.sqooss.test.service.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.logging.AsyncLogQueue;
+
+public class AsyncLogQueueTest {
+
+    static class ListAppender extends AppenderSkeleton {
+        List<LoggingEvent> events = new ArrayList<LoggingEvent>();
+        
+        protected void append(LoggingEvent e) {
+            events.add(e);
+        }
+
+        public boolean requiresLayout() {
+            return false;
+        }
+
+        public void close() {}
+    }
+    
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final Logger l = Logger.getLogger("test.asynclogqueue");
+        l.setAdditivity(false);
+        ListAppender a = new ListAppender();
+        l.addAppender(a);
+        
+        final AsyncLogQueue q = new AsyncLogQueue(64);
+        q.start();
+        
+        final int threads = 4, messages = 10000;
+        Thread[] producers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int t = i;
+            producers[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < messages; j++)
+                        q.append(new LoggingEvent(Logger.class.getName(), l, 
+                                Level.INFO, t + ":" + j, null));
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread t : producers)
+            t.join();
+        q.shutDown();
+        
+        assertEquals(threads * messages, a.events.size());
+        assertEquals(0, q.size());
+        
+        /* Events from each producer are appended in order, unless they
+         * overflowed to the producing thread */
+        Map<String, Integer> last = new HashMap<String, Integer>();
+        int outOfOrder = 0;
+        for (LoggingEvent e : a.events) {
+            String[] m = ((String) e.getMessage()).split(":");
+            Integer prev = last.put(m[0], Integer.valueOf(m[1]));
+            if (prev != null && prev > Integer.parseInt(m[1]))
+                outOfOrder++;
+        }
+        assertTrue(outOfOrder <= q.getOverflows());
+    }
+}
@@ -0,0 +1,69 @@
+package eu.sqooss.test.service.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.logging.AsyncLogQueue;
+import eu.sqooss.impl.service.logging.LoggerImpl;
+import eu.sqooss.test.service.logging.AsyncLogQueueTest.ListAppender;
+
+public class LoggerImplTest {
+
+    @Test
+    public void testAsyncEventContext() throws Exception {
+        Logger l = Logger.getLogger("test.loggerimpl");
+        l.setAdditivity(false);
+        l.setLevel(Level.INFO);
+        ListAppender a = new ListAppender();
+        l.addAppender(a);
+        
+        AsyncLogQueue q = new AsyncLogQueue(64);
+        q.start();
+        LoggerImpl logger = new LoggerImpl("test.loggerimpl", q);
+        
+        NDC.push("ndc");
+        MDC.put("key", "mdc");
+        try {
+            logger.info("message {}", 1);
+        } finally {
+            NDC.pop();
+            MDC.remove("key");
+        }
+        q.shutDown();
+        
+        assertEquals(1, a.events.size());
+        LoggingEvent e = a.events.get(0);
+        assertEquals("message 1", e.getMessage());
+        assertEquals(Thread.currentThread().getName(), e.getThreadName());
+        assertEquals(LoggerImplTest.class.getName(), 
+                e.getLocationInformation().getClassName());
+        assertEquals("testAsyncEventContext", 
+                e.getLocationInformation().getMethodName());
+        assertEquals("ndc", e.getNDC());
+        assertEquals("mdc", e.getMDC("key"));
+    }
+    
+    @Test
+    public void testFormat() {
+        Logger l = Logger.getLogger("test.loggerimpl.format");
+        l.setAdditivity(false);
+        l.setLevel(Level.INFO);
+        ListAppender a = new ListAppender();
+        l.addAppender(a);
+        
+        LoggerImpl logger = new LoggerImpl("test.loggerimpl.format");
+        logger.info("{} and {}", "a", "b");
+        logger.info("{} and {}", "a");
+        logger.info("none {}", (Object[]) null);
+        
+        assertEquals("a and b", a.events.get(0).getMessage());
+        assertEquals("a and {}", a.events.get(1).getMessage());
+        assertEquals("none {}", a.events.get(2).getMessage());
+    }
+}
@@ -0,0 +1,176 @@
+package eu.sqooss.test.service.metricactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import eu.sqooss.impl.service.metricactivator.MetricActivatorBatchJob;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.logging.Logger;
+
+public class MetricActivatorBatchJobTest {
+
+    @Test
+    public void testFailingResourceIsMoved() throws Exception {
+        TestBatchJob j = new TestBatchJob(3, 1, 2, 3, 4, 5, 6);
+        j.failing.add(2L);
+        j.runBatch();
+
+        assertEquals(Arrays.asList(2L), j.moved);
+        assertEquals(Arrays.asList(1L, 3L, 4L, 5L, 6L), j.committed);
+        /* The first chunk is rolled back once, to drop the results of 1 */
+        assertEquals(1, j.rollbacks);
+        assertEquals(5, j.size());
+    }
+
+    @Test
+    public void testLockedResourceIsSkipped() throws Exception {
+        TestBatchJob j = new TestBatchJob(3, 1, 2, 3, 4, 5, 6);
+        j.locked.add(5L);
+        j.runBatch();
+
+        assertEquals(0, j.moved.size());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 6L), j.committed);
+        assertEquals(1, j.rollbacks);
+        /* Rescheduled resources are accounted for by the batch job */
+        assertEquals(6, j.size());
+    }
+
+    @Test
+    public void testFailuresInSameChunk() throws Exception {
+        TestBatchJob j = new TestBatchJob(0, 1, 2, 3, 4, 5);
+        j.locked.add(2L);
+        j.failing.add(4L);
+        j.runBatch();
+
+        assertEquals(Arrays.asList(4L), j.moved);
+        assertEquals(Arrays.asList(1L, 3L, 5L), j.committed);
+        assertEquals(2, j.rollbacks);
+        assertEquals(4, j.size());
+    }
+
+    @Test
+    public void testFailedCommitRestartsChunk() throws Exception {
+        TestBatchJob j = new TestBatchJob(2, 1, 2, 3, 4);
+        j.failedCommits = 2;
+        j.runBatch();
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), j.committed);
+        assertEquals(4, j.commits);
+    }
+
+    @Test
+    public void testTooManyRestarts() throws Exception {
+        TestBatchJob j = new TestBatchJob(2, 1, 2, 3, 4);
+        j.failedCommits = Integer.MAX_VALUE;
+        try {
+            j.runBatch();
+            fail("The job should fail after too many restarts");
+        } catch (Exception e) {}
+
+        assertEquals(0, j.committed.size());
+    }
+
+    private static Logger nullLogger() {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(),
+                new Class<?>[] {Logger.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                return (m.getReturnType() == boolean.class) ? false : null;
+            }
+        });
+    }
+
+    /**
+     * Runs a batch job against in-memory resources, recording the results
+     * of each chunk as a transaction would.
+     */
+    private static class TestBatchJob extends MetricActivatorBatchJob {
+        Set<Long> failing = new HashSet<Long>();
+        Set<Long> locked = new HashSet<Long>();
+        int failedCommits = 0;
+
+        List<Long> committed = new ArrayList<Long>();
+        List<Long> moved = new ArrayList<Long>();
+        int commits = 0, rollbacks = 0;
+
+        private List<Long> chunk = new ArrayList<Long>();
+        private boolean active = false;
+
+        TestBatchJob(int commitInterval, long... ids) {
+            super(null, ids, commitInterval, null, nullLogger(),
+                    StoredProject.class, 0, false);
+        }
+
+        void runBatch() throws Exception {
+            run();
+        }
+
+        @Override
+        protected void beginChunk() {
+            chunk.clear();
+            active = true;
+        }
+
+        @Override
+        protected boolean commitChunk() {
+            active = false;
+            commits++;
+            if (failedCommits > 0) {
+                failedCommits--;
+                return false;
+            }
+            committed.addAll(chunk);
+            return true;
+        }
+
+        @Override
+        protected void rollbackChunk() {
+            if (!active)
+                return;
+            active = false;
+            rollbacks++;
+        }
+
+        @Override
+        protected List<DAObject> load(List<Long> ids) {
+            List<DAObject> objs = new ArrayList<DAObject>();
+            for (Long id : ids) {
+                StoredProject sp = new StoredProject();
+                sp.setId(id);
+                objs.add(sp);
+            }
+            return objs;
+        }
+
+        @Override
+        protected void calculate(DAObject obj) throws Exception {
+            if (locked.contains(obj.getId())) {
+                Constructor<AlreadyProcessingException> c =
+                    AlreadyProcessingException.class.getDeclaredConstructor();
+                c.setAccessible(true);
+                throw c.newInstance();
+            }
+            if (failing.contains(obj.getId()))
+                throw new RuntimeException("Failing on " + obj.getId());
+            chunk.add(obj.getId());
+        }
+
+        @Override
+        protected void moveToOwnJob(long daoID, Exception cause) {
+            moved.add(daoID);
+        }
+    }
+}
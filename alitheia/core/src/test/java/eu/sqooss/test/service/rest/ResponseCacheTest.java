@@ -0,0 +1,115 @@
+package eu.sqooss.test.service.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import eu.sqooss.impl.service.rest.ResponseCache;
+
+public class ResponseCacheTest {
+
+    private static final String P1 = ResponseCache.key("/api/project/1/versions", null, null);
+    private static final String P2 = ResponseCache.key("/api/project/2/versions", null, null);
+    private static final String ALL = ResponseCache.key("/api/projects", null, null);
+    private static final String METRICS = ResponseCache.key("/api/metrics/by-id/1/results", null, null);
+    private static final String STATS = ResponseCache.key("/api/scheduler/stats", null, null);
+    
+    @Test
+    public void testInvalidateProject() {
+        ResponseCache c = new ResponseCache(1024);
+        c.put(P1, new byte[] {1}, "text/xml", c.begin(P1));
+        c.put(P2, new byte[] {2}, "text/xml", c.begin(P2));
+        c.put(ALL, new byte[] {3}, "text/xml", c.begin(ALL));
+        assertNotNull(c.get(P1));
+        
+        c.invalidateProject(1);
+        assertNull(c.get(P1));
+        assertNotNull(c.get(P2));
+        assertNull(c.get(ALL));
+        
+        c.invalidateResults();
+        assertNull(c.get(P2));
+    }
+    
+    @Test
+    public void testInvalidateResults() {
+        ResponseCache c = new ResponseCache(1024);
+        c.put(P1, new byte[] {1}, "text/xml", c.begin(P1));
+        c.put(P2, new byte[] {2}, "text/xml", c.begin(P2));
+        c.put(METRICS, new byte[] {3}, "text/xml", c.begin(METRICS));
+        c.put(STATS, new byte[] {4}, "text/xml", c.begin(STATS));
+        
+        c.invalidateResults(1);
+        assertNull(c.get(P1));
+        assertNotNull(c.get(P2));
+        assertNull(c.get(METRICS));
+        assertNotNull(c.get(STATS));
+        
+        c.put(P1, new byte[] {1}, "text/xml", c.begin(P1));
+        c.invalidateResults();
+        assertNull(c.get(P1));
+        assertNull(c.get(P2));
+        assertNotNull(c.get(STATS));
+    }
+    
+    @Test
+    public void testStaleComputation() {
+        ResponseCache c = new ResponseCache(1024);
+        long[] gens = c.begin(P1);
+        c.invalidateProject(1);
+        c.put(P1, new byte[] {1}, "text/xml", gens);
+        assertNull(c.get(P1));
+    }
+    
+    @Test
+    public void testEviction() {
+        ResponseCache c = new ResponseCache(400);
+        c.put(P1, new byte[100], null, c.begin(P1));
+        c.put(P2, new byte[100], null, c.begin(P2));
+        c.get(P1);
+        c.put(ALL, new byte[100], null, c.begin(ALL));
+        c.put("other", new byte[100], null, c.begin("other"));
+        assertEquals(4, c.getEntries());
+        
+        c.put("last", new byte[100], null, c.begin("last"));
+        assertEquals(400, c.getSize());
+        assertNull(c.get(P2));
+        assertNotNull(c.get(P1));
+        
+        c.put("large", new byte[101], null, c.begin("large"));
+        assertNull(c.get("large"));
+    }
+    
+    @Test
+    public void testETag() {
+        ResponseCache c = new ResponseCache(1024);
+        String a = c.put(P1, new byte[] {1}, null, c.begin(P1)).getETag();
+        String b = c.put(P2, new byte[] {1}, null, c.begin(P2)).getETag();
+        assertEquals(a, b);
+    }
+    
+    @Test
+    public void testInvalidateAll() {
+        ResponseCache c = new ResponseCache(1024);
+        c.put(P1, new byte[] {1}, "text/xml", c.begin(P1));
+        c.put(ALL, new byte[] {2}, "text/xml", c.begin(ALL));
+        c.put(STATS, new byte[] {3}, "text/xml", c.begin(STATS));
+        long[] gens = c.begin(P2);
+        
+        c.invalidateAll();
+        assertEquals(0, c.getEntries());
+        c.put(P2, new byte[] {4}, "text/xml", gens);
+        assertNull(c.get(P2));
+    }
+    
+    @Test
+    public void testCacheControl() {
+        ResponseCache c = new ResponseCache(1024);
+        c.put(P1, new byte[] {1}, null, "max-age=3600", c.begin(P1));
+        c.put(P2, new byte[] {1}, null, c.begin(P2));
+        assertEquals("max-age=3600", c.get(P1).getCacheControl());
+        assertEquals("no-cache", c.get(P2).getCacheControl());
+    }
+}
@@ -1,10 +1,17 @@
 package eu.sqooss.test.service.scheduler;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import eu.sqooss.impl.service.scheduler.SchedulerServiceImpl;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.JobStateListener;
 import eu.sqooss.service.scheduler.SchedulerException;
 
 public class SchedulerTests {
@@ -30,6 +37,51 @@ public class SchedulerTests {
         sched.enqueue(j4);
     }
     
+    @Test
+    public void testDequeueNotifiesListeners() throws SchedulerException {
+        SchedulerServiceImpl s = new SchedulerServiceImpl();
+        StateRecorder r = new StateRecorder();
+        TestJob j = new TestJob(1, "Test");
+        j.addJobStateListener(r);
+        
+        s.enqueue(j);
+        s.dequeue(j);
+        assertEquals(Job.State.Created, j.state());
+        assertEquals(1, r.states.size());
+        assertEquals(Job.State.Created, r.states.get(0));
+        
+        /* Not in the queue any more, nothing to report */
+        s.dequeue(j);
+        assertEquals(1, r.states.size());
+        
+        /* A dequeued job can be enqueued again */
+        s.enqueue(j);
+        assertEquals(Job.State.Queued, j.state());
+    }
+    
+    @Test
+    public void testShutDownDequeuesJobs() throws SchedulerException {
+        for (String queue : new String[] {SchedulerServiceImpl.QUEUE_PRIORITY,
+                SchedulerServiceImpl.QUEUE_SHARDED}) {
+            SchedulerServiceImpl s = new SchedulerServiceImpl(queue);
+            StateRecorder r = new StateRecorder();
+            TestJob blocker = new TestJob(1, "Test");
+            blocker.addJobStateListener(r);
+            s.enqueue(blocker);
+            for (int i = 0; i < 10; i++) {
+                TestJob j = new TestJob(1, "Test");
+                j.addDependency(blocker);
+                j.addJobStateListener(r);
+                s.enqueue(j);
+            }
+            
+            s.shutDown();
+            assertEquals(queue, 11, r.states.size());
+            for (Job.State state : r.states)
+                assertEquals(queue, Job.State.Created, state);
+        }
+    }
+    
     @AfterClass
     public static void tearDown() {
         while (sched.getSchedulerStats().getWaitingJobs() > 0)
@@ -39,4 +91,12 @@ public class SchedulerTests {
             
         sched.stopExecute();
     }
-}
\ No newline at end of file
+    
+    private static class StateRecorder implements JobStateListener {
+        List<Job.State> states = new ArrayList<Job.State>();
+        
+        public synchronized void jobStateChanged(Job j, Job.State state) {
+            states.add(state);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package eu.sqooss.test.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import eu.sqooss.impl.service.scheduler.SchedulerServiceImpl;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+/**
+ * Pushes jobs through the available scheduler job queues from concurrent
+ * producers and consumers, and checks that every job comes out. Jobs are 
+ * not executed, consumer threads only take them off the queue.
+ */
+public class SchedulerThroughputTests {
+
+    static final int BATCH = 1000;
+    static final int CONSUMERS = 4;
+    /* Time to wait for all jobs to be taken, in ms */
+    static final long TIMEOUT = 60000;
+
+    @Test
+    public void testPriorityQueue() throws Exception {
+        run(SchedulerServiceImpl.QUEUE_PRIORITY, 10 * BATCH);
+    }
+
+    @Test
+    public void testShardedQueue() throws Exception {
+        run(SchedulerServiceImpl.QUEUE_SHARDED, 10 * BATCH);
+    }
+
+    /**
+     * Enqueue and take the provided number of jobs.
+     */
+    private void run(String queue, final int numJobs) throws Exception {
+        final SchedulerServiceImpl sched = new SchedulerServiceImpl(queue);
+        final AtomicInteger taken = new AtomicInteger();
+        List<Thread> consumers = new ArrayList<Thread>();
+
+        for (int i = 0; i < CONSUMERS; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        while (taken.get() < numJobs) {
+                            sched.takeJob();
+                            taken.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {}
+                }
+            };
+            t.setDaemon(true);
+            consumers.add(t);
+        }
+
+        long ts = System.currentTimeMillis();
+        for (Thread t : consumers)
+            t.start();
+
+        try {
+            for (int i = 0; i < numJobs; i += BATCH) {
+                Set<Job> jobs = new HashSet<Job>();
+                for (int j = 0; j < BATCH / 2; j++)
+                    jobs.add(new NopJob(i + j));
+                sched.enqueueNoDependencies(jobs);
+                for (int j = BATCH / 2; j < BATCH; j++)
+                    sched.enqueue(new NopJob(i + j));
+            }
+
+            while (taken.get() < numJobs) {
+                if (System.currentTimeMillis() - ts > TIMEOUT)
+                    fail("Queue " + queue + ": only " + taken.get() + " of " 
+                            + numJobs + " jobs taken in " + TIMEOUT + " ms");
+                Thread.sleep(10);
+            }
+        } finally {
+            for (Thread t : consumers)
+                t.interrupt();
+        }
+
+        assertEquals(numJobs, taken.get());
+    }
+
+    static class NopJob extends Job {
+        private long priority;
+
+        NopJob(long priority) {
+            this.priority = priority;
+        }
+
+        public long priority() {
+            return priority;
+        }
+
+        protected void run() throws Exception {}
+    }
+}
@@ -0,0 +1,86 @@
+package eu.sqooss.test.service.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import eu.sqooss.service.util.KeyedLocks;
+
+public class KeyedLocksTest {
+
+    @Test
+    public void testLockUnlock() throws Exception {
+        final KeyedLocks l = new KeyedLocks();
+        assertTrue(l.tryLock(1));
+        assertTrue(l.tryLock(1));
+        assertTrue(l.tryLock(2));
+        assertTrue(l.isLocked(1));
+        assertEquals(2, l.size());
+        
+        final boolean[] other = new boolean[2];
+        Thread t = new Thread() {
+            public void run() {
+                other[0] = l.tryLock(1);
+                other[1] = l.tryLock(3);
+                l.unlock(3);
+            }
+        };
+        t.start();
+        t.join();
+        assertFalse(other[0]);
+        assertTrue(other[1]);
+        
+        l.unlock(1);
+        assertTrue(l.isLocked(1));
+        l.unlock(1);
+        l.unlock(2);
+        assertFalse(l.isLocked(1));
+        assertEquals(0, l.size());
+    }
+    
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testUnlockNotHeld() {
+        new KeyedLocks().unlock(1);
+    }
+    
+    @Test
+    public void testMutualExclusion() throws Exception {
+        final KeyedLocks l = new KeyedLocks();
+        final int[] counters = new int[4];
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 20000; j++) {
+                        int k = j % counters.length;
+                        while (!l.tryLock(k))
+                            Thread.yield();
+                        if (k == 0 && inside.incrementAndGet() != 1)
+                            violations.incrementAndGet();
+                        counters[k]++;
+                        if (k == 0)
+                            inside.decrementAndGet();
+                        l.unlock(k);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        
+        assertEquals(0, violations.get());
+        int sum = 0;
+        for (int c : counters)
+            sum += c;
+        assertEquals(threads.length * 20000, sum);
+        assertEquals(0, l.size());
+    }
+}
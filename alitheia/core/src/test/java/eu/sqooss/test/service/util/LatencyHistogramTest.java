@@ -0,0 +1,72 @@
+package eu.sqooss.test.service.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import eu.sqooss.service.util.LatencyHistogram;
+import eu.sqooss.service.util.StripedCounter;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(0.5, TimeUnit.NANOSECONDS));
+        
+        for (long i = 1; i <= 1000; i++)
+            h.record(i * 1000);
+        
+        assertEquals(1000, h.getCount());
+        assertEquals(1000000, h.getMax(TimeUnit.NANOSECONDS));
+        assertEquals(500.5, h.getMean(TimeUnit.MICROSECONDS), 0.001);
+        assertWithin(500000, h.getPercentile(0.5, TimeUnit.NANOSECONDS));
+        assertWithin(990000, h.getPercentile(0.99, TimeUnit.NANOSECONDS));
+        assertEquals(1000000, h.getPercentile(1, TimeUnit.NANOSECONDS));
+    }
+    
+    @Test
+    public void testSmallAndLargeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(3);
+        h.record(Long.MAX_VALUE);
+        assertEquals(3, h.getCount());
+        assertEquals(0, h.getPercentile(0.1, TimeUnit.NANOSECONDS));
+        assertEquals(3, h.getPercentile(0.5, TimeUnit.NANOSECONDS));
+        assertEquals((1L << 44) - 1, h.getMax(TimeUnit.NANOSECONDS));
+    }
+    
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram h = new LatencyHistogram();
+        final StripedCounter c = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        h.record(j);
+                        c.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        
+        assertEquals(400000, h.getCount());
+        assertEquals(400000, c.sum());
+        assertEquals(400000, c.sumThenReset());
+        assertEquals(0, c.sum());
+    }
+    
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected, 
+                Math.abs(actual - expected) <= expected * 0.035);
+    }
+}
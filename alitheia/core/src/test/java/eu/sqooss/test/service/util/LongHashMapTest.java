@@ -0,0 +1,59 @@
+package eu.sqooss.test.service.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import eu.sqooss.service.util.LongHashMap;
+
+public class LongHashMapTest {
+
+    @Test
+    public void testPutGet() {
+        LongHashMap<String> m = new LongHashMap<String>();
+        assertTrue(m.isEmpty());
+        assertNull(m.put(1, "a"));
+        assertNull(m.put(-5, null));
+        assertEquals("a", m.put(1, "b"));
+        
+        assertEquals("b", m.get(1));
+        assertNull(m.get(-5));
+        assertTrue(m.containsKey(-5));
+        assertFalse(m.containsKey(2));
+        assertEquals(2, m.size());
+        
+        long[] keys = m.keys();
+        Arrays.sort(keys);
+        assertEquals(-5, keys[0]);
+        assertEquals(1, keys[1]);
+        
+        m.clear();
+        assertEquals(0, m.size());
+        assertFalse(m.containsKey(1));
+    }
+    
+    @Test
+    public void testResize() {
+        LongHashMap<Long> m = new LongHashMap<Long>(4);
+        Map<Long, Long> ref = new HashMap<Long, Long>();
+        Random r = new Random(3);
+        
+        for (int i = 0; i < 100000; i++) {
+            long k = r.nextInt(50000) * 1024L;
+            m.put(k, (long) i);
+            ref.put(k, (long) i);
+        }
+        
+        assertEquals(ref.size(), m.size());
+        for (Map.Entry<Long, Long> e : ref.entrySet())
+            assertEquals(e.getValue(), m.get(e.getKey()));
+    }
+}
@@ -56,6 +56,7 @@ import eu.sqooss.metrics.contrib.db.ContribActionType;
 import eu.sqooss.service.abstractmetric.AbstractMetric;
 import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
 import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.InvocationOrder;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.MetricMismatchException;
@@ -199,6 +200,24 @@ public class ContributionMetricImpl extends AbstractMetric {
     	return IDs;
     }
     
+    @Override
+    public long[] getObjectIdsToSync(StoredProject sp, Metric m, Type t,
+            InvocationOrder order, long from, int limit) 
+        throws MetricActivationException {
+        
+        if (t == Type.PROJECT_VERSION) {
+            return getObjectIdsPage("select pv.id from ProjectVersion pv where pv.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:project and ca.contribActionType.actionCategory='C') and pv.project = :project", 
+                    "pv", sp, m, order, from, limit);
+        } else if (t == Type.MAILTHREAD) {
+            return getObjectIdsPage("select mlt.id from MailingListThread mlt where mlt.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:project and ca.contribActionType.actionCategory='M') and mlt.list.storedProject = :project", 
+                    "mlt", sp, m, order, from, limit);
+        } else if (t == Type.BUG) {
+            return getObjectIdsPage("select b.id from Bug b where b.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:project and ca.contribActionType.actionCategory='B') and b.project = :project", 
+                    "b", sp, m, order, from, limit);
+        }
+        return new long[0];
+    }
+    
     /*
      * The following methods are dummy implementations that just
      * check if a result has been calculated for the provided
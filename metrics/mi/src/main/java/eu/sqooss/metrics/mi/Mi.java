@@ -31,6 +31,7 @@
 package eu.sqooss.metrics.mi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,7 +43,9 @@ import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
 import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.abstractmetric.ResultCache;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Directory;
 import eu.sqooss.service.db.Metric;
@@ -134,11 +137,29 @@ public class Mi extends AbstractMetric {
         int totalLoCom = 0, totalG = 0, totalLoC = 0;
         FileTypeMatcher ftm = FileTypeMatcher.getInstance();
         
+        /* Read the dependency results for all source files at once */
+        List<ProjectFile> srcFiles = new ArrayList<ProjectFile>();
         for (ProjectFile f : fileList) {
+            if (!f.getIsDirectory() && ftm.isSourceFile(f.getFileName()))
+                srcFiles.add(f);
+        }
+        long[] ids = new long[srcFiles.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = srcFiles.get(i).getId();
+        
+        ResultCache cache = getResultCache();
+        try {
+            if (structure != null)
+                cache.prefetch(structure, Arrays.asList(hvmetric, eccmetric), ids);
+            if (loc != null)
+                cache.prefetch(loc, Arrays.asList(locmetric, locommetric), ids);
+        } catch (MetricMismatchException e) {
+            log.warn(getName() + ": Cannot prefetch dependency results for "
+                    + pf + ": " + e.getMessage());
+        }
+        
+        for (ProjectFile f : srcFiles) {
                         
-            if (f.getIsDirectory() || !ftm.isSourceFile(f.getFileName()))
-                continue;
-            
             Double HV = getResult(structure, hvmetric, f, Double.class);
             
             if (HV == null) {
@@ -220,32 +241,13 @@ public class Mi extends AbstractMetric {
         String paramIsDirectory = "is_directory";
         String paramMNOL = "paramMNOL";
         String paramISSRCDIR = "paramISSRCDIR";
-        String paramVersionId = "paramVersionId";
-        String paramProjectId = "paramProjectId";
         String paramState = "paramStatus";
         
         StringBuffer q = new StringBuffer("select pfm ");
         Map<String,Object> params = new HashMap<String,Object>();
 
-        if (pv.getSequence() == ProjectVersion.getLastProjectVersion(pv.getProject()).getSequence()) {
-            q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
-            q.append(" where pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf, ");
-            q.append(" ProjectFileMeasurement pfm ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and pf.validFrom.id = pv2.id");
-            q.append(" and pf.validUntil.id = pv3.id");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-           
-            params.put(paramProjectId, pv.getProject().getId());
-            params.put(paramVersionId, pv.getId());
-        }
+        q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
+        q.append(" where ").append(pv.liveFilesCondition("pf", params));
         
         q.append(" and pf.state <> :").append(paramState);
         q.append(" and pf.isDirectory = :").append(paramIsDirectory);
@@ -293,7 +295,8 @@ public class Mi extends AbstractMetric {
     /**
      * Convenience method that returns the (numeric) result for a single metric
      * for which we now the return type. This method will not trigger a metric
-     * calculation if the result in not in the DB.
+     * calculation if the result in not in the DB. Results are read through
+     * the job's result cache.
      * 
      * @param <E> The type that the metric stores its result
      * @param mnemonic The metric to return the result for
@@ -311,22 +314,20 @@ public class Mi extends AbstractMetric {
             return null;
         }
 
-        List<Metric> l = new ArrayList<Metric>();
-        l.add(m);
         try {
-            List<Result> r = plugin.getResultIfAlreadyCalculated(c, l);
+            String r = getResultCache().get(plugin, m, c);
             
-            if (r == null || r.isEmpty())
+            if (r == null)
                 return null;
 
             if (resultType.equals(Double.class))
-                return (E) new Double(r.get(0).getResult().toString());
+                return (E) new Double(r);
 
             if (resultType.equals(Integer.class))
-                return (E) new Integer(r.get(0).getResult().toString());
+                return (E) new Integer(r);
 
             if (resultType.equals(Float.class))
-                return (E) new Float(r.get(0).getResult().toString());
+                return (E) new Float(r);
             
             return null;
         } catch (Exception e) {
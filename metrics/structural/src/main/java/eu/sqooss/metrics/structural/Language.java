@@ -0,0 +1,262 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2009 - 2010 - Organization for Free and Open Source Software,  
+ * *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.metrics.structural;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The token table of a language supported by the structural metrics. It
+ * holds the language keywords and punctuation, as listed in the 
+ * <code>&lt;lang&gt;.operators</code> entry of the plug-in configuration, 
+ * along with the tokens that drive the McCabe calculation and function 
+ * detection. Tables are built once, when the plug-in is loaded, and are
+ * shared by all scans.
+ */
+class Language {
+    
+    /* Token flags */
+    /** The token is a Halstead operator */
+    static final int OPERATOR = 1;
+    /** The token adds a branch to the McCabe complexity */
+    static final int BRANCH = 2;
+    /** The token adds a switch case to the McCabe complexity */
+    static final int SWITCH = 4;
+    /** The token adds a condition to the extended McCabe complexity */
+    static final int EXT = 8;
+    
+    /* Token roles in function detection */
+    static final int NONE = 0;
+    static final int LBRACE = 1;
+    static final int RBRACE = 2;
+    static final int LPAREN = 3;
+    static final int RPAREN = 4;
+    static final int NEW = 5;
+    /** Tokens that may appear between a parameter list and a function body */
+    static final int SIGNATURE = 6;
+    /** Qualified name separators */
+    static final int SEPARATOR = 7;
+    /** Statement terminators */
+    static final int END = 8;
+    
+    private static final String[] BRANCHES = 
+        {"if", "while", "for", "catch", "finally"};
+    private static final String[] SWITCHES = {"case", "default"};
+    private static final String[] EXTS = {"&&", "||"};
+    
+    private final String name;
+    
+    /* Token entries */
+    private int[] flags = new int[128];
+    private int[] roles = new int[128];
+    private int entries = 0;
+    
+    /* Keyword entries are numbered in the order they were added */
+    private final SymbolTable words = new SymbolTable();
+    private int[] wordEntry = new int[128];
+    
+    /* Punctuation trie over ASCII bytes, node 0 is the root */
+    private int[][] next = new int[][] {new int[128]};
+    private int[] nodeEntry = new int[] {-1};
+    
+    /**
+     * Build the tables of all languages listed in the plug-in 
+     * configuration.
+     */
+    static Map<String, Language> load(Properties p) {
+        Map<String, Language> languages = new HashMap<String, Language>();
+        String langs = p.getProperty("languages");
+        if (langs == null)
+            return languages;
+        
+        for (String lang : langs.split(" ")) {
+            String ops = p.getProperty(lang + ".operators");
+            if (ops != null)
+                languages.put(lang, new Language(lang, ops));
+        }
+        return languages;
+    }
+    
+    /**
+     * Create a language table.
+     * 
+     * @param name The language name
+     * @param operators Space separated list of keywords and punctuation. 
+     *  Backslashes are ignored, so the list may be regular expression 
+     *  quoted. Quotes are ignored, as they delimit literals which are 
+     *  counted as operands.
+     */
+    Language(String name, String operators) {
+        this.name = name;
+        
+        for (String op : operators.split(" ")) {
+            op = op.replace("\\", "");
+            if (op.length() == 0 || op.equals("\"") || op.equals("'"))
+                continue;
+            add(op, OPERATOR, NONE);
+        }
+        
+        for (String s : BRANCHES)
+            add(s, BRANCH, NONE);
+        for (String s : SWITCHES)
+            add(s, SWITCH, NONE);
+        for (String s : EXTS)
+            add(s, EXT, NONE);
+        
+        add("{", 0, LBRACE);
+        add("}", 0, RBRACE);
+        add("(", 0, LPAREN);
+        add(")", 0, RPAREN);
+        add("new", 0, NEW);
+        add("throws", 0, SIGNATURE);
+        add("const", 0, SIGNATURE);
+        add(".", 0, SEPARATOR);
+        add(",", 0, SEPARATOR);
+        add("::", 0, SEPARATOR);
+        add(";", 0, END);
+    }
+    
+    /* Add a token or merge flags and role into an existing one */
+    private void add(String token, int flag, int role) {
+        byte[] b = token.getBytes();
+        int entry = find(b);
+        if (entry < 0) {
+            entry = entries++;
+            if (entry == flags.length) {
+                flags = grow(flags);
+                roles = grow(roles);
+            }
+            if (isIdentifierStart(b[0] & 0xff)) {
+                int id = words.add(b, 0, b.length);
+                if (id == wordEntry.length)
+                    wordEntry = grow(wordEntry);
+                wordEntry[id] = entry;
+            } else {
+                addPunctuation(b, entry);
+            }
+        }
+        flags[entry] |= flag;
+        if (role != NONE)
+            roles[entry] = role;
+    }
+    
+    private int find(byte[] b) {
+        if (isIdentifierStart(b[0] & 0xff)) {
+            int id = words.find(b, 0, b.length);
+            return id < 0 ? -1 : wordEntry[id];
+        }
+        int node = 0;
+        for (byte c : b) {
+            node = next[node][c & 0x7f];
+            if (node == 0)
+                return -1;
+        }
+        return nodeEntry[node];
+    }
+    
+    private void addPunctuation(byte[] b, int entry) {
+        int node = 0;
+        for (byte c : b) {
+            int n = next[node][c & 0x7f];
+            if (n == 0) {
+                n = next.length;
+                int[][] nn = new int[n + 1][];
+                System.arraycopy(next, 0, nn, 0, n);
+                nn[n] = new int[128];
+                next = nn;
+                int[] ne = new int[n + 1];
+                System.arraycopy(nodeEntry, 0, ne, 0, n);
+                ne[n] = -1;
+                nodeEntry = ne;
+                next[node][c & 0x7f] = n;
+            }
+            node = n;
+        }
+        nodeEntry[node] = entry;
+    }
+    
+    /** The language name */
+    String getName() {
+        return name;
+    }
+    
+    /** Number of distinct tokens, keyword and punctuation entries are less than this */
+    int size() {
+        return entries;
+    }
+    
+    /** The flags of a token entry */
+    int flags(int entry) {
+        return flags[entry];
+    }
+    
+    /** The function detection role of a token entry */
+    int role(int entry) {
+        return roles[entry];
+    }
+    
+    /** The entry of a keyword, or -1 if the word is an identifier */
+    int keyword(byte[] b, int off, int len) {
+        int id = words.find(b, off, len);
+        return id < 0 ? -1 : wordEntry[id];
+    }
+    
+    /** The trie node reached from <code>node</code> with byte <code>c</code>, 0 if none */
+    int next(int node, int c) {
+        return c < 0 || c > 127 ? 0 : next[node][c];
+    }
+    
+    /** The entry of the punctuation ending at a trie node, -1 if none */
+    int punctuation(int node) {
+        return nodeEntry[node];
+    }
+    
+    static boolean isIdentifierStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' 
+            || c == '$' || c >= 0x80;
+    }
+    
+    static boolean isIdentifierPart(int c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+    
+    private static int[] grow(int[] a) {
+        int[] b = new int[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,369 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2009 - 2010 - Organization for Free and Open Source Software,  
+ * *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.metrics.structural;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A single pass tokenizer for C like languages that computes the counts 
+ * needed by the Halstead and McCabe metrics while reading a source file.
+ * Comments are skipped, string and character literals, numbers and 
+ * identifiers are counted as operands, and the keywords and punctuation
+ * listed in the language table as operators. Punctuation is matched 
+ * longest first.
+ * <br/>
+ * A function starts at a <code>{</code> that follows the parameter list
+ * of a named declaration, outside other functions, and ends with the 
+ * matching <code>}</code>. Inside functions, branch and switch keywords 
+ * and logical operators are counted towards the McCabe complexities.
+ * <br/>
+ * Scanners keep their buffers between files and are not thread safe.
+ */
+class SourceScanner {
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos, limit, mark;
+    private boolean eof;
+    private InputStream in;
+    
+    private Language lang;
+    
+    /* Halstead counts */
+    private int totalOperators, totalOperands;
+    private boolean[] seenOperators = new boolean[256];
+    private int distinctOperators;
+    private final SymbolTable operands = new SymbolTable();
+    
+    /* Function detection state */
+    private int braceDepth, parenDepth, functionDepth;
+    private boolean inFunction;
+    private boolean prevIdentifier, newPending, callOwner, afterParams;
+    private int branches, switches, exts;
+    
+    /* McCabe counts */
+    private int functions, mccTotal, mccMax, emccTotal, emccMax;
+    
+    /**
+     * Scan a source file. The stream is read to its end but is not 
+     * closed. The results of the previous scan are discarded.
+     */
+    void scan(Language lang, InputStream in) throws IOException {
+        reset(lang, in);
+        
+        int c;
+        while ((c = peek(0)) != -1) {
+            mark = pos;
+            if (c <= ' ') {
+                pos++;
+            } else if (c == '/' && peek(1) == '/') {
+                skipLine();
+            } else if (c == '/' && peek(1) == '*') {
+                skipComment();
+            } else if (c == '"' || c == '\'') {
+                skipLiteral(c);
+                operand();
+            } else if (Language.isIdentifierStart(c)) {
+                while (Language.isIdentifierPart(peek(0)))
+                    pos++;
+                int entry = lang.keyword(buf, mark, pos - mark);
+                if (entry < 0 || (lang.flags(entry) & Language.OPERATOR) == 0) {
+                    operand();
+                }
+                token(entry, entry < 0 || (lang.flags(entry) 
+                        & (Language.OPERATOR | Language.BRANCH | Language.SWITCH)) == 0);
+            } else if (c >= '0' && c <= '9') {
+                int d;
+                while (Language.isIdentifierPart(d = peek(0)) || d == '.')
+                    pos++;
+                operand();
+                token(-1, false);
+            } else {
+                punctuation();
+            }
+        }
+        
+        this.in = null;
+    }
+    
+    private void reset(Language lang, InputStream in) {
+        this.lang = lang;
+        this.in = in;
+        pos = limit = mark = 0;
+        eof = false;
+        
+        totalOperators = totalOperands = distinctOperators = 0;
+        if (seenOperators.length < lang.size())
+            seenOperators = new boolean[lang.size()];
+        else
+            Arrays.fill(seenOperators, false);
+        operands.clear();
+        
+        braceDepth = parenDepth = functionDepth = 0;
+        inFunction = prevIdentifier = newPending = callOwner = afterParams = false;
+        branches = switches = exts = 0;
+        functions = mccTotal = mccMax = emccTotal = emccMax = 0;
+    }
+    
+    /* Match the longest punctuation token at the current position */
+    private void punctuation() throws IOException {
+        int node = 0, entry = -1, len = 0;
+        for (int k = 0; ; k++) {
+            node = lang.next(node, peek(k));
+            if (node == 0)
+                break;
+            if (lang.punctuation(node) >= 0) {
+                entry = lang.punctuation(node);
+                len = k + 1;
+            }
+        }
+        
+        if (entry < 0) {
+            /* Not a token of this language */
+            pos++;
+            return;
+        }
+        pos += len;
+        token(entry, false);
+    }
+    
+    /* Account for a token; entry is -1 for operands */
+    private void token(int entry, boolean identifier) {
+        int flags = 0, role = Language.NONE;
+        if (entry >= 0) {
+            flags = lang.flags(entry);
+            role = lang.role(entry);
+        }
+        
+        if ((flags & Language.OPERATOR) != 0) {
+            totalOperators++;
+            if (!seenOperators[entry]) {
+                seenOperators[entry] = true;
+                distinctOperators++;
+            }
+        }
+        
+        if (inFunction) {
+            if ((flags & Language.BRANCH) != 0)
+                branches++;
+            if ((flags & Language.SWITCH) != 0)
+                switches++;
+            if ((flags & Language.EXT) != 0)
+                exts++;
+        }
+        
+        boolean keepParams = false;
+        switch (role) {
+        case Language.LPAREN:
+            if (parenDepth++ == 0) {
+                callOwner = prevIdentifier && !newPending;
+                newPending = false;
+            }
+            break;
+        case Language.RPAREN:
+            if (parenDepth > 0 && --parenDepth == 0) {
+                afterParams = callOwner;
+                keepParams = true;
+            }
+            break;
+        case Language.LBRACE:
+            if (afterParams && parenDepth == 0 && !inFunction) {
+                inFunction = true;
+                functionDepth = braceDepth;
+                branches = switches = exts = 0;
+            }
+            braceDepth++;
+            newPending = false;
+            break;
+        case Language.RBRACE:
+            braceDepth--;
+            if (inFunction && braceDepth == functionDepth)
+                endFunction();
+            newPending = false;
+            break;
+        case Language.NEW:
+            newPending = true;
+            break;
+        case Language.END:
+            newPending = false;
+            break;
+        case Language.SIGNATURE:
+        case Language.SEPARATOR:
+            keepParams = true;
+            break;
+        default:
+            keepParams = identifier;
+        }
+        
+        if (parenDepth == 0 && !keepParams)
+            afterParams = false;
+        prevIdentifier = identifier;
+    }
+    
+    private void endFunction() {
+        inFunction = false;
+        functions++;
+        int mcc = 1 + branches + switches;
+        int emcc = mcc + exts;
+        mccTotal += mcc;
+        emccTotal += emcc;
+        mccMax = Math.max(mccMax, mcc);
+        emccMax = Math.max(emccMax, emcc);
+    }
+    
+    /* Count the bytes between mark and the current position as an operand */
+    private void operand() {
+        totalOperands++;
+        operands.add(buf, mark, pos - mark);
+    }
+    
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = peek(0)) != -1 && c != '\n' && c != '\r') {
+            pos++;
+            mark = pos;
+        }
+    }
+    
+    private void skipComment() throws IOException {
+        pos += 2;
+        int c;
+        while ((c = peek(0)) != -1) {
+            pos++;
+            mark = pos;
+            if (c == '*' && peek(0) == '/') {
+                pos++;
+                break;
+            }
+        }
+    }
+    
+    /* Skip a literal, up to its closing quote or the end of line */
+    private void skipLiteral(int quote) throws IOException {
+        pos++;
+        int c;
+        while ((c = peek(0)) != -1) {
+            if (c == '\n' || c == '\r')
+                break;
+            pos++;
+            if (c == quote)
+                break;
+            if (c == '\\' && peek(0) != -1)
+                pos++;
+        }
+    }
+    
+    /*
+     * Return the byte k positions after the current one, or -1 at the
+     * end of the stream. Bytes from mark onwards are kept in the buffer. 
+     */
+    private int peek(int k) throws IOException {
+        while (pos + k >= limit) {
+            if (!fill())
+                return -1;
+        }
+        return buf[pos + k] & 0xff;
+    }
+    
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+        if (mark > 0) {
+            System.arraycopy(buf, mark, buf, 0, limit - mark);
+            pos -= mark;
+            limit -= mark;
+            mark = 0;
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+    
+    /** Total number of operators (Halstead N1) */
+    int getTotalOperators() {
+        return totalOperators;
+    }
+    
+    /** Total number of operands (Halstead N2) */
+    int getTotalOperands() {
+        return totalOperands;
+    }
+    
+    /** Number of distinct operators (Halstead n1) */
+    int getDistinctOperators() {
+        return distinctOperators;
+    }
+    
+    /** Number of distinct operands (Halstead n2) */
+    int getDistinctOperands() {
+        return operands.size();
+    }
+    
+    /** Number of functions found */
+    int getFunctions() {
+        return functions;
+    }
+    
+    /** Sum of the McCabe complexities of all functions */
+    int getMcCabeTotal() {
+        return mccTotal;
+    }
+    
+    /** Maximum McCabe complexity of a function */
+    int getMcCabeMax() {
+        return mccMax;
+    }
+    
+    /** Sum of the extended McCabe complexities of all functions */
+    int getExtendedMcCabeTotal() {
+        return emccTotal;
+    }
+    
+    /** Maximum extended McCabe complexity of a function */
+    int getExtendedMcCabeMax() {
+        return emccMax;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2009 - 2010 - Organization for Free and Open Source Software,  
+ * *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.metrics.structural;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash set of byte sequences that assigns consecutive
+ * ids to the sequences it contains. Looking up a sequence does not 
+ * allocate; adding one copies it to a shared byte pool.
+ */
+class SymbolTable {
+    
+    private byte[] pool = new byte[1024];
+    private int poolSize = 0;
+    
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+    
+    /* Entry id + 1 for each slot, 0 for empty slots */
+    private int[] slots = new int[128];
+    
+    /**
+     * Return the id of the provided byte sequence, or -1 if it has not 
+     * been added.
+     */
+    int find(byte[] b, int off, int len) {
+        int h = hash(b, off, len);
+        int mask = slots.length - 1;
+        for (int i = h & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (hashes[id] == h && equal(id, b, off, len))
+                return id;
+        }
+        return -1;
+    }
+    
+    /**
+     * Return the id of the provided byte sequence, adding it if it has not
+     * been added before.
+     */
+    int add(byte[] b, int off, int len) {
+        int h = hash(b, off, len);
+        int mask = slots.length - 1;
+        int i = h & mask;
+        for (; slots[i] != 0; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (hashes[id] == h && equal(id, b, off, len))
+                return id;
+        }
+        
+        if (size == offsets.length) {
+            offsets = grow(offsets);
+            lengths = grow(lengths);
+            hashes = grow(hashes);
+        }
+        while (poolSize + len > pool.length) {
+            byte[] p = new byte[pool.length * 2];
+            System.arraycopy(pool, 0, p, 0, poolSize);
+            pool = p;
+        }
+        System.arraycopy(b, off, pool, poolSize, len);
+        offsets[size] = poolSize;
+        lengths[size] = len;
+        hashes[size] = h;
+        poolSize += len;
+        slots[i] = ++size;
+        
+        if (size * 2 > slots.length)
+            rehash();
+        return size - 1;
+    }
+    
+    /** Number of byte sequences in the table */
+    int size() {
+        return size;
+    }
+    
+    /** Remove all byte sequences, keeping the allocated space */
+    void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(slots, 0);
+        size = 0;
+        poolSize = 0;
+    }
+    
+    private boolean equal(int id, byte[] b, int off, int len) {
+        if (lengths[id] != len)
+            return false;
+        int o = offsets[id];
+        for (int i = 0; i < len; i++) {
+            if (pool[o + i] != b[off + i])
+                return false;
+        }
+        return true;
+    }
+    
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+    
+    private static int[] grow(int[] a) {
+        int[] b = new int[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+    
+    private static int hash(byte[] b, int off, int len) {
+        int h = 0x811c9dc5;
+        for (int i = off; i < off + len; i++) {
+            h ^= b[i];
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
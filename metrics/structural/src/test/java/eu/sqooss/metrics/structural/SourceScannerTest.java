@@ -0,0 +1,177 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2009 - 2010 - Organization for Free and Open Source Software,  
+ * *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.metrics.structural;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the structural metrics tokenizer.
+ */
+public class SourceScannerTest extends TestCase {
+    
+    private Map<String, Language> languages;
+    private SourceScanner scanner;
+    
+    protected void setUp() throws Exception {
+        Properties p = new Properties();
+        InputStream is = getClass().getResourceAsStream("/config.properties");
+        p.load(is);
+        is.close();
+        languages = Language.load(p);
+        scanner = new SourceScanner();
+    }
+    
+    public void testLanguages() {
+        assertNotNull(languages.get("java"));
+        assertNotNull(languages.get("c"));
+        assertNotNull(languages.get("cpp"));
+    }
+    
+    public void testHalstead() throws IOException {
+        scan("java", "a = b + c; // d + e\n/* f */ a += \"x + y\";");
+        /* = + ; += ; */
+        assertEquals(5, scanner.getTotalOperators());
+        assertEquals(4, scanner.getDistinctOperators());
+        /* a b c a "x + y" */
+        assertEquals(5, scanner.getTotalOperands());
+        assertEquals(4, scanner.getDistinctOperands());
+        
+        /* Longest match, keywords only as whole words */
+        scan("c", "x >>= 2; formats != ifs;");
+        assertEquals(4, scanner.getTotalOperators());
+        assertEquals(4, scanner.getTotalOperands());
+    }
+    
+    public void testMcCabe() throws IOException {
+        scan("java", 
+            "public class A {\n" +
+            "  private Runnable r = new Runnable() { public void run() {} };\n" +
+            "  @Override\n" +
+            "  public int f(int x) throws java.io.IOException {\n" +
+            "    if (x > 0 && x < 10) { return 1; }\n" +
+            "    for (int i = 0; i < x; i++) {\n" +
+            "      switch (i) { case 1: break; default: break; }\n" +
+            "    }\n" +
+            "    return 0;\n" +
+            "  }\n" +
+            "  int g() { return \"}\".length(); }\n" +
+            "  abstract void h();\n" +
+            "}\n");
+        /* Anonymous class methods outside functions count as functions */
+        assertEquals(3, scanner.getFunctions());
+        assertEquals(5, scanner.getMcCabeMax());
+        assertEquals(7, scanner.getMcCabeTotal());
+        assertEquals(6, scanner.getExtendedMcCabeMax());
+        assertEquals(8, scanner.getExtendedMcCabeTotal());
+        
+        scan("c", "#include <stdio.h>\nstruct s { int a; };\n" +
+            "static int main(int argc, char **argv) {\n" +
+            "  while (argc-- || 0) { if (argv) {} }\n  return 0;\n}\n");
+        assertEquals(1, scanner.getFunctions());
+        assertEquals(3, scanner.getMcCabeTotal());
+        assertEquals(4, scanner.getExtendedMcCabeTotal());
+    }
+    
+    public void testLongTokens() throws IOException {
+        StringBuilder sb = new StringBuilder("void f() { s = \"");
+        for (int i = 0; i < 20000; i++)
+            sb.append((char)('a' + i % 26));
+        sb.append("\"; /*");
+        for (int i = 0; i < 20000; i++)
+            sb.append('*');
+        sb.append("/ if (s) {} }");
+        
+        scan("c", sb.toString());
+        assertEquals(1, scanner.getFunctions());
+        assertEquals(2, scanner.getMcCabeTotal());
+        /* void f s "..." s */
+        assertEquals(5, scanner.getTotalOperands());
+    }
+    
+    public void testGeneratedCorpus() throws IOException {
+        Random r = new Random(11);
+        Language java = languages.get("java");
+        for (int i = 0; i < 20; i++) {
+            byte[] file = generate(r, 50 + r.nextInt(200));
+            scanner.scan(java, new ByteArrayInputStream(file));
+            int methods = new String(file, "US-ASCII")
+                .split("public int method").length - 1;
+            assertEquals(methods, scanner.getFunctions());
+        }
+    }
+    
+    private void scan(String lang, String source) throws IOException {
+        scanner.scan(languages.get(lang), 
+                new ByteArrayInputStream(source.getBytes("US-ASCII")));
+    }
+    
+    /* Statements are balanced, so that every generated method is closed */
+    private static final String[] STATEMENTS = {
+        "int i = 0;", "for (i = 0; i < n; i++) { x += i; }", "return x * y;",
+        "System.out.println(\"%d\\n\" + i);", "if (a == b && c != d) { c(); }", 
+        "x = y / z; // divide", "/* block */ y >>= 2;", 
+        "switch (k) { case 1: k++; break; default: k--; }", 
+        "while (true || false) {}", "list.add(new Object());", 
+        "char c = '\\'';", "s = \"{\"; /* } */",
+    };
+    
+    /* Generate a Java class with methods of random statements */
+    private static byte[] generate(Random r, int statements) {
+        StringBuilder sb = new StringBuilder("package a.b;\n\n");
+        sb.append("public class Generated {\n");
+        int i = 0;
+        while (i < statements) {
+            sb.append("    public int method").append(i).append("(int x) {\n");
+            int n = 5 + r.nextInt(20);
+            for (int j = 0; j < n; j++, i++)
+                sb.append("        ").append(STATEMENTS[r.nextInt(STATEMENTS.length)]).append("\n");
+            sb.append("    }\n\n");
+        }
+        sb.append("}\n");
+        try {
+            return sb.toString().getBytes("US-ASCII");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
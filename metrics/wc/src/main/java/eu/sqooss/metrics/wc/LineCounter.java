@@ -0,0 +1,280 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                  Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package eu.sqooss.metrics.wc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single pass, byte oriented counter of total, comment and non-blank 
+ * lines and words in a stream. Each supported language is described by 
+ * its comment delimiters, which drive a small state machine that is 
+ * advanced one byte at a time; no per-line objects are created.
+ * <br/>
+ * The counts are the same as those obtained by reading the stream line
+ * by line with a {@link java.io.LineNumberReader} in an ASCII compatible
+ * encoding:
+ * <ul>
+ *  <li>Lines end at <code>\n</code>, <code>\r</code> or <code>\r\n</code>,
+ *  and a trailing line without a terminator is counted.</li>
+ *  <li>A line is non-blank if it contains a byte above the space 
+ *  character, as with {@link String#trim()}.</li>
+ *  <li>Words are separated by the {@link java.util.StringTokenizer} 
+ *  default delimiters.</li>
+ *  <li>A line is a comment if it contains a single line comment 
+ *  delimiter, or if a multi-line comment is open at its start, begins or
+ *  ends in it.</li>
+ * </ul>
+ * As with the line based matcher this replaces, no effort is made to 
+ * handle quoting, so comment delimiters in strings are counted.
+ */
+public class LineCounter {
+    
+    /** Index of the total line count in the result of {@link #count(InputStream)} */
+    public static final int LOC = 0;
+    /** Index of the comment line count */
+    public static final int LOCOM = 1;
+    /** Index of the non-blank line count */
+    public static final int LONB = 2;
+    /** Index of the word count */
+    public static final int WORDS = 3;
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    /** Comment delimiters for C/C++/Java like languages */
+    public static final LineCounter C_LIKE = new LineCounter("//", "/*", "*/");
+    /** Comment delimiters for C, the default */
+    public static final LineCounter C = new LineCounter(null, "/*", "*/");
+    /** Comment delimiters for shell like scripting languages */
+    public static final LineCounter SCRIPT = new LineCounter("#", null, null);
+    /** Comment delimiters for SGML like markup languages */
+    public static final LineCounter MARKUP = new LineCounter(null, "<!--", "-->");
+    
+    private static final Map<String, LineCounter> languages = 
+        new HashMap<String, LineCounter>();
+    
+    static {
+        register("cpp|C|cc|java|hpp|h", C_LIKE);
+        register("c", C);
+        register("py|sh|pl|rb", SCRIPT);
+        register("html|xml|xsl", MARKUP);
+    }
+    
+    private static void register(String extensions, LineCounter lc) {
+        for (String e : extensions.split("\\|"))
+            languages.put(e, lc);
+    }
+    
+    /**
+     * Get the counter for files with the provided extension, as returned
+     * by {@link eu.sqooss.service.fds.FileTypeMatcher#getFileExtension(String)}.
+     * 
+     * @param extension The extension, with or without the leading dot. 
+     *  May be null.
+     * @return The language specific counter or the C one, if the extension
+     *  is not known.
+     */
+    public static LineCounter forExtension(String extension) {
+        if (extension == null)
+            return C;
+        if (extension.startsWith("."))
+            extension = extension.substring(1);
+        LineCounter lc = languages.get(extension);
+        return lc == null ? C : lc;
+    }
+    
+    private final byte[] lineComment;
+    private final byte[] startComment;
+    private final byte[] endComment;
+    /* Bytes that must be available after a position to match a delimiter */
+    private final int lookahead;
+    
+    /**
+     * Create a counter for a language with the provided comment delimiters.
+     * 
+     * @param lineComment Single line comment delimiter; may be null
+     * @param startComment Start of multi-line comment; may be null
+     * @param endComment End of multi-line comment; may be null only if 
+     *  startComment is null too
+     */
+    public LineCounter(String lineComment, String startComment, 
+            String endComment) {
+        this.lineComment = bytes(lineComment);
+        this.startComment = bytes(startComment);
+        this.endComment = bytes(endComment);
+        int max = 1;
+        for (byte[] b : new byte[][] {this.lineComment, this.startComment, 
+                this.endComment}) {
+            if (b != null)
+                max = Math.max(max, b.length);
+        }
+        this.lookahead = max - 1;
+    }
+    
+    private static byte[] bytes(String s) {
+        if (s == null)
+            return null;
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) s.charAt(i);
+        return b;
+    }
+    
+    /**
+     * Count the lines, comment lines, non-blank lines and words in a 
+     * stream. The stream is read to its end but is not closed.
+     * 
+     * @return An array indexed by {@link #LOC}, {@link #LOCOM}, 
+     *  {@link #LONB} and {@link #WORDS}
+     * @throws IOException On input error
+     */
+    public int[] count(InputStream in) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        
+        int loc = 0, locom = 0, lonb = 0, words = 0;
+        
+        boolean inComment = false;   // Inside a multi-line comment
+        boolean comment = false;     // Current line is a comment
+        boolean nonBlank = false;    // Current line has a non blank byte
+        boolean inWord = false;      // Last byte was part of a word
+        boolean lineStarted = false; // Bytes read since the last terminator
+        boolean skipLF = false;      // Last terminator was a \r
+        
+        int len = 0;   // Valid bytes in buf
+        boolean eof = false;
+        
+        while (true) {
+            /* Fill the buffer, keeping the unprocessed tail */
+            if (!eof) {
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0)
+                    eof = true;
+                else
+                    len += n;
+            }
+            
+            /* 
+             * Positions are only processed when enough bytes follow them 
+             * to match any delimiter, until the end of the stream. 
+             */
+            int limit = eof ? len : len - lookahead;
+            int i = 0;
+            
+            for (; i < limit; i++) {
+                byte b = buf[i];
+                
+                if (b == '\n' || b == '\r') {
+                    if (b == '\n' && skipLF) {
+                        skipLF = false;
+                        continue;
+                    }
+                    skipLF = (b == '\r');
+                    loc++;
+                    if (nonBlank)
+                        lonb++;
+                    if (comment)
+                        locom++;
+                    nonBlank = false;
+                    inWord = false;
+                    lineStarted = false;
+                    comment = inComment;
+                    continue;
+                }
+                skipLF = false;
+                lineStarted = true;
+                
+                if ((b & 0xff) > ' ')
+                    nonBlank = true;
+                
+                if (b == ' ' || b == '\t' || b == '\f') {
+                    inWord = false;
+                } else if (!inWord) {
+                    inWord = true;
+                    words++;
+                }
+                
+                if (lineComment != null && !comment 
+                        && matches(buf, i, len, lineComment))
+                    comment = true;
+                
+                /* 
+                 * A matched delimiter is skipped by a single byte, so the
+                 * closing delimiter may overlap the opening one, as in the
+                 * regular expression based matcher.
+                 */
+                if (startComment != null) {
+                    if (matches(buf, i, len, inComment ? endComment : startComment)) {
+                        inComment = !inComment;
+                        comment = true;
+                    }
+                }
+            }
+            
+            if (eof && i >= len)
+                break;
+            
+            /* Move the tail to the start of the buffer */
+            System.arraycopy(buf, i, buf, 0, len - i);
+            len -= i;
+        }
+        
+        if (lineStarted) {
+            loc++;
+            if (nonBlank)
+                lonb++;
+            if (comment)
+                locom++;
+        }
+        
+        int[] results = new int[4];
+        results[LOC] = loc;
+        results[LOCOM] = locom;
+        results[LONB] = lonb;
+        results[WORDS] = words;
+        return results;
+    }
+    
+    private static boolean matches(byte[] buf, int pos, int len, byte[] token) {
+        if (pos + token.length > len)
+            return false;
+        for (int j = 0; j < token.length; j++) {
+            if (buf[pos + j] != token[j])
+                return false;
+        }
+        return true;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,198 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                  Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package eu.sqooss.metrics.wc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the byte level counter against the line based implementation it
+ * replaced on a generated corpus of Java and C files.
+ */
+public class LineCounterTest extends TestCase {
+
+    private static final int FILES = 400;
+    
+    public void testSimple() throws IOException {
+        assertCounts(LineCounter.C_LIKE, "", 0, 0, 0, 0);
+        assertCounts(LineCounter.C_LIKE, "a b\n\n  \nc", 4, 0, 2, 3);
+        assertCounts(LineCounter.C_LIKE, "a\r\nb\rc\n", 3, 0, 3, 3);
+        assertCounts(LineCounter.C_LIKE, "x; // y\n/* a\n b */ c\nd\n", 4, 3, 4, 9);
+        assertCounts(LineCounter.C, "x; // y\n/*/ z\n", 2, 1, 2, 5);
+        assertCounts(LineCounter.SCRIPT, "#!/bin/sh\necho # x\n/* y */\n", 3, 2, 3, 7);
+        assertCounts(LineCounter.MARKUP, "<a>\n<!-- b\n-->\n", 3, 2, 3, 4);
+    }
+    
+    public void testForExtension() {
+        assertSame(LineCounter.C_LIKE, LineCounter.forExtension(".java"));
+        assertSame(LineCounter.C_LIKE, LineCounter.forExtension("h"));
+        assertSame(LineCounter.C, LineCounter.forExtension(".c"));
+        assertSame(LineCounter.SCRIPT, LineCounter.forExtension(".py"));
+        assertSame(LineCounter.C, LineCounter.forExtension(".txt"));
+        assertSame(LineCounter.C, LineCounter.forExtension(null));
+    }
+    
+    public void testEquivalence() throws IOException {
+        Random r = new Random(42);
+        for (int i = 0; i < FILES; i++) {
+            boolean java = (i % 2 == 0);
+            byte[] file = generate(r, java, 1 + r.nextInt(300));
+            LineCounter lc = java ? LineCounter.C_LIKE : LineCounter.C;
+            int[] expected = java ? 
+                    lineBased("//", "/\\*", "\\*/", file) : 
+                    lineBased(null, "/\\*", "\\*/", file);
+            assertTrue("File " + i, Arrays.equals(expected, 
+                    lc.count(new ByteArrayInputStream(file))));
+        }
+    }
+    
+    private static void assertCounts(LineCounter lc, String text, int loc, 
+            int locom, int lonb, int words) throws IOException {
+        int[] res = lc.count(new ByteArrayInputStream(text.getBytes("US-ASCII")));
+        assertEquals(text, loc, res[LineCounter.LOC]);
+        assertEquals(text, locom, res[LineCounter.LOCOM]);
+        assertEquals(text, lonb, res[LineCounter.LONB]);
+        assertEquals(text, words, res[LineCounter.WORDS]);
+    }
+    
+    private static final String[] CODE = {
+        "int i = 0;", "for (i = 0; i < n; i++) {", "}", "return x * y;",
+        "\tprintf(\"%d\\n\", i);", "if (a == b) { c(); }", "  x = y / z;",
+        "char *p = \"http://example.org/\";", "a = b*/*c*/d;",
+    };
+    
+    private static final String[] COMMENTS = {
+        "// A line comment", "/* A block comment */", "/*", " * Inside",
+        " */", "x++; // trailing", "y--; /* trailing */", "/** Doc */",
+    };
+    
+    private static final String[] ENDINGS = {"\n", "\n", "\n", "\r\n", "\r"};
+    
+    /* Generate a source file with a mix of code, comments and blanks */
+    private static byte[] generate(Random r, boolean java, int lines) {
+        StringBuilder sb = new StringBuilder();
+        String eol = ENDINGS[r.nextInt(ENDINGS.length)];
+        if (java)
+            sb.append("package a.b;").append(eol).append(eol);
+        else 
+            sb.append("#include <stdio.h>").append(eol).append(eol);
+        
+        for (int i = 0; i < lines; i++) {
+            int k = r.nextInt(10);
+            if (k < 6)
+                sb.append(CODE[r.nextInt(CODE.length)]);
+            else if (k < 9)
+                sb.append(COMMENTS[r.nextInt(COMMENTS.length)]);
+            else if (r.nextBoolean())
+                sb.append("   \t");
+            sb.append(eol);
+        }
+        
+        if (r.nextBoolean())
+            sb.append("}");
+        try {
+            return sb.toString().getBytes("US-ASCII");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /* 
+     * The line based implementation that WcImplementation.processStream()
+     * used before the byte level counter, kept as the reference.
+     */
+    private static int[] lineBased(String singleLine, String startMultiLine, 
+            String endMultiLine, byte[] file) throws IOException {
+        Pattern singleLinePattern = null;
+        if (null != singleLine) {
+            singleLinePattern = Pattern.compile(singleLine);
+        }
+
+        LineNumberReader lnr = new LineNumberReader(new InputStreamReader(
+                new ByteArrayInputStream(file), "US-ASCII"));
+        int comments = 0;
+        int non_blank = 0;
+        int words = 0;
+
+        Pattern startRE = Pattern.compile(startMultiLine);
+        Pattern endRE = Pattern.compile(endMultiLine);
+        boolean inside = false;
+        
+        String line = null;
+        while ((line = lnr.readLine()) != null) {
+            if (line.trim().length()>0) {
+                non_blank++;
+            }
+
+            words += new StringTokenizer(line).countTokens();
+
+            boolean r = inside;
+            Matcher toggle[] = { startRE.matcher(line), endRE.matcher(line) };
+            if (inside) {
+                Matcher temp = toggle[0];
+                toggle[0] = toggle[1];
+                toggle[1] = temp;
+            }
+            int point = 0;
+            while (toggle[0].find(point)) {
+                point = toggle[0].start() + 1;
+                r = true;
+                inside = !inside;
+                Matcher temp = toggle[0];
+                toggle[0] = toggle[1];
+                toggle[1] = temp;
+            }
+            
+            if (r) {
+                comments++;
+            } else if (null != singleLinePattern 
+                    && singleLinePattern.matcher(line).find()) {
+                comments++;
+            }
+        }
+
+        lnr.close();
+        return new int[] {lnr.getLineNumber(), comments, non_blank, words};
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -95,6 +95,9 @@ public class SkelAccessor implements SCMAccessor {
                InvalidRepositoryException,
                FileNotFoundException {return;}
 
+    public String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException {return null;}
+
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException {return null;}
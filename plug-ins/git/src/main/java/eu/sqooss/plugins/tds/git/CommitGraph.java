@@ -0,0 +1,367 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.plugins.tds.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * A compact index of the commit graph of a Git repository. Commits are
+ * numbered in the order they are discovered and all relationships are 
+ * stored in primitive arrays: parents and children in compressed sparse row
+ * form (an offsets array and an adjacency array), commit ids as raw bytes
+ * and author times in seconds. Children are sorted by author time, the
+ * order {@link GitRevision} instances are compared by.
+ * 
+ * The index is built by walking the history from a head commit once; 
+ * subsequent calls to {@link #extend(Repository, ObjectId)} only walk the
+ * commits added since. If the head the index was last extended to is no
+ * longer reachable, as happens when history is rewritten, the index is 
+ * built again from scratch. The index can be saved next to the repository
+ * and loaded back, so that it is not rebuilt every time the accessor is 
+ * created.
+ */
+class CommitGraph {
+
+    /** The file name of the saved index, under the repository's Git dir */
+    static final String FILE_NAME = "alitheia-commit-graph";
+
+    private static final int MAGIC = 0x41434731;
+    private static final int ID_LEN = Constants.OBJECT_ID_LENGTH;
+
+    /* Number of commits and the id/time of each */
+    private int n = 0;
+    private byte[] ids = new byte[ID_LEN * 1024];
+    private int[] times = new int[1024];
+
+    /* Open addressing hash table from id to commit index + 1 */
+    private int[] table = new int[2048];
+
+    /* child -> parent edges, in discovery order */
+    private int m = 0;
+    private int[] edgeChild = new int[1024];
+    private int[] edgeParent = new int[1024];
+
+    /* Adjacency in CSR form, rebuilt from the edges after each update */
+    private int[] parentStart = new int[1];
+    private int[] parents = new int[0];
+    private int[] childStart = new int[1];
+    private int[] children = new int[0];
+
+    /* The head the index was last extended to */
+    private ObjectId tip;
+
+    /**
+     * Add the commits reachable from head that are not in the index yet.
+     * 
+     * @return true if new commits were added 
+     */
+    boolean extend(Repository git, ObjectId head) throws IOException {
+        if (head == null || head.equals(tip))
+            return false;
+
+        if (tip != null && !isAncestor(git, tip, head))
+            clear();
+        
+        int known = n;
+        RevWalk rw = new RevWalk(git);
+        try {
+            rw.markStart(rw.parseCommit(head));
+            if (tip != null)
+                rw.markUninteresting(rw.parseCommit(tip));
+
+            RevCommit c;
+            while ((c = rw.next()) != null) {
+                int ci = add(c);
+                if (ci < known)
+                    continue;
+                times[ci] = (int) (c.getAuthorIdent().getWhen().getTime() / 1000);
+                for (RevCommit p : c.getParents())
+                    addEdge(ci, add(p));
+            }
+        } finally {
+            rw.release();
+        }
+
+        tip = head.copy();
+        if (n == known)
+            return false;
+        index();
+        return true;
+    }
+
+    /** The head the index was last extended to, or null */
+    ObjectId tip() {
+        return tip;
+    }
+    
+    /** Index of a commit, or -1 if the commit is not known */
+    int indexOf(AnyObjectId id) {
+        byte[] raw = new byte[ID_LEN];
+        id.copyRawTo(raw, 0);
+        int mask = table.length - 1;
+        for (int i = id.hashCode() & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (equals(table[i] - 1, raw))
+                return table[i] - 1;
+        }
+        return -1;
+    }
+
+    /** The id of the commit with the provided index */
+    ObjectId id(int idx) {
+        return ObjectId.fromRaw(ids, idx * ID_LEN);
+    }
+
+    /** The author time, in seconds, of the commit with the provided index */
+    int time(int idx) {
+        return times[idx];
+    }
+
+    /** Indexes of the parents of a commit, in commit order */
+    int[] parents(int idx) {
+        return Arrays.copyOfRange(parents, parentStart[idx], parentStart[idx + 1]);
+    }
+
+    /** Indexes of the children of a commit, sorted by author time */
+    int[] children(int idx) {
+        return Arrays.copyOfRange(children, childStart[idx], childStart[idx + 1]);
+    }
+
+    /** Number of commits in the index */
+    int size() {
+        return n;
+    }
+
+    /* Check whether a commit exists and is reachable from head */
+    private static boolean isAncestor(Repository git, ObjectId id, 
+            ObjectId head) throws IOException {
+        RevWalk rw = new RevWalk(git);
+        try {
+            return rw.isMergedInto(rw.parseCommit(id), rw.parseCommit(head));
+        } catch (MissingObjectException e) {
+            return false;
+        } finally {
+            rw.release();
+        }
+    }
+    
+    /* Drop all commits, so that the index is built again */
+    private void clear() {
+        n = 0;
+        m = 0;
+        tip = null;
+        Arrays.fill(table, 0);
+    }
+    
+    private int add(AnyObjectId id) {
+        int idx = indexOf(id);
+        if (idx >= 0)
+            return idx;
+
+        if (n == times.length) {
+            times = Arrays.copyOf(times, n * 2);
+            ids = Arrays.copyOf(ids, n * 2 * ID_LEN);
+        }
+        id.copyRawTo(ids, n * ID_LEN);
+        idx = n++;
+
+        if (n * 2 > table.length)
+            rehash(table.length * 2);
+        else
+            insert(idx);
+        return idx;
+    }
+
+    private void addEdge(int child, int parent) {
+        if (m == edgeChild.length) {
+            edgeChild = Arrays.copyOf(edgeChild, m * 2);
+            edgeParent = Arrays.copyOf(edgeParent, m * 2);
+        }
+        edgeChild[m] = child;
+        edgeParent[m] = parent;
+        m++;
+    }
+
+    private void insert(int idx) {
+        int mask = table.length - 1;
+        int i = hash(idx) & mask;
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = idx + 1;
+    }
+
+    private void rehash(int size) {
+        table = new int[size];
+        for (int i = 0; i < n; i++)
+            insert(i);
+    }
+
+    /* Same as AnyObjectId.hashCode(), the second word of the id */
+    private int hash(int idx) {
+        int o = idx * ID_LEN + 4;
+        return (ids[o] & 0xff) << 24 | (ids[o + 1] & 0xff) << 16
+                | (ids[o + 2] & 0xff) << 8 | (ids[o + 3] & 0xff);
+    }
+
+    private boolean equals(int idx, byte[] raw) {
+        int o = idx * ID_LEN;
+        for (int i = 0; i < ID_LEN; i++)
+            if (ids[o + i] != raw[i])
+                return false;
+        return true;
+    }
+
+    /** Rebuild the CSR arrays from the edge list */
+    private void index() {
+        parentStart = new int[n + 1];
+        childStart = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            parentStart[edgeChild[e] + 1]++;
+            childStart[edgeParent[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            parentStart[i + 1] += parentStart[i];
+            childStart[i + 1] += childStart[i];
+        }
+
+        parents = new int[m];
+        children = new int[m];
+        int[] pfill = Arrays.copyOf(parentStart, n);
+        int[] cfill = Arrays.copyOf(childStart, n);
+        for (int e = 0; e < m; e++) {
+            parents[pfill[edgeChild[e]]++] = edgeParent[e];
+            children[cfill[edgeParent[e]]++] = edgeChild[e];
+        }
+
+        // Most commits have one or two children, insertion sort is enough
+        for (int i = 0; i < n; i++) {
+            for (int j = childStart[i] + 1; j < childStart[i + 1]; j++) {
+                int c = children[j];
+                int k = j - 1;
+                while (k >= childStart[i] && times[children[k]] > times[c]) {
+                    children[k + 1] = children[k];
+                    k--;
+                }
+                children[k + 1] = c;
+            }
+        }
+    }
+
+    /** Write the index to a file */
+    void save(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            byte[] raw = new byte[ID_LEN];
+            tip.copyRawTo(raw, 0);
+            out.write(raw);
+            out.writeInt(n);
+            out.write(ids, 0, n * ID_LEN);
+            for (int i = 0; i < n; i++)
+                out.writeInt(times[i]);
+            out.writeInt(m);
+            for (int e = 0; e < m; e++) {
+                out.writeInt(edgeChild[e]);
+                out.writeInt(edgeParent[e]);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(f)) {
+            f.delete();
+            if (!tmp.renameTo(f))
+                throw new IOException("Cannot rename " + tmp + " to " + f);
+        }
+    }
+
+    /**
+     * Read an index previously written with {@link #save(File)}.
+     * 
+     * @return The index, or null if the file is not a commit graph index
+     */
+    static CommitGraph load(File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(f)));
+        try {
+            if (in.readInt() != MAGIC)
+                return null;
+
+            CommitGraph g = new CommitGraph();
+            byte[] raw = new byte[ID_LEN];
+            in.readFully(raw);
+            g.tip = ObjectId.fromRaw(raw);
+
+            g.n = in.readInt();
+            g.ids = new byte[Math.max(g.n, 1) * ID_LEN];
+            in.readFully(g.ids, 0, g.n * ID_LEN);
+            g.times = new int[Math.max(g.n, 1)];
+            for (int i = 0; i < g.n; i++)
+                g.times[i] = in.readInt();
+
+            g.m = in.readInt();
+            g.edgeChild = new int[Math.max(g.m, 1)];
+            g.edgeParent = new int[Math.max(g.m, 1)];
+            for (int e = 0; e < g.m; e++) {
+                g.edgeChild[e] = in.readInt();
+                g.edgeParent[e] = in.readInt();
+            }
+
+            int size = 2048;
+            while (size < g.n * 2)
+                size *= 2;
+            g.rehash(size);
+            g.index();
+            return g;
+        } finally {
+            in.close();
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
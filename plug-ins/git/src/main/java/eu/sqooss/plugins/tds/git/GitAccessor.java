@@ -37,7 +37,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -102,7 +101,11 @@ public class GitAccessor implements SCMAccessor {
     private Repository git = null;
     private Logger logger = null;
     
-    private Map<String, List<String>> childrenOf;
+    private CommitGraph graph;
+    
+    private Map<String, String> tags;
+    private long tagsStamp;
+    private List<File> tagDirs;
     
     static {
         supportedSchemes = new ArrayList<URI>();
@@ -315,6 +318,36 @@ public class GitAccessor implements SCMAccessor {
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
                FileNotFoundException {return;}
+
+    /**
+     * The content id of a file is the id of its blob. 
+     * {@inheritDoc}
+     */
+    public String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException {
+
+        if (!isValidRevision(revision))
+            throw new InvalidRepositoryException(repoPath, 
+                    "The provided revision is not valid: " + revision);
+
+        String path = toGitPath(repoPath);
+        if (path.isEmpty())
+            return null;
+
+        RevTree a = resolveGitRev(revision.getUniqueId()).getTree();
+        TreeWalk tw = null;
+        try {
+            tw = TreeWalk.forPath(git, path, a);
+            if (tw == null || !tw.getFileMode(0).equals(FileMode.REGULAR_FILE))
+                return null;
+            return tw.getObjectId(0).getName();
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(this.uri.toString(),
+                    e.getMessage());
+        } finally {
+            if (tw != null) tw.release();
+        }
+    }
     
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
     throws InvalidProjectRevisionException, InvalidRepositoryException  {
@@ -442,20 +475,71 @@ public class GitAccessor implements SCMAccessor {
     
     /**
      * Get a Map <code>{revisionId -> tagname}</code> for all revisions that 
-     * are marked with a tag 
+     * are marked with a tag. The map is cached and only rebuilt when the
+     * repository's tags change; it must not be modified.
      */
-    public Map<String, String> allTags() {
-    	Map<String, Ref> all = git.getAllRefs();
-		Map<String, String> result = new HashMap<String, String>();
-		
-		for (String ref : all.keySet()) {
-			if (!ref.contains("/tags/"))
-				continue;
-			String tagname = ref.substring(ref.lastIndexOf('/') + 1);
-			result.put(all.get(ref).getObjectId().getName(), tagname);
-		}
-		
-		return result;
+    public synchronized Map<String, String> allTags() {
+        if (tags != null && tagsStamp() == tagsStamp)
+            return tags;
+        
+        tags = null;
+        long stamp = tagsStamp();
+        long start = System.currentTimeMillis();
+        Map<String, Ref> all = git.getTags();
+        Map<String, String> result = new HashMap<String, String>(all.size() * 2);
+        
+        for (Ref ref : all.values()) {
+            String tagname = ref.getName().substring(
+                    ref.getName().lastIndexOf('/') + 1);
+            result.put(ref.getObjectId().getName(), tagname);
+        }
+        
+        tags = Collections.unmodifiableMap(result);
+        tagsStamp = stamp;
+        debug("allTags(): " + result.size() + " tags, " + 
+                (System.currentTimeMillis() - start) + " msec");
+        return tags;
+    }
+    
+    /**
+     * Get the name of the tag that marks the provided revision.
+     * 
+     * @return The tag name or null if the revision is not tagged
+     */
+    public String getTag(String revisionId) {
+        return allTags().get(revisionId);
+    }
+    
+    /*
+     * A cheap fingerprint of the state of the tag refs: the modification 
+     * time and size of the packed refs file and the modification times of
+     * the loose tag directories, which change whenever a tag is written
+     * or removed. The list of loose tag directories is refreshed when the
+     * tags are reloaded; new directories change their parent's time. 
+     */
+    private long tagsStamp() {
+        File packed = new File(git.getDirectory(), Constants.PACKED_REFS);
+        long stamp = packed.lastModified() * 31 + packed.length();
+        
+        if (tags == null) {
+            tagDirs = new ArrayList<File>();
+            List<File> dirs = new ArrayList<File>();
+            dirs.add(new File(git.getDirectory(), Constants.R_TAGS));
+            while (!dirs.isEmpty()) {
+                File dir = dirs.remove(dirs.size() - 1);
+                tagDirs.add(dir);
+                File[] entries = dir.listFiles();
+                if (entries == null)
+                    continue;
+                for (File f : entries)
+                    if (f.isDirectory())
+                        dirs.add(f);
+            }
+        }
+        
+        for (File dir : tagDirs)
+            stamp = stamp * 31 + dir.lastModified();
+        return stamp;
     }
     
     /**
@@ -464,62 +548,66 @@ public class GitAccessor implements SCMAccessor {
      * first entry corresponds to the first commit that is the immediate
      * child of the provided commit.
      * 
-     * <b>Warning:</b> This method can cause the accessor to use a lot 
-     * of memory in very large repositories, as it calculates and 
-     * caches all parent-childrelationships beforehand. 
+     * The parent-child relationships are kept in a compact index, which 
+     * is built on first use, saved in the repository's Git directory and
+     * extended with new commits whenever the repository HEAD moves.
      * 
      * @throws AccessorException When an error occurs during 
      */
-    public String[] getCommitChidren(String revisionId) throws AccessorException {
-    	if (childrenOf == null) {
-            childrenOf = new HashMap<String, List<String>>();
-    		resolveChildren();
-    	}
-    	
-    	Revision[] children = new Revision[childrenOf.get(revisionId).size()];
-    	int i = 0;
-    	for (String childid : childrenOf.get(revisionId)) {
-    		children[i] = getRevision(resolveGitRev(childid), false);
-    		i++;
-    	}
-    	
-    	Arrays.sort(children, children[0]);
-    	
-    	String[] chIds = new String[children.length];
-    	i = 0;
-    	for (Revision r : children) {
-    		chIds[i] = r.getUniqueId();
-    		i++;
-    	}
-    	
-    	return chIds;
+    public synchronized String[] getCommitChidren(String revisionId) 
+    throws AccessorException {
+        CommitGraph g = commitGraph();
+        RevCommit c = resolveGitRev(revisionId);
+        int idx = (c == null) ? -1 : g.indexOf(c);
+        
+        if (idx < 0)
+            return new String[0];
+        
+        int[] children = g.children(idx);
+        String[] chIds = new String[children.length];
+        for (int i = 0; i < children.length; i++)
+            chIds[i] = g.id(children[i]).getName();
+        
+        return chIds;
     }
     
-    private void resolveChildren() throws AccessorException {
-    	Long start = System.currentTimeMillis();
-    	RevWalk rw = new RevWalk(git);
-    	try {
-    		ObjectId revId = git.resolve(Constants.HEAD);
-            rw.sort(RevSort.COMMIT_TIME_DESC); //Doesn't really do anything
-            rw.markStart(rw.parseCommit(revId));
-            RevCommit c;
-            
-            while((c = rw.next()) != null) {
-            	for (RevCommit parent : c.getParents()) {
-            		if (!childrenOf.containsKey(parent.getName())) {
-            			childrenOf.put(parent.getName(), new ArrayList<String>());
-            		}
-            		childrenOf.get(parent.getName()).add(c.getName());
-            	}
+    /*
+     * Get the commit graph index, loading it from the repository or building
+     * it if required, and extend it up to the current HEAD.
+     */
+    private CommitGraph commitGraph() throws AccessorException {
+        File f = new File(git.getDirectory(), CommitGraph.FILE_NAME);
+        
+        if (graph == null && f.exists()) {
+            try {
+                graph = CommitGraph.load(f);
+            } catch (IOException e) {
+                warn("Cannot read commit graph " + f + ": " + e.getMessage());
             }
-    	} catch (Exception e) {
-    		throw new AccessorException(this.getClass(), "Error getting " +
-    				"commit children: " + e.getMessage());
-		} finally {
-    		rw.release();
-    	}
-    	Long msec = System.currentTimeMillis() - start;
-    	debug("resolveChildren(): " + msec + " msec");
+        }
+        
+        if (graph == null)
+            graph = new CommitGraph();
+        
+        long start = System.currentTimeMillis();
+        boolean updated;
+        try {
+            updated = graph.extend(git, git.resolve(Constants.HEAD));
+        } catch (Exception e) {
+            throw new AccessorException(this.getClass(), "Error getting " +
+                    "commit children: " + e.getMessage());
+        }
+        
+        if (updated) {
+            debug("commitGraph(): " + graph.size() + " commits, " + 
+                    (System.currentTimeMillis() - start) + " msec");
+            try {
+                graph.save(f);
+            } catch (IOException e) {
+                warn("Cannot save commit graph " + f + ": " + e.getMessage());
+            }
+        }
+        return graph;
     }
     
     /* Accessor internal methods*/
@@ -33,9 +33,16 @@ package eu.sqooss.plugins.updater.git;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
@@ -83,6 +90,18 @@ public class GitUpdater implements MetadataUpdater {
     private DBService dbs;
     private float progress;
     
+    /* Revision id -> ProjectVersion id for the versions stored so far */
+    private Map<String, Long> versionIds;
+    
+    /*
+     * If set to a positive number, the updater works in bulk import mode
+     * and commits the DB session every that many revisions.
+     */
+    private static final String BULK_PROPERTY = "eu.sqooss.updater.git.bulk";
+    
+    /* Revisions extracted ahead of the one being stored, per thread */
+    private static final int PIPELINE_DEPTH = 4;
+    
     /*
      * Possible set of valid file state transitions
      */
@@ -190,21 +209,21 @@ public class GitUpdater implements MetadataUpdater {
         CommitLog commitLog = git.getCommitLog("", from, to);
         if(!dbs.isDBSessionActive()) dbs.startDBSession();
 
+        loadVersionIds();
+        
+        int commitInterval = bulkCommitInterval();
+        if (commitInterval > 0) {
+            bulkUpdate(commitLog, commitInterval);
+            return;
+        }
+        
         for (Revision entry : commitLog) {
-        	if (ProjectVersion.getVersionByRevision(project, entry.getUniqueId()) != null) {
+        	if (versionIds.containsKey(entry.getUniqueId())) {
         		info("Skipping processed revision: " + entry.getUniqueId());
         		continue;
         	}
         	
-            ProjectVersion pv = processOneRevision(entry);
-            
-            processCopiedFiles(git, entry, pv, pv.getPreviousVersion());
-            
-            processRevisionFiles(git, entry, pv);
-            
-            replayLog(pv);
-            
-            updateValidUntil(pv, pv.getVersionFiles());
+            processRevision(entry, null);
 
             if (!dbs.commitDBSession()) {
                 warn("Intermediate commit failed, failing update");
@@ -217,6 +236,180 @@ public class GitUpdater implements MetadataUpdater {
             numRevisions++;
         }
     }
+    
+    /**
+     * Bulk import mode. The tree diff of each revision, its copy operations
+     * and the types of its changed paths are extracted from the repository
+     * on a thread pool, a few revisions ahead of the one being stored, and
+     * the DB session is committed every
+     * <code>commitInterval</code> revisions instead of after every
+     * revision. Between commits, the session is flushed and cleared after
+     * every revision, so that it does not accumulate the entities of the
+     * whole batch. Revisions are still stored in commit log order, so an
+     * interrupted import resumes from the last committed revision. 
+     */
+    private void bulkUpdate(CommitLog commitLog, int commitInterval) 
+        throws InvalidProjectRevisionException, InvalidRepositoryException, AccessorException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        LinkedList<Pair<Revision, Future<Map<String, SCMNodeType>>>> pipeline = 
+            new LinkedList<Pair<Revision, Future<Map<String, SCMNodeType>>>>();
+        Iterator<Revision> i = commitLog.iterator();
+        int numRevisions = 0, uncommitted = 0;
+        
+        info("Bulk import: " + threads + " threads, committing every " 
+                + commitInterval + " revisions");
+        try {
+            while (true) {
+                while (pipeline.size() < threads * PIPELINE_DEPTH && i.hasNext()) {
+                    Revision entry = i.next();
+                    if (versionIds.containsKey(entry.getUniqueId())) {
+                        info("Skipping processed revision: " + entry.getUniqueId());
+                        numRevisions++;
+                        continue;
+                    }
+                    pipeline.add(new Pair<Revision, Future<Map<String, SCMNodeType>>>(
+                            entry, pool.submit(new RevisionResolver(entry))));
+                }
+                
+                if (pipeline.isEmpty())
+                    break;
+                
+                Pair<Revision, Future<Map<String, SCMNodeType>>> next = 
+                    pipeline.removeFirst();
+                Map<String, SCMNodeType> nodeTypes = null;
+                try {
+                    nodeTypes = next.second.get();
+                } catch (ExecutionException e) {
+                    warn("Cannot resolve revision " + next.first.getUniqueId() 
+                            + " in the background: " + e.getCause());
+                } catch (InterruptedException e) {
+                    warn("Interrupted, failing update");
+                    dbs.rollbackDBSession();
+                    return;
+                }
+                
+                processRevision(next.first, nodeTypes);
+                numRevisions++;
+                
+                if (++uncommitted >= commitInterval) {
+                    if (!dbs.commitDBSession()) {
+                        warn("Intermediate commit failed, failing update");
+                        return;
+                    }
+                    dbs.startDBSession();
+                    uncommitted = 0;
+                } else if (!dbs.flushDBSession()) {
+                    warn("Intermediate flush failed, failing update");
+                    dbs.rollbackDBSession();
+                    return;
+                }
+                progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
+            }
+            
+            if (uncommitted > 0) {
+                if (!dbs.commitDBSession()) {
+                    warn("Final commit failed, failing update");
+                    return;
+                }
+                dbs.startDBSession();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Extracts the changed paths of a revision, its copy operations and 
+     * the node types of the changed paths. 
+     */
+    private class RevisionResolver implements Callable<Map<String, SCMNodeType>> {
+        private Revision entry;
+        
+        public RevisionResolver(Revision entry) {
+            this.entry = entry;
+        }
+        
+        public Map<String, SCMNodeType> call() throws Exception {
+            /* Revisions from the commit log are resolved lazily: the tree 
+             * diff against the parent and the rename detection run on the 
+             * first access to the changed paths or the copy operations. 
+             * Resolve here, so that it does not run on the updater thread. */
+            entry.getChangedPathsStatus();
+            entry.getCopyOperations();
+            
+            Map<String, SCMNodeType> types = new HashMap<String, SCMNodeType>();
+            for (String chPath : entry.getChangedPaths())
+                types.put(chPath, git.getNodeType(chPath, entry));
+            return types;
+        }
+    }
+    
+    /**
+     * Store a single revision and its files.
+     * 
+     * @param nodeTypes The node types of the changed paths, if already 
+     * known, or null 
+     */
+    private void processRevision(Revision entry, Map<String, SCMNodeType> nodeTypes) 
+        throws InvalidProjectRevisionException, InvalidRepositoryException, AccessorException {
+        ProjectVersion pv = processOneRevision(entry);
+        versionIds.put(pv.getRevisionId(), pv.getId());
+        
+        processCopiedFiles(git, entry, pv, pv.getPreviousVersion());
+        
+        processRevisionFiles(git, entry, pv, nodeTypes);
+        
+        replayLog(pv);
+        
+        updateValidUntil(pv, pv.getVersionFiles());
+    }
+    
+    /**
+     * Load the revision ids of the versions already stored for the project.
+     */
+    private void loadVersionIds() {
+        versionIds = new HashMap<String, Long>();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", project);
+        List<?> rows = dbs.doHQL("select pv.revisionId, pv.id " +
+        		"from ProjectVersion pv where pv.project = :project", params);
+        for (Object row : rows) {
+            Object[] r = (Object[]) row;
+            versionIds.put((String) r[0], (Long) r[1]);
+        }
+    }
+    
+    /**
+     * Get the version for a revision through the in-memory revision map,
+     * falling back to the database for unknown revisions.
+     */
+    private ProjectVersion versionByRevision(String revisionId) {
+        Long id = versionIds.get(revisionId);
+        if (id != null)
+            return dbs.findObjectById(ProjectVersion.class, id);
+        
+        ProjectVersion pv = ProjectVersion.getVersionByRevision(project, revisionId);
+        if (pv != null)
+            versionIds.put(revisionId, pv.getId());
+        return pv;
+    }
+    
+    /**
+     * Number of revisions to import between DB commits in bulk mode, 0 if 
+     * bulk mode is disabled. 
+     */
+    private int bulkCommitInterval() {
+        String prop = System.getProperty(BULK_PROPERTY);
+        if (prop == null)
+            return 0;
+        try {
+            return Integer.parseInt(prop.trim());
+        } catch (NumberFormatException e) {
+            warn("Not correct value for property " + BULK_PROPERTY);
+            return 0;
+        }
+    }
 
     private ProjectVersion processOneRevision(Revision entry) 
     	throws AccessorException, InvalidProjectRevisionException {
@@ -239,7 +432,7 @@ public class GitUpdater implements MetadataUpdater {
         dbs.addRecord(pv);
         
         //Tags
-        String tag = git.allTags().get(entry.getUniqueId());
+        String tag = git.getTag(entry.getUniqueId());
         if (tag != null) {
             Tag t = new Tag(pv);
             t.setName(tag);
@@ -256,7 +449,7 @@ public class GitUpdater implements MetadataUpdater {
               
         //Branches and parent-child relationships
         for (String parentId : entry.getParentIds()) {
-            ProjectVersion parent = ProjectVersion.getVersionByRevision(project, parentId);
+            ProjectVersion parent = versionByRevision(parentId);
             ProjectVersionParent pvp = new ProjectVersionParent(pv, parent);
             pv.getParents().add(pvp);
             
@@ -410,8 +603,8 @@ public class GitUpdater implements MetadataUpdater {
                  * and directories as added
                  */
                 handleDirCopy(curVersion, 
-                        ProjectVersion.getVersionByRevision(curVersion.getProject(),
-                        cce.fromRev().getUniqueId()), from, to, copyFrom);
+                        versionByRevision(cce.fromRev().getUniqueId()), 
+                        from, to, copyFrom);
             } else {
                 /*
                  * Create a new entry at the new location and mark the new 
@@ -441,11 +634,16 @@ public class GitUpdater implements MetadataUpdater {
     }
     
     private void processRevisionFiles(SCMAccessor scm, Revision entry,
-            ProjectVersion curVersion) throws InvalidRepositoryException {
+            ProjectVersion curVersion, Map<String, SCMNodeType> nodeTypes) 
+        throws InvalidRepositoryException {
        
         for (String chPath : entry.getChangedPaths()) {
             
-            SCMNodeType t = scm.getNodeType(chPath, entry);
+            SCMNodeType t = null;
+            if (nodeTypes != null)
+                t = nodeTypes.get(chPath);
+            if (t == null)
+                t = scm.getNodeType(chPath, entry);
 
             ProjectFile file = addFile(curVersion, chPath,
                     ProjectFileState.fromPathChangeType(entry.getChangedPathsStatus().get(chPath)), 
@@ -320,6 +320,20 @@ public class TestGitAccessor extends TestGitSetup {
 		assertFalse(a.equals(b)); //This should fail when the correspoding bug in Jgit gets fixed*/
     }
     
+    @Test
+    public void testGetContentId() throws InvalidRepositoryException {
+        Revision r = git.newRevision("33a59fd07d8d75e58a5b1edbcc3c5798c98aa8bf");
+
+        String id = git.getContentId("/contrib/colordiff/README", r);
+        assertNotNull(id);
+        assertEquals(40, id.length());
+        assertEquals(id, git.getContentId("contrib/colordiff/README", r));
+
+        assertNull(git.getContentId("/compat", r));
+        assertNull(git.getContentId("/alitheia/core/test", r));
+        assertNull(git.getContentId("/", r));
+    }
+
     @Test
     public void testGetTags() {
     	Map<String, String> tags = git.allTags();
@@ -0,0 +1,187 @@
+package eu.sqooss.plugins.tds.git;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitGraphTest {
+
+    private File dir;
+    private FileRepository repo;
+    private ObjectId tree;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("commitgraph", "");
+        dir.delete();
+        repo = new FileRepository(new File(dir, Constants.DOT_GIT));
+        repo.create();
+        
+        ObjectInserter ins = repo.newObjectInserter();
+        try {
+            tree = ins.insert(Constants.OBJ_TREE, new byte[0]);
+            ins.flush();
+        } finally {
+            ins.release();
+        }
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        repo.close();
+        FileUtils.deleteDirectory(dir);
+    }
+    
+    /* Create a commit authored at the provided time, in seconds */
+    private ObjectId commit(int time, ObjectId... parents) throws IOException {
+        PersonIdent who = new PersonIdent("test", "test@example.com", 
+                time * 1000L, 0);
+        CommitBuilder c = new CommitBuilder();
+        c.setTreeId(tree);
+        c.setParentIds(parents);
+        c.setAuthor(who);
+        c.setCommitter(who);
+        c.setMessage("commit " + time);
+        
+        ObjectInserter ins = repo.newObjectInserter();
+        try {
+            ObjectId id = ins.insert(Constants.OBJ_COMMIT, c.build());
+            ins.flush();
+            return id;
+        } finally {
+            ins.release();
+        }
+    }
+    
+    private int[] indexes(CommitGraph g, ObjectId... ids) {
+        int[] idx = new int[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            idx[i] = g.indexOf(ids[i]);
+        return idx;
+    }
+    
+    @Test
+    public void testBuild() throws IOException {
+        /* a - b - d, a - c - d, c branches later than b */
+        ObjectId a = commit(100);
+        ObjectId b = commit(200, a);
+        ObjectId c = commit(150, a);
+        ObjectId d = commit(300, b, c);
+        
+        CommitGraph g = new CommitGraph();
+        assertTrue(g.extend(repo, d));
+        assertEquals(4, g.size());
+        assertEquals(d, g.tip());
+        
+        int ia = g.indexOf(a), id = g.indexOf(d);
+        assertEquals(a, g.id(ia));
+        assertEquals(100, g.time(ia));
+        assertArrayEquals(indexes(g, b, c), g.parents(id));
+        assertArrayEquals(new int[0], g.parents(ia));
+        /* Children are sorted by author time */
+        assertArrayEquals(indexes(g, c, b), g.children(ia));
+        assertArrayEquals(indexes(g, d), g.children(g.indexOf(c)));
+        assertEquals(-1, g.indexOf(tree));
+        
+        assertFalse(g.extend(repo, d));
+    }
+    
+    @Test
+    public void testSaveLoad() throws IOException {
+        ObjectId a = commit(100);
+        ObjectId b = commit(200, a);
+        ObjectId c = commit(150, a);
+        ObjectId d = commit(300, b, c);
+        
+        CommitGraph g = new CommitGraph();
+        g.extend(repo, d);
+        File f = new File(dir, CommitGraph.FILE_NAME);
+        g.save(f);
+        
+        CommitGraph l = CommitGraph.load(f);
+        assertEquals(g.size(), l.size());
+        assertEquals(d, l.tip());
+        for (ObjectId o : new ObjectId[] {a, b, c, d}) {
+            int i = l.indexOf(o);
+            assertEquals(g.indexOf(o), i);
+            assertEquals(g.time(i), l.time(i));
+            assertArrayEquals(g.parents(i), l.parents(i));
+            assertArrayEquals(g.children(i), l.children(i));
+        }
+        assertFalse(l.extend(repo, d));
+    }
+    
+    @Test
+    public void testExtend() throws IOException {
+        ObjectId a = commit(100);
+        ObjectId b = commit(200, a);
+        
+        CommitGraph g = new CommitGraph();
+        g.extend(repo, b);
+        int ia = g.indexOf(a), ib = g.indexOf(b);
+        
+        /* Enough commits to grow the arrays and the hash table */
+        ObjectId last = b;
+        for (int i = 0; i < 2000; i++)
+            last = commit(300 + i, last);
+        ObjectId side = commit(250, a);
+        ObjectId merge = commit(5000, last, side);
+        
+        assertTrue(g.extend(repo, merge));
+        assertEquals(2004, g.size());
+        assertEquals(ia, g.indexOf(a));
+        assertEquals(ib, g.indexOf(b));
+        assertArrayEquals(indexes(g, b, side), g.children(ia));
+        assertArrayEquals(indexes(g, last, side), g.parents(g.indexOf(merge)));
+        
+        File f = new File(dir, CommitGraph.FILE_NAME);
+        g.save(f);
+        CommitGraph l = CommitGraph.load(f);
+        assertEquals(2004, l.size());
+        assertArrayEquals(g.children(ia), l.children(ia));
+    }
+    
+    @Test
+    public void testRewrittenTip() throws IOException {
+        ObjectId a = commit(100);
+        ObjectId b = commit(200, a);
+        ObjectId c = commit(300, b);
+        
+        CommitGraph g = new CommitGraph();
+        g.extend(repo, c);
+        assertEquals(3, g.size());
+        
+        /* c is replaced by c2, b and c are not part of the history any more */
+        ObjectId b2 = commit(210, a);
+        ObjectId c2 = commit(310, b2);
+        assertTrue(g.extend(repo, c2));
+        
+        assertEquals(3, g.size());
+        assertEquals(c2, g.tip());
+        assertEquals(-1, g.indexOf(b));
+        assertEquals(-1, g.indexOf(c));
+        assertArrayEquals(indexes(g, b2), g.children(g.indexOf(a)));
+    }
+    
+    @Test
+    public void testLoadInvalid() throws IOException {
+        File f = new File(dir, CommitGraph.FILE_NAME);
+        FileUtils.writeStringToFile(f, "not a commit graph", "UTF-8");
+        assertEquals(null, CommitGraph.load(f));
+    }
+}
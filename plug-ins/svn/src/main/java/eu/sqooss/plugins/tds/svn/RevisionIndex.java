@@ -0,0 +1,308 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.plugins.tds.svn;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * A local, persistent index of SVN revision metadata: the date, the author
+ * and the number of changed paths of every revision in a repository. The
+ * index is filled incrementally from the repository log and can then
+ * answer revision to date and date to revision queries without contacting
+ * the repository.
+ * 
+ * Revisions are stored as fixed size records in a memory mapped file, the
+ * record for revision <i>n</i> being the <i>n</i>th one. Author names are
+ * stored once, in a separate file, and records refer to them by position.
+ * The record count in the file header is only updated after the
+ * corresponding records have been written, so an interrupted update
+ * leaves a consistent index behind.
+ * 
+ * Indexes are shared by all accessors to the same repository, as 
+ * identified by the repository UUID.
+ */
+class RevisionIndex {
+
+    private static final int MAGIC = 0x53565249; // SVRI
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private static Map<String, RevisionIndex> indexes = 
+        new HashMap<String, RevisionIndex>();
+
+    private File authorsFile;
+    private FileChannel channel;
+    private MappedByteBuffer records;
+    private long capacity;
+    private long size;
+
+    private List<String> authors = new ArrayList<String>();
+    private Map<String, Integer> authorIds = new HashMap<String, Integer>();
+    private DataOutputStream authorsOut;
+
+    /**
+     * Get the index for the repository with the provided UUID, stored in
+     * the provided directory. The index is created if it does not exist.
+     */
+    public static synchronized RevisionIndex open(File dir, String uuid) 
+        throws IOException {
+        RevisionIndex idx = indexes.get(uuid);
+        if (idx == null) {
+            dir.mkdirs();
+            idx = new RevisionIndex(new File(dir, uuid + ".rev"), 
+                    new File(dir, uuid + ".authors"));
+            indexes.put(uuid, idx);
+        }
+        return idx;
+    }
+
+    RevisionIndex(File recordsFile, File authorsFile) throws IOException {
+        this.authorsFile = authorsFile;
+        
+        RandomAccessFile raf = new RandomAccessFile(recordsFile, "rw");
+        channel = raf.getChannel();
+        if (channel.size() < HEADER_SIZE) {
+            map(INITIAL_CAPACITY);
+            records.putInt(0, MAGIC);
+            records.putInt(4, VERSION);
+            records.putLong(8, 0);
+        } else {
+            map(Math.max(INITIAL_CAPACITY, 
+                    (channel.size() - HEADER_SIZE) / RECORD_SIZE));
+            if (records.getInt(0) != MAGIC || records.getInt(4) != VERSION)
+                throw new IOException("Not a revision index: " + recordsFile);
+            size = records.getLong(8);
+        }
+
+        loadAuthors();
+    }
+
+    /**
+     * Read the author names written so far, discarding any partially
+     * written trailing entry.
+     */
+    private void loadAuthors() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(authorsFile, "rw");
+        long valid = 0;
+        try {
+            while (true) {
+                String author = in.readUTF();
+                authorIds.put(author, authors.size());
+                authors.add(author);
+                valid = in.getFilePointer();
+            }
+        } catch (EOFException e) {
+            in.setLength(valid);
+        } finally {
+            in.close();
+        }
+        authorsOut = new DataOutputStream(
+                new FileOutputStream(authorsFile, true));
+    }
+
+    private void map(long numRecords) throws IOException {
+        capacity = numRecords;
+        records = channel.map(FileChannel.MapMode.READ_WRITE, 0, 
+                HEADER_SIZE + capacity * RECORD_SIZE);
+    }
+
+    /**
+     * The number of indexed revisions. Revisions 0 to size() - 1 are
+     * indexed.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Append the metadata of the next revision to the index.
+     */
+    public synchronized void append(long revision, Date date, String author,
+            int changedPaths) throws IOException {
+        if (revision != size)
+            throw new IllegalArgumentException("Expected revision " + size 
+                    + ", got " + revision);
+
+        int authorId = -1;
+        if (author != null) {
+            Integer id = authorIds.get(author);
+            if (id == null) {
+                authorsOut.writeUTF(author);
+                authorsOut.flush();
+                id = authors.size();
+                authorIds.put(author, id);
+                authors.add(author);
+            }
+            authorId = id;
+        }
+
+        if (size == capacity) 
+            map(capacity * 2);
+
+        int pos = record(size);
+        records.putLong(pos, date == null ? Long.MIN_VALUE : date.getTime());
+        records.putInt(pos + 8, changedPaths);
+        records.putInt(pos + 12, authorId);
+        size++;
+        records.putLong(8, size);
+    }
+
+    /**
+     * Get the date of a revision, or null if the revision has not been
+     * indexed.
+     */
+    public synchronized Date getDate(long revision) {
+        if (revision < 0 || revision >= size)
+            return null;
+        long ts = records.getLong(record(revision));
+        return ts == Long.MIN_VALUE ? null : new Date(ts);
+    }
+
+    /**
+     * Get the author of a revision, or null if the revision has no
+     * author or has not been indexed.
+     */
+    public synchronized String getAuthor(long revision) {
+        if (revision < 0 || revision >= size)
+            return null;
+        int id = records.getInt(record(revision) + 12);
+        return id < 0 ? null : authors.get(id);
+    }
+
+    /**
+     * Get the number of paths changed by a revision, or -1 if the 
+     * revision has not been indexed.
+     */
+    public synchronized int getChangedPathCount(long revision) {
+        if (revision < 0 || revision >= size)
+            return -1;
+        return records.getInt(record(revision) + 8);
+    }
+
+    /**
+     * Get the youngest indexed revision whose date is not after the 
+     * provided date, or -1 if the date precedes all indexed revisions. As
+     * with Subversion's own dated revision lookup, revision dates are 
+     * assumed to increase with revision numbers.
+     */
+    public synchronized long getRevision(Date d) {
+        long ts = d.getTime();
+        long lo = 0, hi = size - 1, result = -1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            if (records.getLong(record(mid)) <= ts) {
+                result = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index all revisions up to the provided one, by reading the log of
+     * the provided repository. The repository must point to the 
+     * repository root, so that the log contains all revisions.
+     */
+    public synchronized void update(final SVNRepository repo, long upTo) 
+        throws SVNException, IOException {
+        if (upTo < size)
+            return;
+
+        final IOException[] error = new IOException[1];
+        repo.log(new String[] {""}, size, upTo, true, false, 
+                new ISVNLogEntryHandler() {
+            public void handleLogEntry(SVNLogEntry e) throws SVNException {
+                if (error[0] != null || e.getRevision() < size)
+                    return;
+                try {
+                    fillGap(repo, e.getRevision());
+                    append(e.getRevision(), e.getDate(), e.getAuthor(), 
+                            e.getChangedPaths().size());
+                } catch (IOException ioe) {
+                    error[0] = ioe;
+                }
+            }
+        });
+        if (error[0] != null)
+            throw error[0];
+        fillGap(repo, upTo + 1);
+    }
+
+    /*
+     * The log does not report revisions without changed paths, such as
+     * revision 0. Read their metadata from the revision properties.
+     */
+    private void fillGap(SVNRepository repo, long until) 
+        throws SVNException, IOException {
+        while (size < until) {
+            SVNPropertyValue date = repo.getRevisionPropertyValue(size, 
+                    SVNRevisionProperty.DATE);
+            SVNPropertyValue author = repo.getRevisionPropertyValue(size, 
+                    SVNRevisionProperty.AUTHOR);
+            append(size, 
+                    date == null ? null : SVNDate.parseDate(date.getString()),
+                    author == null ? null : author.getString(), 0);
+        }
+    }
+
+    private static int record(long revision) {
+        return (int) (HEADER_SIZE + revision * RECORD_SIZE);
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -40,8 +40,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -60,6 +58,7 @@ import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.ISVNReporterBaton;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -87,10 +86,18 @@ import eu.sqooss.service.tds.SCMNodeType;
 import eu.sqooss.service.util.FileUtils;
 
 public class SVNAccessorImpl implements SCMAccessor {
+    
+    private static final String REVISION_INDEX_PROPERTY = "eu.sqooss.tds.svn.revindex";
+    
     private String url;
     private String projectname;
     private SVNRepository svnRepository = null;
     private Logger logger = null;
+    
+    /* Local revision metadata index, see getRevisionIndex() */
+    private File revIndexDir = null;
+    private RevisionIndex revIndex = null;
+    private SVNRepository rootRepository = null;
 
     private static List<URI> supportedSchemes;
     
@@ -119,6 +126,11 @@ public class SVNAccessorImpl implements SCMAccessor {
 
         this.url = convertURI(dataURL);
         this.projectname = name;
+        
+        String idxDir = System.getProperty(REVISION_INDEX_PROPERTY);
+        if (idxDir != null && idxDir.length() > 0) {
+            revIndexDir = new File(idxDir);
+        }
         if (logger != null) {
             logger.info("Created SCMAccessor for " + url);
         }     
@@ -171,6 +183,20 @@ public class SVNAccessorImpl implements SCMAccessor {
                     "Can only resolve revisions with a valid date", getClass());
         }
 
+        RevisionIndex idx = getRevisionIndex(-1);
+        if (idx != null) {
+            /* Revisions after the last indexed one may be younger */
+            Date last = idx.getDate(idx.size() - 1);
+            if (last == null || !r.getDate().before(last)) {
+                idx = getRevisionIndex(getHeadSVNRevision());
+            }
+            if (idx != null) {
+                long revno = idx.getRevision(r.getDate());
+                if (revno >= 0)
+                    return revno;
+            }
+        }
+
         long revno = -1;
         try {
             revno = svnRepository.getDatedRevision(r.getDate());
@@ -192,18 +218,18 @@ public class SVNAccessorImpl implements SCMAccessor {
         }
 
         Date d = null;
-        String date = "";
+        RevisionIndex idx = getRevisionIndex(r.getSVNRevision());
+        if (idx != null) {
+            d = idx.getDate(r.getSVNRevision());
+            if (d != null)
+                return d;
+        }
+        
         try {
-            date = svnRepository.getRevisionPropertyValue(r.getSVNRevision(),
-                    SVNRevisionProperty.DATE).getString();
-            SimpleDateFormat dateParser = new SimpleDateFormat("y-M-d'T'H:m:s.S'Z'");
-            d = dateParser.parse(date);
+            d = SVNDate.parseDate(svnRepository.getRevisionPropertyValue(
+                    r.getSVNRevision(), SVNRevisionProperty.DATE).getString());
         } catch (SVNException e) {
             throw new InvalidRepositoryException(url, e.getMessage());
-        } catch (ParseException pe) {
-            throw new InvalidProjectRevisionException("Cannot parse date "
-                    + date + " for revision " + r.getSVNRevision() + " "
-                    + pe.getMessage(), getClass());
         }
         if (d == null) {
             logger.warn("Resolved date is null");
@@ -249,6 +275,51 @@ public class SVNAccessorImpl implements SCMAccessor {
         return 0;
     }
     
+    /**
+     * Get the local revision metadata index, updated to include the
+     * provided revision. Returns null if the index is disabled or not
+     * available, in which case revision metadata must be read from the
+     * repository. The index is filled from the log of the repository root,
+     * as project URLs may point to a part of the repository only.
+     */
+    private RevisionIndex getRevisionIndex(long upTo) {
+        if (revIndexDir == null) {
+            return null;
+        }
+        try {
+            if (revIndex == null) {
+                rootRepository = SVNRepositoryFactory.create(
+                        svnRepository.getRepositoryRoot(true));
+                revIndex = RevisionIndex.open(revIndexDir, 
+                        svnRepository.getRepositoryUUID(true));
+            }
+            if (upTo >= revIndex.size()) {
+                revIndex.update(rootRepository, upTo);
+            }
+            return revIndex;
+        } catch (SVNException e) {
+            logger.warn("Cannot update revision index for " + url + ": "
+                    + e.getMessage());
+            if (revIndex == null) {
+                revIndexDir = null;
+            }
+        } catch (IOException e) {
+            logger.warn("Revision index for " + url + " not usable, " +
+                    "disabling: " + e.getMessage());
+            revIndexDir = null;
+            revIndex = null;
+        }
+        return null;
+    }
+    
+    /**
+     * Check whether a revision is known to exist without contacting the
+     * repository.
+     */
+    private boolean isIndexed(long revision) {
+        return revIndex != null && revision >= 0 && revision < revIndex.size();
+    }
+    
 
     /**
      * Resolve all revision fields from the repo. 
@@ -277,13 +348,15 @@ public class SVNAccessorImpl implements SCMAccessor {
         long l = -1;
         try {
             if (svnrev.getSVNRevision() != -1) {
-                if (svnrev.getSVNRevision() > getHeadSVNRevision()) {
+                if (!isIndexed(svnrev.getSVNRevision()) && 
+                        svnrev.getSVNRevision() > getHeadSVNRevision()) {
                     logger.error(String.valueOf(svnrev.getSVNRevision())
                             + " > HEAD");
                     return null;
                 }
                 
-                if (svnrev.getSVNRevision() < getFirstSVNRevision()) {
+                if (!isIndexed(svnrev.getSVNRevision()) &&
+                        svnrev.getSVNRevision() < getFirstSVNRevision()) {
                     logger.error(String.valueOf(svnrev.getSVNRevision())
                             + " < 0");
                     return null;
@@ -302,6 +375,10 @@ public class SVNAccessorImpl implements SCMAccessor {
                 if (l < 0) {
                     return null;
                 }
+                svnrev = new SVNProjectRevision(l);
+                if (l == 0) {
+                    d = resolveRevisionDate(svnrev);
+                }
             }
             
             if (svnrev.getSVNRevision() == 0) {
@@ -313,7 +390,8 @@ public class SVNAccessorImpl implements SCMAccessor {
             }
             
             List<SVNLogEntry> log = Collections.EMPTY_LIST;
-            if (svnrev.getSVNRevision() + 1 < getHeadSVNRevision())
+            if (isIndexed(svnrev.getSVNRevision() + 2) || 
+                    svnrev.getSVNRevision() + 1 < getHeadSVNRevision())
                 log = getSVNLog("", svnrev.getSVNRevision(), svnrev.getSVNRevision() + 1);
             else 
                 log = getSVNLog("", svnrev.getSVNRevision(), -1);
@@ -368,7 +446,8 @@ public class SVNAccessorImpl implements SCMAccessor {
         SVNProjectRevision svnr = (SVNProjectRevision)r;
         
         try {
-            if (svnr.getSVNRevision() + 1 > getHeadSVNRevision()) {
+            if (!isIndexed(svnr.getSVNRevision() + 1) && 
+                    svnr.getSVNRevision() + 1 > getHeadSVNRevision()) {
                 throw new InvalidProjectRevisionException(
                         "Cannot get next revision of HEAD", 
                         getClass());
@@ -386,7 +465,8 @@ public class SVNAccessorImpl implements SCMAccessor {
         SVNProjectRevision svnr = (SVNProjectRevision)r;
         
         try {
-            if (svnr.getSVNRevision() - 1 < getFirstSVNRevision()) {
+            if (!isIndexed(svnr.getSVNRevision() - 1) &&
+                    svnr.getSVNRevision() - 1 < getFirstSVNRevision()) {
                 throw new InvalidProjectRevisionException(
                         "Cannot get previous revision of revision 1", 
                         getClass());
@@ -627,6 +707,15 @@ public class SVNAccessorImpl implements SCMAccessor {
         // Stream was closed by other getFile()
     }
 
+    /**
+     * SVN does not identify file contents, path and revision do. 
+     * {@inheritDoc}
+     */
+    public String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException {
+        return null;
+    }
+
     /**{@inheritDoc}*/
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
         throws InvalidProjectRevisionException,
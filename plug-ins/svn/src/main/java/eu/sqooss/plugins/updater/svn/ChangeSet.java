@@ -0,0 +1,232 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.plugins.updater.svn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileState;
+
+/**
+ * The project file entries recorded while processing a single revision.
+ * Entries are kept in insertion order and are also indexed by path and by
+ * the path of their enclosing directory, so that duplicate detection and
+ * directory listings take time proportional to the number of entries
+ * involved rather than to the size of the revision. This matters for
+ * revisions that copy large trees, which can record hundreds of thousands
+ * of entries.
+ * 
+ * Removed entries are only marked as such; they are skipped by all lookups
+ * and dropped from the insertion order list the next time it is requested.
+ * Lookups return copies, so callers can add entries while iterating over
+ * their results.
+ */
+class ChangeSet implements Iterable<ProjectFile> {
+
+    /* 
+     * State weights to use when evaluating duplicate project file entries
+     * in a single revision
+     */
+    private static Map<Integer, Integer> stateWeights;
+
+    static {
+        stateWeights = new HashMap<Integer, Integer>();
+        stateWeights.put(ProjectFileState.STATE_ADDED, 2);
+        stateWeights.put(ProjectFileState.STATE_MODIFIED, 4);
+        stateWeights.put(ProjectFileState.STATE_REPLACED, 8);
+        stateWeights.put(ProjectFileState.STATE_DELETED, 16);
+    }
+
+    private List<ProjectFile> files = new ArrayList<ProjectFile>();
+    private Map<String, List<ProjectFile>> byPath = 
+        new HashMap<String, List<ProjectFile>>();
+    private Map<String, List<ProjectFile>> byDir = 
+        new HashMap<String, List<ProjectFile>>();
+    private Set<ProjectFile> removed = 
+        Collections.newSetFromMap(new IdentityHashMap<ProjectFile, Boolean>());
+
+    public void add(ProjectFile pf) {
+        files.add(pf);
+        index(byPath, pf.getFileName(), pf);
+        index(byDir, pf.getDir().getPath(), pf);
+    }
+
+    /**
+     * Remove an entry from the change set. Entries are compared by
+     * identity, as distinct entries for the same path and state are
+     * equal to each other.
+     */
+    public void remove(ProjectFile pf) {
+        removed.add(pf);
+    }
+
+    /**
+     * Get all entries recorded for a path, in insertion order.
+     */
+    public List<ProjectFile> get(String path) {
+        return live(byPath.get(path));
+    }
+
+    /**
+     * Check whether a directory entry has been recorded for a path.
+     */
+    public boolean containsDirectory(String path) {
+        for (ProjectFile pf : get(path)) {
+            if (pf.getIsDirectory())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get all entries whose enclosing directory is the provided path.
+     */
+    public List<ProjectFile> inDirectory(String path) {
+        return live(byDir.get(path));
+    }
+
+    /**
+     * Get all entries in insertion order.
+     */
+    public List<ProjectFile> files() {
+        if (!removed.isEmpty()) {
+            List<ProjectFile> compacted = 
+                new ArrayList<ProjectFile>(files.size() - removed.size());
+            for (ProjectFile pf : files) {
+                if (!removed.contains(pf))
+                    compacted.add(pf);
+            }
+            files = compacted;
+            for (List<ProjectFile> l : byPath.values())
+                l.removeAll(removed);
+            for (List<ProjectFile> l : byDir.values())
+                l.removeAll(removed);
+            removed.clear();
+        }
+        return files;
+    }
+
+    public Iterator<ProjectFile> iterator() {
+        return files().iterator();
+    }
+
+    public int size() {
+        return files.size() - removed.size();
+    }
+
+    public void clear() {
+        files.clear();
+        byPath.clear();
+        byDir.clear();
+        removed.clear();
+    }
+
+    /**
+     * SVN supports doing weird things on a single file in a single revision.
+     * For example, you can copy a file and then delete it or delete it and
+     * then copy a new version of the file on it.
+     * This method replays the SVN log by merging together the entries
+     * recorded for each path: only the entry with the heaviest state is 
+     * kept and it inherits the copy source of any of the merged entries.
+     * 
+     * @return The number of paths whose entries were merged
+     */
+    public int replay() {
+        int merged = 0;
+
+        for (List<ProjectFile> entries : byPath.values()) {
+            List<ProjectFile> dups = live(entries);
+            if (dups.size() <= 1) 
+                continue;
+
+            int points = 0;
+            ProjectFile copyFrom = null;
+            ProjectFile winner = null;
+
+            for (ProjectFile f : dups) {
+                int weight = stateWeights.get(f.getState().getStatus());
+                if (weight > points) {
+                    points = weight;
+                    if (winner != null)
+                        remove(winner);
+                    winner = f;
+                } else {
+                    remove(f);
+                }
+
+                if (f.getCopyFrom() != null) {
+                    copyFrom = f.getCopyFrom();
+                }
+            }
+
+            /*Update file to be added to the DB with copy-from info*/
+            if (copyFrom != null) {
+                winner.setCopyFrom(copyFrom);
+            }
+            merged++;
+        }
+        return merged;
+    }
+
+    private static void index(Map<String, List<ProjectFile>> idx, 
+            String key, ProjectFile pf) {
+        List<ProjectFile> l = idx.get(key);
+        if (l == null) {
+            /* Most paths are only recorded once per revision */
+            l = new ArrayList<ProjectFile>(1);
+            idx.put(key, l);
+        }
+        l.add(pf);
+    }
+
+    private List<ProjectFile> live(List<ProjectFile> l) {
+        if (l == null)
+            return Collections.emptyList();
+        List<ProjectFile> result = new ArrayList<ProjectFile>(l.size());
+        for (ProjectFile pf : l) {
+            if (!removed.contains(pf))
+                result.add(pf);
+        }
+        return result;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
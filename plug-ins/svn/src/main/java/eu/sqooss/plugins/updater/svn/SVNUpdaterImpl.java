@@ -36,8 +36,10 @@ package eu.sqooss.plugins.updater.svn;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.LRUMap;
 
@@ -119,28 +121,14 @@ public class SVNUpdaterImpl implements MetadataUpdater {
     private LRUMap dirCache = new LRUMap(200);
     
     /* Container for all project file records for each processed version*/
-    private List<ProjectFile> versionFiles = new ArrayList<ProjectFile>();
+    private ChangeSet versionFiles = new ChangeSet();
     
-    /* Currently processed commit log entry*/
-    private Revision commitLogEntry;
-    
-    /* 
-     * State weights to use when evaluating duplicate project file entries
-     * in a single revision
-     */
-    private static Map<Integer, Integer> stateWeights ;
+    /* Destination paths of the copy operations in the current entry */
+    private Set<String> copiedPaths = new HashSet<String>();
     
     /*SCM accessor to the project's repository */
     private SCMAccessor scm = null;
     
-    static {
-        stateWeights = new HashMap<Integer, Integer>();
-        stateWeights.put(ProjectFileState.STATE_ADDED, 2);
-        stateWeights.put(ProjectFileState.STATE_MODIFIED, 4);
-        stateWeights.put(ProjectFileState.STATE_REPLACED, 8);
-        stateWeights.put(ProjectFileState.STATE_DELETED, 16);
-    }
-    
     /*
      * A Map from SCM file status codes represented as strings
      * to system internal ids.
@@ -226,7 +214,9 @@ public class SVNUpdaterImpl implements MetadataUpdater {
             
             for (Revision entry : commitLog) {
                 versionFiles.clear();
-                commitLogEntry = entry;
+                copiedPaths.clear();
+                for (CommitCopyEntry copyOp : entry.getCopyOperations())
+                    copiedPaths.add(copyOp.toPath());
                 ProjectVersion curVersion = processCommit(scm, entry);
                 
                 /*
@@ -283,7 +273,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                 /*
                  * Add files to the database 
                  */
-                dbs.addRecords(versionFiles);
+                dbs.addRecords(versionFiles.files());
                
               	updateValidUntil(curVersion);
 
@@ -574,9 +564,8 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                  */
                 boolean delAfterCopy = false;
                 if (lastIncarnation == null) {
-                    for (ProjectFile pf : versionFiles) {
-                        if (pf.getFileName().equals(toAdd.getFileName())
-                                && pf.getIsDirectory()
+                    for (ProjectFile pf : versionFiles.get(toAdd.getFileName())) {
+                        if (pf.getIsDirectory()
                                 && pf.isAdded()) {
                             lastIncarnation = pf;
                             delAfterCopy = true;
@@ -611,66 +600,14 @@ public class SVNUpdaterImpl implements MetadataUpdater {
      * then copy a new version of the file on it.
      * This method replays the SVN log by merging together various file 
      * modifications recorded in the course of a revision.
+     * 
+     * @see ChangeSet#replay()
      */
     private void replayLog(ProjectVersion curVersion) {
-        
-        /*Find duplicate projectfile entries*/
-        HashMap<String, Integer> numOccurs = new HashMap<String, Integer>();
-        for (ProjectFile pf : versionFiles) {
-            if (numOccurs.get(pf.getFileName()) != null) {
-                numOccurs.put(pf.getFileName(), numOccurs.get(pf.getFileName()).intValue() + 1);
-            } else {
-                numOccurs.put(pf.getFileName(), 1);
-            }
-        }
-        
-        /* Copy list of files to be added to the DB in a tmp array,
-         * to use for iterating
-         */
-        List<ProjectFile> tmpFiles = new ArrayList<ProjectFile>();
-        tmpFiles.addAll(versionFiles);
-        
-        for (String fpath : numOccurs.keySet()) {
-            if (numOccurs.get(fpath) <= 1) { 
-                continue;
-            }
-            debug("Multiple entries in single version for file " + fpath);
-            
-            int points = 0;
-            
-            ProjectFile copyFrom = null;
-            ProjectFile winner = null; 
-            
-            for (ProjectFile f: tmpFiles) {
-                
-                if (!f.getFileName().equals(fpath)) { 
-                    continue;
-                }
-                
-                debug("  " + f);
-                
-                if (stateWeights.get(f.getState().getStatus()) > points) {
-                    points = stateWeights.get(f.getState().getStatus());
-                    if (winner != null)
-                        versionFiles.remove(winner);
-                    winner = f;
-                } else {
-                    versionFiles.remove(f);
-                }
-                
-                if (f.getCopyFrom() != null) {
-                    copyFrom = f.getCopyFrom();
-                }
-            }
-            
-            /*Update file to be added to the DB with copy-from info*/
-            if (copyFrom != null) {
-                versionFiles.remove(winner);
-                winner.setCopyFrom(copyFrom);
-                versionFiles.add(winner);
-            }
-            debug("Keeping file " + winner);
-        }
+        int merged = versionFiles.replay();
+        if (merged > 0) 
+            debug("Merged multiple entries in single version for " 
+                    + merged + " files");
     }
     
     /**
@@ -682,10 +619,20 @@ public class SVNUpdaterImpl implements MetadataUpdater {
      */
     private void addModifiedDirEntries(ProjectVersion pv) {
         //Copy list of version files to an immutable object
-        List<ProjectFile> chFiles = new ArrayList<ProjectFile>(this.versionFiles);
+        List<ProjectFile> chFiles = new ArrayList<ProjectFile>(versionFiles.files());
+        
+        //All entries in a directory share the same enclosing directory
+        Map<String, ProjectFile> parents = new HashMap<String, ProjectFile>();
         
         for (ProjectFile pf : chFiles) {
-            ProjectFile parent = pf.getEnclosingDirectory();
+            String dir = pf.getDir().getPath();
+            ProjectFile parent = null;
+            if (parents.containsKey(dir)) {
+                parent = parents.get(dir);
+            } else {
+                parent = pf.getEnclosingDirectory();
+                parents.put(dir, parent);
+            }
             
             //Parent dir not in the DB, it should be added in this revision
             if (parent == null) {
@@ -693,17 +640,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
             }
             
             //Check if parent dir exists in this revision's entries
-            boolean exists = false;
-            for (ProjectFile dir : chFiles) {
-                //Only search directories
-                if (!dir.getIsDirectory())
-                    continue;
-                if (parent.getFileName().equals(dir.getFileName())) {
-                    exists = true;
-                    break;
-                }
-            }
-            if (!exists) {
+            if (!versionFiles.containsDirectory(parent.getFileName())) {
                 //Create it!
                 addFile(pv, parent.getFileName(), ProjectFileState.modified(), 
                         SCMNodeType.DIR, null);
@@ -745,15 +682,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
      * Check whether a path is in the list of copy operations for this revision
      */
     private boolean isCopiedPath(String path) {
-        boolean copied = false;
-        for (CommitCopyEntry copyOp : commitLogEntry.getCopyOperations()) {
-            if (path.equals(copyOp.toPath())) {
-                copied = true;
-                break;
-            }
-        }
-
-        return copied;
+        return copiedPaths.contains(path);
     }
     
     /**
@@ -824,15 +753,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
             return Collections.emptyList();
         }
         
-        List<ProjectFile> pfl = new ArrayList<ProjectFile>();
-        
-        for (ProjectFile pf : versionFiles) {
-            if (pf.getDir().getPath().equals(f.getFileName())) {
-                pfl.add(pf);
-            }
-        }
-        
-        return pfl;
+        return versionFiles.inDirectory(f.getFileName());
     }
     
     /**
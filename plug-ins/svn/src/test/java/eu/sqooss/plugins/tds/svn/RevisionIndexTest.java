@@ -0,0 +1,120 @@
+package eu.sqooss.plugins.tds.svn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Date;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+public class RevisionIndexTest {
+
+    static File dir;
+    static SVNRepository repo;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        FSRepositoryFactory.setup();
+        dir = new File("tmp", "revindex-" + System.currentTimeMillis());
+        SVNURL url = SVNRepositoryFactory.createLocalRepository(
+                new File(dir, "repo"), true, false);
+        repo = SVNRepositoryFactory.create(url);
+        repo.setAuthenticationManager(
+                SVNWCUtil.createDefaultAuthenticationManager("alice", ""));
+
+        Thread.sleep(10);
+        ISVNEditor editor = repo.getCommitEditor("Add dir", null);
+        editor.openRoot(-1);
+        editor.addDir("trunk", null, -1);
+        addFile(editor, "trunk/file0");
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+
+        for (int i = 1; i < 5; i++)
+            commitFile("trunk/file" + i);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        RevisionIndex idx = open("update");
+        long head = repo.getLatestRevision();
+        idx.update(repo, head);
+
+        assertEquals(head + 1, idx.size());
+        for (long rev = 0; rev <= head; rev++) {
+            assertEquals(date(rev).getTime(), idx.getDate(rev).getTime());
+            assertEquals(rev, idx.getRevision(idx.getDate(rev)));
+        }
+        assertNull(idx.getAuthor(0));
+        assertEquals("alice", idx.getAuthor(1));
+        assertEquals(0, idx.getChangedPathCount(0));
+        assertEquals(2, idx.getChangedPathCount(1));
+        assertEquals(1, idx.getChangedPathCount(2));
+        assertEquals(-1, idx.getChangedPathCount(head + 1));
+        assertNull(idx.getDate(head + 1));
+
+        Date between = new Date(idx.getDate(3).getTime() + 1);
+        assertEquals(repo.getDatedRevision(between), idx.getRevision(between));
+        assertEquals(-1, idx.getRevision(new Date(0)));
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        RevisionIndex idx = open("incremental");
+        idx.update(repo, 2);
+        assertEquals(3, idx.size());
+
+        commitFile("trunk/incremental");
+        long head = repo.getLatestRevision();
+
+        idx = open("incremental");
+        assertEquals(3, idx.size());
+        assertEquals("alice", idx.getAuthor(2));
+        idx.update(repo, head);
+        assertEquals(head + 1, idx.size());
+        assertEquals(date(head).getTime(), idx.getDate(head).getTime());
+    }
+
+    private static RevisionIndex open(String name) throws Exception {
+        return new RevisionIndex(new File(dir, name + ".rev"), 
+                new File(dir, name + ".authors"));
+    }
+
+    private static Date date(long rev) throws Exception {
+        return SVNDate.parseDate(repo.getRevisionPropertyValue(rev, 
+                SVNRevisionProperty.DATE).getString());
+    }
+
+    private static void commitFile(String path) throws Exception {
+        Thread.sleep(10);
+        ISVNEditor editor = repo.getCommitEditor("Add " + path, null);
+        editor.openRoot(-1);
+        editor.openDir("trunk", -1);
+        addFile(editor, path);
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+    }
+
+    private static void addFile(ISVNEditor editor, String path) 
+        throws Exception {
+        editor.addFile(path, null, -1);
+        editor.applyTextDelta(path, null);
+        String checksum = new SVNDeltaGenerator().sendDelta(path, 
+                new ByteArrayInputStream(path.getBytes()), editor, true);
+        editor.closeFile(path, checksum);
+    }
+}
@@ -0,0 +1,115 @@
+package eu.sqooss.plugins.updater.svn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import eu.sqooss.service.db.Directory;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+
+public class ChangeSetTest {
+
+    ProjectVersion pv = new ProjectVersion();
+    Map<String, Directory> dirs = new HashMap<String, Directory>();
+
+    @Test
+    public void testReplay() {
+        ChangeSet cs = new ChangeSet();
+        ProjectFile source = file("/trunk", "a.c", ProjectFileState.STATE_ADDED, null);
+
+        ProjectFile added = file("/branches/b", "a.c", ProjectFileState.STATE_ADDED, source);
+        ProjectFile modified = file("/branches/b", "a.c", ProjectFileState.STATE_MODIFIED, null);
+        ProjectFile other = file("/branches/b", "b.c", ProjectFileState.STATE_ADDED, null);
+        cs.add(added);
+        cs.add(modified);
+        cs.add(other);
+
+        assertEquals(1, cs.replay());
+        assertEquals(2, cs.size());
+        assertEquals(1, cs.get("/branches/b/a.c").size());
+        assertSame(modified, cs.get("/branches/b/a.c").get(0));
+        assertSame(source, modified.getCopyFrom());
+        assertEquals(2, cs.inDirectory("/branches/b").size());
+        assertEquals(2, cs.files().size());
+        assertSame(modified, cs.files().get(0));
+    }
+
+    @Test
+    public void testDirectories() {
+        ChangeSet cs = new ChangeSet();
+        ProjectFile dir = file("/trunk", "src", ProjectFileState.STATE_ADDED, null);
+        dir.setIsDirectory(true);
+        cs.add(dir);
+        cs.add(file("/trunk/src", "a.c", ProjectFileState.STATE_ADDED, null));
+
+        assertTrue(cs.containsDirectory("/trunk/src"));
+        assertFalse(cs.containsDirectory("/trunk/src/a.c"));
+
+        /* Adding while iterating over a lookup result must be possible */
+        for (ProjectFile f : cs.inDirectory("/trunk/src"))
+            cs.add(file("/trunk/src", f.getName(), ProjectFileState.STATE_DELETED, null));
+        assertEquals(2, cs.get("/trunk/src/a.c").size());
+
+        cs.remove(dir);
+        assertFalse(cs.containsDirectory("/trunk/src"));
+        assertEquals(2, cs.size());
+    }
+
+    /*
+     * A vendor branch copy: every file in a large tree is added by the
+     * copy and then modified in the same revision. Before the change set
+     * was indexed, replaying a revision like this took quadratic time.
+     */
+    @Test
+    public void testHugeCopy() {
+        hugeCopy(50, 20);
+    }
+
+    private void hugeCopy(int numDirs, int filesPerDir) {
+        ChangeSet cs = new ChangeSet();
+        for (int i = 0; i < numDirs; i++) {
+            String d = "/vendor/lib/dir" + i;
+            for (int j = 0; j < filesPerDir; j++) {
+                cs.add(file(d, "file" + j + ".c", ProjectFileState.STATE_ADDED, null));
+                cs.add(file(d, "file" + j + ".c", ProjectFileState.STATE_MODIFIED, null));
+            }
+        }
+
+        assertEquals(numDirs * filesPerDir, cs.replay());
+
+        int listed = 0;
+        for (int i = 0; i < numDirs; i++) {
+            listed += cs.inDirectory("/vendor/lib/dir" + i).size();
+            assertTrue(cs.get("/vendor/lib/dir" + i + "/file0.c").size() == 1);
+        }
+        assertEquals(numDirs * filesPerDir, listed);
+        assertEquals(numDirs * filesPerDir, cs.files().size());
+    }
+
+    private ProjectFile file(String dir, String name, int status, 
+            ProjectFile copyFrom) {
+        Directory d = dirs.get(dir);
+        if (d == null) {
+            d = new Directory();
+            d.setPath(dir);
+            dirs.put(dir, d);
+        }
+        ProjectFileState state = new ProjectFileState();
+        state.setStatus(status);
+
+        ProjectFile pf = new ProjectFile(pv);
+        pf.setDir(d);
+        pf.setName(name);
+        pf.setState(state);
+        pf.setCopyFrom(copyFrom);
+        return pf;
+    }
+}